@@ -0,0 +1,107 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+  @Param({"1000", "1000000"})
+  private int accounts;
+
+  @Param({"UNIFORM", "ZIPFIAN"})
+  private KeyDistribution distribution;
+
+  @Param({"heap", "offheap"})
+  private String store;
+
+  private AccountsRepository repository;
+
+  private String[] ids;
+
+  private final AtomicInteger threads = new AtomicInteger();
+
+  @State(Scope.Thread)
+  public static class Keys {
+
+    private static final AtomicLong SEEDS = new AtomicLong();
+
+    private int[] sequence;
+
+    private int next;
+
+    private String newIdPrefix;
+
+    private long created;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountsRepositoryBenchmark benchmark) {
+      this.sequence = benchmark.distribution.sample(
+        benchmark.accounts, BenchmarkAccounts.KEY_SEQUENCE_LENGTH, SEEDS.incrementAndGet());
+      this.newIdPrefix = "New-" + benchmark.threads.incrementAndGet() + "-";
+    }
+
+    int nextKey() {
+      int key = this.sequence[this.next];
+      this.next = (this.next + 1) & (BenchmarkAccounts.KEY_SEQUENCE_LENGTH - 1);
+      return key;
+    }
+
+    String nextNewId() {
+      return this.newIdPrefix + this.created++;
+    }
+  }
+
+  // a fresh repository per iteration keeps createAccount from measuring an ever larger map
+  @Setup(Level.Iteration)
+  public void setUp() {
+    this.repository = BenchmarkAccounts.newRepository(this.store);
+    this.ids = BenchmarkAccounts.populate(this.repository, this.accounts);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    BenchmarkAccounts.close(this.repository);
+  }
+
+  @Benchmark
+  public Optional<Account> getAccount(Keys keys) {
+    return this.repository.getAccount(this.ids[keys.nextKey()]);
+  }
+
+  @Benchmark
+  public Account updateAccount(Keys keys) {
+    Account account = this.repository.getAccount(this.ids[keys.nextKey()]).get();
+    account.setBalanceUnits(account.getBalanceUnits() - 1);
+    return this.repository.updateAccount(account);
+  }
+
+  @Benchmark
+  public void createAccount(Keys keys) {
+    Account account = new Account(keys.nextNewId());
+    account.setBalanceUnits(BenchmarkAccounts.INITIAL_BALANCE_UNITS);
+    this.repository.createAccount(account);
+  }
+}
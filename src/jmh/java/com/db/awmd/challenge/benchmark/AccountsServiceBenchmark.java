@@ -0,0 +1,136 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferHistoryRepository;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.CasTransferEngine;
+import com.db.awmd.challenge.service.HotAccounts;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.SnapshotReads;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferEngine;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountsServiceBenchmark {
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+  @Param({"1000", "1000000"})
+  private int accounts;
+
+  @Param({"UNIFORM", "ZIPFIAN"})
+  private KeyDistribution distribution;
+
+  @Param({"locking", "cas", "sharded"})
+  private String engine;
+
+  @Param({"heap", "offheap"})
+  private String store;
+
+  private AccountsRepository repository;
+
+  private AccountsService accountsService;
+
+  private String[] ids;
+
+  private ShardedTransferEngine shardedEngine;
+
+  @State(Scope.Thread)
+  public static class Keys {
+
+    private static final AtomicLong SEEDS = new AtomicLong();
+
+    private int[] sequence;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp(AccountsServiceBenchmark benchmark) {
+      this.sequence = benchmark.distribution.sample(
+        benchmark.accounts, BenchmarkAccounts.KEY_SEQUENCE_LENGTH, SEEDS.incrementAndGet());
+    }
+
+    int nextKey() {
+      int key = this.sequence[this.next];
+      this.next = (this.next + 1) & (BenchmarkAccounts.KEY_SEQUENCE_LENGTH - 1);
+      return key;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.repository = BenchmarkAccounts.newRepository(this.store);
+    this.ids = BenchmarkAccounts.populate(this.repository, this.accounts);
+
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    TransferMetrics transferMetrics = new TransferMetrics(metricsRegistry);
+    AccountLocks accountLocks = new AccountLocks(1024, metricsRegistry);
+    HotAccounts hotAccounts = new HotAccounts(new String[0], 0, this.engine, false, metricsRegistry);
+    SnapshotReads snapshotReads = new SnapshotReads(this.repository, accountLocks, hotAccounts);
+    TransferEngine transferEngine;
+    if ("cas".equals(this.engine)) {
+      transferEngine = new CasTransferEngine(this.repository);
+    } else if ("sharded".equals(this.engine)) {
+      this.shardedEngine = new ShardedTransferEngine(this.repository, 0, 4096);
+      transferEngine = this.shardedEngine;
+    } else {
+      transferEngine = new LockingTransferEngine(this.repository, accountLocks, transferMetrics, snapshotReads, hotAccounts);
+    }
+    this.accountsService = new AccountsService(
+      this.repository, (fromAccount, toAccount, transfer) -> { }, transferEngine, accountLocks, transferMetrics,
+      new IdempotencyCache(100000, 3600000, metricsRegistry), new TransferHistoryRepository(), snapshotReads, hotAccounts,
+      new TransferAdmission(0, 100, 100000, 0, 100, hotAccounts, metricsRegistry));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    if (this.shardedEngine != null) {
+      this.shardedEngine.shutdown();
+      this.shardedEngine = null;
+    }
+    BenchmarkAccounts.close(this.repository);
+  }
+
+  @Benchmark
+  public void transfer(Keys keys) {
+    int from = keys.nextKey();
+    int to = keys.nextKey();
+    if (from == to) {
+      to = (to + 1) % this.accounts;
+    }
+    this.accountsService.transfer(new Transfer(this.ids[from], this.ids[to], AMOUNT));
+  }
+
+  @Benchmark
+  public Account getAccount(Keys keys) {
+    return this.accountsService.getAccount(this.ids[keys.nextKey()]);
+  }
+}
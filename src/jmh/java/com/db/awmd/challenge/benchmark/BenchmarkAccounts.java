@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+
+final class BenchmarkAccounts {
+
+  // large enough that no benchmark ever runs out of funds
+  static final long INITIAL_BALANCE_UNITS = Long.MAX_VALUE / 4;
+
+  // keys are drawn from a precomputed sequence, so drawing them costs no time in the measurement
+  static final int KEY_SEQUENCE_LENGTH = 1 << 16;
+
+  private BenchmarkAccounts() {
+  }
+
+  static AccountsRepository newRepository(String store) {
+    switch (store) {
+      case "heap":
+        return new AccountsRepositoryInMemory();
+      case "offheap":
+        return new OffHeapAccountsRepository(1 << 16);
+      default:
+        throw new IllegalArgumentException("Unknown account store " + store);
+    }
+  }
+
+  static String[] populate(AccountsRepository repository, int accounts) {
+    String[] ids = new String[accounts];
+    for (int i = 0; i < accounts; i++) {
+      ids[i] = "Id-" + i;
+      Account account = new Account(ids[i]);
+      account.setBalanceUnits(INITIAL_BALANCE_UNITS);
+      repository.createAccount(account);
+    }
+    return ids;
+  }
+
+  static void close(AccountsRepository repository) {
+    if (repository instanceof OffHeapAccountsRepository) {
+      ((OffHeapAccountsRepository) repository).close();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.File;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per thread count, with the GC profiler attached so every
+ * result comes with its allocation rate. Any standard JMH option can be passed as an argument.
+ *
+ * <p>Thread counts come from the {@code benchmark.threads} system property, e.g. {@code 1,4,16}.
+ * Results are written as JSON to the {@code benchmark.results} directory, one file per count.
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    String[] threadCounts = System.getProperty("benchmark.threads", "1,4").split(",");
+    File results = new File(System.getProperty("benchmark.results", "build/jmh"));
+    results.mkdirs();
+
+    for (String threadCount : threadCounts) {
+      int threads = Integer.parseInt(threadCount.trim());
+      OptionsBuilder options = new OptionsBuilder();
+      options
+        .parent(commandLine)
+        .threads(threads)
+        .addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.JSON)
+        .result(new File(results, "results-" + threads + "-threads.json").getPath());
+      if (commandLine.getIncludes().isEmpty()) {
+        options.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+      }
+      new Runner(options.build()).run();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferHistoryRepository;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccounts;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.SnapshotReads;
+import com.db.awmd.challenge.service.TransferAdmission;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every transfer credits the same account, from an account drawn uniformly from the rest, with
+ * that account designated as hot or not. Only meaningful with several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotAccountBenchmark {
+
+  private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+  private static final int ACCOUNTS = 1000;
+
+  @Param({"false", "true"})
+  private boolean hot;
+
+  private AccountsRepository repository;
+
+  private AccountsService accountsService;
+
+  private String[] ids;
+
+  @State(Scope.Thread)
+  public static class Keys {
+
+    private static final AtomicLong SEEDS = new AtomicLong();
+
+    private int[] sequence;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      // key 0 is the hot account, so the debited accounts are drawn from the others
+      this.sequence = KeyDistribution.UNIFORM.sample(
+        ACCOUNTS - 1, BenchmarkAccounts.KEY_SEQUENCE_LENGTH, SEEDS.incrementAndGet());
+    }
+
+    int nextKey() {
+      int key = this.sequence[this.next];
+      this.next = (this.next + 1) & (BenchmarkAccounts.KEY_SEQUENCE_LENGTH - 1);
+      return key + 1;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.repository = BenchmarkAccounts.newRepository("heap");
+    this.ids = BenchmarkAccounts.populate(this.repository, ACCOUNTS);
+
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    TransferMetrics transferMetrics = new TransferMetrics(metricsRegistry);
+    AccountLocks accountLocks = new AccountLocks(1024, metricsRegistry);
+    HotAccounts hotAccounts = new HotAccounts(
+      this.hot ? new String[] {this.ids[0]} : new String[0], 0, "locking", false, metricsRegistry);
+    SnapshotReads snapshotReads = new SnapshotReads(this.repository, accountLocks, hotAccounts);
+    LockingTransferEngine transferEngine = new LockingTransferEngine(
+      this.repository, accountLocks, transferMetrics, snapshotReads, hotAccounts);
+    this.accountsService = new AccountsService(
+      this.repository, (fromAccount, toAccount, transfer) -> { }, transferEngine, accountLocks, transferMetrics,
+      new IdempotencyCache(100000, 3600000, metricsRegistry), new TransferHistoryRepository(), snapshotReads, hotAccounts,
+      new TransferAdmission(0, 100, 100000, 0, 100, hotAccounts, metricsRegistry));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkAccounts.close(this.repository);
+  }
+
+  @Benchmark
+  public void transferToHotAccount(Keys keys) {
+    this.accountsService.transfer(new Transfer(this.ids[keys.nextKey()], this.ids[0], AMOUNT));
+  }
+}
@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Calls the REST API of a running instance. Accounts are created with one CSV import, and failed
+ * transfers are named after their HTTP status.
+ *
+ * <p>The JDK keeps the connection of every calling thread alive between requests, as long as each
+ * response is read to the end.
+ */
+class HttpLoadTarget implements LoadTarget {
+
+  // the most accounts a single query may ask for
+  private static final int QUERY_CHUNK = 10000;
+
+  private final String accountsUrl;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  HttpLoadTarget(String baseUrl) {
+    this.accountsUrl = baseUrl.replaceAll("/+$", "") + "/v1/accounts";
+  }
+
+  @Override
+  public void createAccounts(String[] ids, long balanceUnits) throws IOException {
+    String balance = Money.toBigDecimal(balanceUnits).toPlainString();
+    StringBuilder csv = new StringBuilder();
+    for (String id : ids) {
+      csv.append(id).append(',').append(balance).append('\n');
+    }
+
+    int status = this.post(this.accountsUrl, "text/csv", csv.toString(), null);
+    if (status != HttpURLConnection.HTTP_OK) {
+      throw new IOException("Account import failed with HTTP status " + status);
+    }
+  }
+
+  @Override
+  public String transfer(String fromAccountId, String toAccountId, long amountUnits) throws IOException {
+    String body = "{\"fromAccountId\":\"" + fromAccountId + "\",\"toAccountId\":\"" + toAccountId
+      + "\",\"amount\":" + Money.toBigDecimal(amountUnits).toPlainString() + "}";
+    int status = this.post(this.accountsUrl + "/transfer", "application/json", body, null);
+    return status == HttpURLConnection.HTTP_OK ? "OK" : "HTTP " + status;
+  }
+
+  @Override
+  public BigDecimal total(String[] ids) throws IOException {
+    BigDecimal total = BigDecimal.ZERO;
+    for (int from = 0; from < ids.length; from += QUERY_CHUNK) {
+      String query = this.objectMapper.writeValueAsString(Collections.singletonMap(
+        "accountIds", Arrays.asList(ids).subList(from, Math.min(from + QUERY_CHUNK, ids.length))));
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      int status = this.post(this.accountsUrl + "/query", "application/json", query, response);
+      if (status != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Account query failed with HTTP status " + status);
+      }
+      total = total.add(this.objectMapper.readTree(response.toByteArray()).get("totalBalance").decimalValue());
+    }
+    return total;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  private int post(String url, String contentType, String body, OutputStream response) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", contentType);
+    connection.setDoOutput(true);
+    try (OutputStream output = connection.getOutputStream()) {
+      output.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    int status = connection.getResponseCode();
+    InputStream input = status < HttpURLConnection.HTTP_BAD_REQUEST
+      ? connection.getInputStream()
+      : connection.getErrorStream();
+    if (input != null) {
+      try (InputStream in = input) {
+        byte[] buffer = new byte[4096];
+        for (int read; (read = in.read(buffer)) != -1; ) {
+          if (response != null) {
+            response.write(buffer, 0, read);
+          }
+        }
+      }
+    }
+    return status;
+  }
+}
@@ -0,0 +1,89 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferHistoryRepository;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.CasTransferEngine;
+import com.db.awmd.challenge.service.HotAccounts;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.SnapshotReads;
+import com.db.awmd.challenge.service.TransferAdmission;
+import com.db.awmd.challenge.service.TransferEngine;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Calls {@link AccountsService} directly, wired with the given engine and store the same way the
+ * benchmarks wire it. Transfers are named after their outcome.
+ */
+class InProcessLoadTarget implements LoadTarget {
+
+  private final AccountsRepository repository;
+
+  private final AccountsService accountsService;
+
+  private ShardedTransferEngine shardedEngine;
+
+  InProcessLoadTarget(String engine, String store) {
+    this.repository = BenchmarkAccounts.newRepository(store);
+
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    TransferMetrics transferMetrics = new TransferMetrics(metricsRegistry);
+    AccountLocks accountLocks = new AccountLocks(1024, metricsRegistry);
+    HotAccounts hotAccounts = new HotAccounts(new String[0], 0, engine, false, metricsRegistry);
+    SnapshotReads snapshotReads = new SnapshotReads(this.repository, accountLocks, hotAccounts);
+    TransferEngine transferEngine;
+    if ("cas".equals(engine)) {
+      transferEngine = new CasTransferEngine(this.repository);
+    } else if ("sharded".equals(engine)) {
+      this.shardedEngine = new ShardedTransferEngine(this.repository, 0, 4096);
+      transferEngine = this.shardedEngine;
+    } else if ("locking".equals(engine)) {
+      transferEngine = new LockingTransferEngine(this.repository, accountLocks, transferMetrics, snapshotReads, hotAccounts);
+    } else {
+      throw new IllegalArgumentException("Unknown transfer engine " + engine);
+    }
+    this.accountsService = new AccountsService(
+      this.repository, (fromAccount, toAccount, transfer) -> { }, transferEngine, accountLocks, transferMetrics,
+      new IdempotencyCache(100000, 3600000, metricsRegistry), new TransferHistoryRepository(), snapshotReads, hotAccounts,
+      new TransferAdmission(0, 100, 100000, 0, 100, hotAccounts, metricsRegistry));
+  }
+
+  @Override
+  public void createAccounts(String[] ids, long balanceUnits) {
+    for (String id : ids) {
+      Account account = new Account(id);
+      account.setBalanceUnits(balanceUnits);
+      this.accountsService.createAccount(account);
+    }
+  }
+
+  @Override
+  public String transfer(String fromAccountId, String toAccountId, long amountUnits) {
+    return this.accountsService.tryTransfer(new Transfer(fromAccountId, toAccountId, amountUnits)).getOutcome().name();
+  }
+
+  @Override
+  public BigDecimal total(String[] ids) {
+    return this.accountsService.queryAccounts(Arrays.asList(ids)).getTotalBalance();
+  }
+
+  @Override
+  public void close() {
+    if (this.shardedEngine != null) {
+      try {
+        this.shardedEngine.shutdown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    BenchmarkAccounts.close(this.repository);
+  }
+}
@@ -0,0 +1,90 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.AccountIdCache;
+import com.db.awmd.challenge.web.AccountsJsonMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+
+/**
+ * Reading a transfer request body the way the endpoint used to, with data binding and bean
+ * validation, against {@link AccountsJsonMessageConverter}. The allocation per request is the
+ * {@code gc.alloc.rate.norm} reported by the GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+  private static final byte[] BODY = ("{\"fromAccountId\":\"Id-123456\",\"toAccountId\":\"Id-654321\","
+    + "\"amount\":1234.56,\"idempotencyKey\":\"9f0c7d6e-5a41-4b8e-9a43-2f5d3c8e1b07\"}")
+    .getBytes(StandardCharsets.UTF_8);
+
+  private ObjectMapper objectMapper;
+
+  private Validator validator;
+
+  private AccountsJsonMessageConverter converter;
+
+  private HttpHeaders headers;
+
+  @Setup
+  public void setUp() {
+    this.objectMapper = new ObjectMapper();
+    this.validator = Validation.buildDefaultValidatorFactory().getValidator();
+    this.converter = new AccountsJsonMessageConverter(
+      this.objectMapper, new AccountIdCache(4096, new MetricsRegistry()));
+    this.headers = new HttpHeaders();
+    this.headers.setContentType(MediaType.APPLICATION_JSON);
+  }
+
+  @Benchmark
+  public Transfer dataBinding() throws IOException {
+    Transfer transfer = this.objectMapper.readValue(new ByteArrayInputStream(BODY), Transfer.class);
+    Set<ConstraintViolation<Transfer>> violations = this.validator.validate(transfer);
+    if (!violations.isEmpty()) {
+      throw new IllegalStateException(violations.toString());
+    }
+    return transfer;
+  }
+
+  @Benchmark
+  public Object codec() throws IOException {
+    return this.converter.read(Transfer.class, new HttpInputMessage() {
+      @Override
+      public InputStream getBody() {
+        return new ByteArrayInputStream(BODY);
+      }
+
+      @Override
+      public HttpHeaders getHeaders() {
+        return headers;
+      }
+    });
+  }
+}
@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * How benchmark operations pick their accounts: evenly, or skewed towards a few hot accounts.
+ */
+public enum KeyDistribution {
+
+  UNIFORM {
+    @Override
+    public int[] sample(int accounts, int count, long seed) {
+      Random random = new Random(seed);
+      int[] keys = new int[count];
+      for (int i = 0; i < count; i++) {
+        keys[i] = random.nextInt(accounts);
+      }
+      return keys;
+    }
+  },
+
+  /**
+   * Zipfian with exponent 0.99, the usual YCSB skew: the hottest account gets a few percent of
+   * all operations.
+   */
+  ZIPFIAN {
+    @Override
+    public int[] sample(int accounts, int count, long seed) {
+      double[] cumulative = new double[accounts];
+      double sum = 0;
+      for (int i = 0; i < accounts; i++) {
+        sum += 1 / Math.pow(i + 1, 0.99);
+        cumulative[i] = sum;
+      }
+
+      Random random = new Random(seed);
+      int[] keys = new int[count];
+      for (int i = 0; i < count; i++) {
+        int key = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+        keys[i] = Math.min(key < 0 ? -key - 1 : key, accounts - 1);
+      }
+      return keys;
+    }
+  },
+
+  /**
+   * Uniform, except during bursts: one stretch of {@value #BURST_PERIOD} keys in every four is a
+   * burst, in which nine keys in ten go to one of {@value #BURST_ACCOUNTS} accounts picked afresh
+   * for that burst, the way a batch job or a market event piles onto a few accounts for a while.
+   */
+  BURSTY {
+    @Override
+    public int[] sample(int accounts, int count, long seed) {
+      Random random = new Random(seed);
+      int[] burstAccounts = new int[BURST_ACCOUNTS];
+      int[] keys = new int[count];
+      for (int i = 0; i < count; i++) {
+        boolean burst = i / BURST_PERIOD % 4 == 3;
+        if (burst && i % BURST_PERIOD == 0) {
+          for (int j = 0; j < BURST_ACCOUNTS; j++) {
+            burstAccounts[j] = random.nextInt(accounts);
+          }
+        }
+        keys[i] = burst && random.nextInt(10) != 0
+          ? burstAccounts[random.nextInt(BURST_ACCOUNTS)]
+          : random.nextInt(accounts);
+      }
+      return keys;
+    }
+  };
+
+  private static final int BURST_PERIOD = 4096;
+
+  private static final int BURST_ACCOUNTS = 8;
+
+  public abstract int[] sample(int accounts, int count, long seed);
+}
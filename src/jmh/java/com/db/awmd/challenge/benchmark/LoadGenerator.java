@@ -0,0 +1,289 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays a seeded transfer workload against the accounts service, in this process or over HTTP,
+ * once per engine and key distribution, and reports throughput, latency percentiles and whether
+ * the money was conserved. Unlike the JMH benchmarks, every run makes a fixed number of transfers
+ * and then checks the end state, so it also catches an engine that loses or creates money under
+ * contention.
+ *
+ * <p>Options are passed as {@code --name=value}:
+ * <ul>
+ *   <li>{@code target}: {@code in-process} (default) or {@code http}</li>
+ *   <li>{@code url}: base URL of the instance for {@code http}, default {@code http://localhost:18080}</li>
+ *   <li>{@code engines}: engines to compare in process, default {@code locking,cas,sharded}</li>
+ *   <li>{@code store}: {@code heap} (default) or {@code offheap}, in process</li>
+ *   <li>{@code distributions}: any of {@code UNIFORM,ZIPFIAN,BURSTY}, default all three</li>
+ *   <li>{@code accounts}: default 10000, each starting with {@code balance}, default 1000</li>
+ *   <li>{@code threads}: default 8</li>
+ *   <li>{@code transfers}: measured transfers per run, default 200000, after {@code warmup}
+ *   unmeasured ones, default 50000</li>
+ *   <li>{@code max-amount}: amounts are drawn evenly from the smallest unit up to this, default 1</li>
+ *   <li>{@code seed}: default 42; the same seed replays the same transfers on every thread</li>
+ *   <li>{@code report}: a CSV file to append one line per run to</li>
+ * </ul>
+ *
+ * <p>The process exits with status 1 if any run did not conserve money.
+ */
+public class LoadGenerator {
+
+  private static final String[] REPORT_COLUMNS = {
+    "target", "engine", "distribution", "threads", "accounts", "transfers", "ok", "seconds",
+    "transfers_per_second", "p50_us", "p90_us", "p99_us", "p999_us", "max_us", "conserved"
+  };
+
+  private final Map<String, String> options;
+
+  private final int accounts;
+
+  private final int threads;
+
+  private final int transfers;
+
+  private final int warmup;
+
+  private final long balanceUnits;
+
+  private final long maxAmountUnits;
+
+  private final long seed;
+
+  LoadGenerator(Map<String, String> options) {
+    this.options = options;
+    this.accounts = Integer.parseInt(this.option("accounts", "10000"));
+    this.threads = Integer.parseInt(this.option("threads", "8"));
+    this.transfers = Integer.parseInt(this.option("transfers", "200000"));
+    this.warmup = Integer.parseInt(this.option("warmup", "50000"));
+    this.balanceUnits = Money.toUnits(new BigDecimal(this.option("balance", "1000")));
+    this.maxAmountUnits = Money.toUnits(new BigDecimal(this.option("max-amount", "1")));
+    this.seed = Long.parseLong(this.option("seed", "42"));
+    if (this.accounts < 2 || this.threads < 1 || this.maxAmountUnits < 1) {
+      throw new IllegalArgumentException("Need at least two accounts, one thread and a positive max-amount");
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (!arg.startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Options must look like --name=value, was " + arg);
+      }
+      options.put(arg.substring(2, equals), arg.substring(equals + 1));
+    }
+
+    List<Result> results = new LoadGenerator(options).runAll();
+    System.exit(results.stream().allMatch(result -> result.conserved) ? 0 : 1);
+  }
+
+  List<Result> runAll() throws Exception {
+    boolean http = "http".equals(this.option("target", "in-process"));
+    String[] engines = http ? new String[] {"remote"} : this.option("engines", "locking,cas,sharded").split(",");
+    String[] distributions = this.option("distributions", "UNIFORM,ZIPFIAN,BURSTY").split(",");
+
+    List<Result> results = new ArrayList<>();
+    for (String engine : engines) {
+      for (String distribution : distributions) {
+        KeyDistribution keyDistribution = KeyDistribution.valueOf(distribution.trim().toUpperCase());
+        try (LoadTarget target = http
+          ? new HttpLoadTarget(this.option("url", "http://localhost:18080"))
+          : new InProcessLoadTarget(engine.trim(), this.option("store", "heap"))) {
+          // a running instance keeps the accounts of earlier runs, so each run gets its own
+          String prefix = http ? "Load-" + System.currentTimeMillis() + "-" : "Load-";
+          Result result = this.run(target, prefix, keyDistribution);
+          result.target = http ? "http" : "in-process";
+          result.engine = engine.trim();
+          results.add(result);
+          this.print(result);
+        }
+      }
+    }
+
+    String report = this.options.get("report");
+    if (report != null) {
+      this.appendReport(report, results);
+    }
+    return results;
+  }
+
+  Result run(LoadTarget target, String prefix, KeyDistribution distribution) throws Exception {
+    String[] ids = new String[this.accounts];
+    for (int i = 0; i < this.accounts; i++) {
+      ids[i] = prefix + i;
+    }
+    target.createAccounts(ids, this.balanceUnits);
+    BigDecimal totalBefore = target.total(ids);
+
+    ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+    try {
+      this.replay(executor, target, ids, distribution, this.warmup, this.seed ^ 0x5DEECE66DL, null, null);
+
+      Result result = new Result();
+      result.distribution = distribution.name();
+      result.threads = this.threads;
+      result.accounts = this.accounts;
+      LatencyHistogram latency = new LatencyHistogram();
+      Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+      long start = System.nanoTime();
+      this.replay(executor, target, ids, distribution, this.transfers, this.seed, latency, outcomes);
+      result.nanos = System.nanoTime() - start;
+
+      result.latency = latency.snapshot();
+      outcomes.forEach((outcome, count) -> result.outcomes.put(outcome, count.sum()));
+      result.totalBefore = totalBefore;
+      result.totalAfter = target.total(ids);
+      result.conserved = result.totalBefore.compareTo(result.totalAfter) == 0;
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Splits the transfers evenly between the threads. Each thread's transfers depend only on the
+   * seed and its index, so a run can be replayed exactly, up to how the threads interleave.
+   */
+  private void replay(
+    ExecutorService executor,
+    LoadTarget target,
+    String[] ids,
+    KeyDistribution distribution,
+    int transfers,
+    long seed,
+    LatencyHistogram latency,
+    Map<String, LongAdder> outcomes
+  ) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> workers = new ArrayList<>();
+    for (int worker = 0; worker < this.threads; worker++) {
+      int count = transfers / this.threads + (worker < transfers % this.threads ? 1 : 0);
+      long workerSeed = seed * 31 + worker;
+      int[] keys = distribution.sample(ids.length, 2 * count, workerSeed);
+      long[] amounts = new long[count];
+      Random random = new Random(~workerSeed);
+      for (int i = 0; i < count; i++) {
+        amounts[i] = 1 + (long) (random.nextDouble() * this.maxAmountUnits);
+      }
+
+      workers.add(executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < count; i++) {
+          int from = keys[2 * i];
+          int to = keys[2 * i + 1];
+          if (from == to) {
+            to = (to + 1) % ids.length;
+          }
+
+          long started = System.nanoTime();
+          String outcome;
+          try {
+            outcome = target.transfer(ids[from], ids[to], amounts[i]);
+          } catch (IOException e) {
+            outcome = e.getClass().getSimpleName();
+          }
+          if (latency != null) {
+            latency.record(System.nanoTime() - started);
+            outcomes.computeIfAbsent(outcome, name -> new LongAdder()).increment();
+          }
+        }
+        return null;
+      }));
+    }
+
+    start.countDown();
+    for (Future<?> worker : workers) {
+      worker.get();
+    }
+  }
+
+  private void print(Result result) {
+    System.out.printf("%s %s %s, %d threads, %d accounts: %d transfers in %.2fs, %.0f/s%n",
+      result.target, result.engine, result.distribution, result.threads, result.accounts,
+      result.latency.getCount(), result.seconds(), result.throughput());
+    System.out.printf("  latency us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+      micros(result.latency.getValueAtPercentile(50)), micros(result.latency.getValueAtPercentile(90)),
+      micros(result.latency.getValueAtPercentile(99)), micros(result.latency.getValueAtPercentile(99.9)),
+      micros(result.latency.getMax()));
+    System.out.printf("  outcomes: %s%n", new TreeMap<>(result.outcomes));
+    System.out.printf("  total before %s, after %s: %s%n", result.totalBefore.toPlainString(),
+      result.totalAfter.toPlainString(), result.conserved ? "conserved" : "NOT CONSERVED");
+  }
+
+  private void appendReport(String report, List<Result> results) throws IOException {
+    boolean header = !new File(report).exists();
+    try (PrintWriter writer = new PrintWriter(new FileWriter(report, true))) {
+      if (header) {
+        writer.println(String.join(",", REPORT_COLUMNS));
+      }
+      for (Result result : results) {
+        writer.printf("%s,%s,%s,%d,%d,%d,%d,%.3f,%.0f,%.1f,%.1f,%.1f,%.1f,%.1f,%s%n",
+          result.target, result.engine, result.distribution, result.threads, result.accounts,
+          result.latency.getCount(), result.outcomes.getOrDefault("OK", 0L), result.seconds(), result.throughput(),
+          micros(result.latency.getValueAtPercentile(50)), micros(result.latency.getValueAtPercentile(90)),
+          micros(result.latency.getValueAtPercentile(99)), micros(result.latency.getValueAtPercentile(99.9)),
+          micros(result.latency.getMax()), result.conserved);
+      }
+    }
+  }
+
+  private String option(String name, String defaultValue) {
+    return this.options.getOrDefault(name, defaultValue);
+  }
+
+  private static double micros(long nanos) {
+    return nanos / 1000.0;
+  }
+
+  static class Result {
+
+    String target;
+
+    String engine;
+
+    String distribution;
+
+    int threads;
+
+    int accounts;
+
+    long nanos;
+
+    LatencyHistogram.Snapshot latency;
+
+    final Map<String, Long> outcomes = new HashMap<>();
+
+    BigDecimal totalBefore;
+
+    BigDecimal totalAfter;
+
+    boolean conserved;
+
+    double seconds() {
+      return this.nanos / 1e9;
+    }
+
+    double throughput() {
+      return this.latency.getCount() / this.seconds();
+    }
+  }
+}
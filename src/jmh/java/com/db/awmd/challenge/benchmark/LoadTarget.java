@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * What {@link LoadGenerator} drives: the accounts service in this process, or a running instance
+ * over HTTP.
+ */
+interface LoadTarget extends Closeable {
+
+  void createAccounts(String[] ids, long balanceUnits) throws IOException;
+
+  /**
+   * Makes one transfer and names its outcome, e.g. {@code OK} or the reason it was refused.
+   */
+  String transfer(String fromAccountId, String toAccountId, long amountUnits) throws IOException;
+
+  /**
+   * The sum of the balances of the given accounts. Only asked for while no transfers are running.
+   */
+  BigDecimal total(String[] ids) throws IOException;
+}
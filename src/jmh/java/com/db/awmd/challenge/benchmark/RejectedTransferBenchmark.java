@@ -0,0 +1,95 @@
+package com.db.awmd.challenge.benchmark;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.TransferHistoryRepository;
+import com.db.awmd.challenge.service.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccounts;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import com.db.awmd.challenge.service.LockingTransferEngine;
+import com.db.awmd.challenge.service.SnapshotReads;
+import com.db.awmd.challenge.service.TransferAdmission;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transfers that are always refused, for lack of funds or of an account, made through the
+ * throwing {@link AccountsService#transfer} and through {@link AccountsService#tryTransfer}, which
+ * returns the refusal instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectedTransferBenchmark {
+
+  @Param({"NOT_ENOUGH_FUNDS", "ACCOUNT_NOT_FOUND"})
+  private String refusal;
+
+  private AccountsRepository repository;
+
+  private AccountsService accountsService;
+
+  private Transfer transfer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.repository = BenchmarkAccounts.newRepository("heap");
+    String[] ids = BenchmarkAccounts.populate(this.repository, 2);
+
+    MetricsRegistry metricsRegistry = new MetricsRegistry();
+    TransferMetrics transferMetrics = new TransferMetrics(metricsRegistry);
+    AccountLocks accountLocks = new AccountLocks(1024, metricsRegistry);
+    HotAccounts hotAccounts = new HotAccounts(new String[0], 0, "locking", false, metricsRegistry);
+    SnapshotReads snapshotReads = new SnapshotReads(this.repository, accountLocks, hotAccounts);
+    LockingTransferEngine transferEngine = new LockingTransferEngine(
+      this.repository, accountLocks, transferMetrics, snapshotReads, hotAccounts);
+    this.accountsService = new AccountsService(
+      this.repository, (fromAccount, toAccount, transfer) -> { }, transferEngine, accountLocks, transferMetrics,
+      new IdempotencyCache(100000, 3600000, metricsRegistry), new TransferHistoryRepository(), snapshotReads, hotAccounts,
+      new TransferAdmission(0, 100, 100000, 0, 100, hotAccounts, metricsRegistry));
+
+    this.transfer = "ACCOUNT_NOT_FOUND".equals(this.refusal)
+      ? new Transfer(ids[0], "Id-missing", new BigDecimal("0.01"))
+      : new Transfer(ids[0], ids[1], BenchmarkAccounts.INITIAL_BALANCE_UNITS + 1);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkAccounts.close(this.repository);
+  }
+
+  @Benchmark
+  public Object transfer() {
+    try {
+      this.accountsService.transfer(this.transfer);
+      return null;
+    } catch (RuntimeException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public TransferResult tryTransfer() {
+    return this.accountsService.tryTransfer(this.transfer);
+  }
+}
@@ -1,8 +1,10 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import lombok.Data;
@@ -11,23 +13,38 @@ import org.hibernate.validator.constraints.NotEmpty;
 @Data
 public class Account {
 
+  private static final AtomicLongFieldUpdater<Account> BALANCE_UPDATER =
+    AtomicLongFieldUpdater.newUpdater(Account.class, "balanceUnits");
+
   @NotNull
   @NotEmpty
   private final String accountId;
 
-  @NotNull
+  @JsonIgnore
   @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  private volatile long balanceUnits;
 
   public Account(String accountId) {
     this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this.balanceUnits = 0;
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
     @JsonProperty("balance") BigDecimal balance) {
     this.accountId = accountId;
-    this.balance = balance;
+    this.balanceUnits = Money.toUnits(balance);
+  }
+
+  public BigDecimal getBalance() {
+    return Money.toBigDecimal(getBalanceUnits());
+  }
+
+  public void setBalance(BigDecimal balance) {
+    setBalanceUnits(Money.toUnits(balance));
+  }
+
+  public boolean compareAndSetBalanceUnits(long expectedBalance, long newBalance) {
+    return BALANCE_UPDATER.compareAndSet(this, expectedBalance, newBalance);
   }
 }
@@ -0,0 +1,21 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class AccountsQuery {
+
+  @NotNull
+  @Size(min = 1, max = 10000)
+  private final List<String> accountIds;
+
+  @JsonCreator
+  public AccountsQuery(@JsonProperty("accountIds") List<String> accountIds) {
+    this.accountIds = accountIds;
+  }
+}
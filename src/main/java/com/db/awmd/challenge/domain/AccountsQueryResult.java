@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Balances of the queried accounts and their sum, all as of the same moment.
+ */
+@Data
+public class AccountsQueryResult {
+
+  private final List<Account> accounts;
+
+  private final List<String> notFound;
+
+  private final BigDecimal totalBalance;
+}
@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+@Data
+public class AccountsTotal {
+
+  private final long accounts;
+
+  private final BigDecimal totalBalance;
+}
@@ -0,0 +1,157 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money: amounts are held as {@code long} minor units at a JVM-wide scale, set with
+ * {@code -Dmoney.scale=N} (default 2). {@link BigDecimal} is only used at the JSON boundary.
+ */
+public final class Money {
+
+  public static final int SCALE = Integer.getInteger("money.scale", 2);
+
+  static {
+    if (SCALE < 0 || SCALE > 18) {
+      throw new IllegalStateException("money.scale must be between 0 and 18, was " + SCALE);
+    }
+  }
+
+  private Money() {
+  }
+
+  public static long toUnits(BigDecimal amount) {
+    if (amount == null) {
+      throw new IllegalArgumentException("Amount must not be null!");
+    }
+
+    try {
+      return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+        "Amount " + amount + " cannot be represented with " + SCALE + " decimal places!", e);
+    }
+  }
+
+  /**
+   * Same as {@link #toUnits(BigDecimal)} on the decimal written in the given characters, without
+   * creating a {@link BigDecimal} for plain decimals.
+   */
+  public static long toUnits(char[] chars, int offset, int length) {
+    int end = offset + length;
+    int index = offset;
+    boolean negative = index < end && chars[index] == '-';
+    if (index < end && (negative || chars[index] == '+')) {
+      index++;
+    }
+
+    long units = 0;
+    int digits = 0;
+    int decimals = -1;
+    try {
+      for (; index < end; index++) {
+        char c = chars[index];
+        if (c >= '0' && c <= '9') {
+          if (decimals >= SCALE) {
+            if (c != '0') {
+              throw new IllegalArgumentException("Amount " + new String(chars, offset, length)
+                + " cannot be represented with " + SCALE + " decimal places!");
+            }
+          } else {
+            units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+          }
+          digits++;
+          if (decimals >= 0) {
+            decimals++;
+          }
+        } else if (c == '.' && decimals < 0) {
+          decimals = 0;
+        } else {
+          // exponents and anything unusual
+          return toUnits(new BigDecimal(chars, offset, length));
+        }
+      }
+      if (digits == 0) {
+        return toUnits(new BigDecimal(chars, offset, length));
+      }
+      for (int i = Math.max(decimals, 0); i < SCALE; i++) {
+        units = Math.multiplyExact(units, 10);
+      }
+    } catch (ArithmeticException e) {
+      return toUnits(new BigDecimal(chars, offset, length));
+    }
+    return negative ? -units : units;
+  }
+
+  /**
+   * Writes the amount as a plain decimal without trailing zeros, as {@link #toBigDecimal(long)}
+   * would, into the buffer, which must hold at least 21 characters. Returns the length written.
+   */
+  public static int format(long units, char[] buffer) {
+    if (units == Long.MIN_VALUE) {
+      String text = toBigDecimal(units).toPlainString();
+      text.getChars(0, text.length(), buffer, 0);
+      return text.length();
+    }
+
+    long magnitude = Math.abs(units);
+    int position = buffer.length;
+    int decimals = SCALE;
+    // trailing zeros of the fraction are dropped
+    while (decimals > 0 && magnitude % 10 == 0) {
+      magnitude /= 10;
+      decimals--;
+    }
+    for (int i = 0; i < decimals; i++) {
+      buffer[--position] = (char) ('0' + magnitude % 10);
+      magnitude /= 10;
+    }
+    if (decimals > 0) {
+      buffer[--position] = '.';
+    }
+    do {
+      buffer[--position] = (char) ('0' + magnitude % 10);
+      magnitude /= 10;
+    } while (magnitude > 0);
+    if (units < 0) {
+      buffer[--position] = '-';
+    }
+
+    int length = buffer.length - position;
+    System.arraycopy(buffer, position, buffer, 0, length);
+    return length;
+  }
+
+  public static BigDecimal toBigDecimal(long units) {
+    return normalize(BigDecimal.valueOf(units, SCALE));
+  }
+
+  /**
+   * For sums of many balances, which may not fit in a {@code long}.
+   */
+  public static BigDecimal toBigDecimal(BigInteger units) {
+    return normalize(new BigDecimal(units, SCALE));
+  }
+
+  private static BigDecimal normalize(BigDecimal amount) {
+    BigDecimal stripped = amount.stripTrailingZeros();
+    return stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+  }
+
+  public static long add(long balance, long amount) throws BalanceOverflowException {
+    if (!canAdd(balance, amount)) {
+      throw new BalanceOverflowException("Balance would overflow when adding " + toBigDecimal(amount) + "!");
+    }
+    return balance + amount;
+  }
+
+  /**
+   * Whether {@link #add} would succeed, for callers that report an overflow without throwing.
+   */
+  public static boolean canAdd(long balance, long amount) {
+    long result = balance + amount;
+    return ((balance ^ result) & (amount ^ result)) >= 0;
+  }
+}
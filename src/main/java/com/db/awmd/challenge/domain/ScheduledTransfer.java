@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Data;
+
+/**
+ * A transfer waiting for its execution time, under the id it can be cancelled with.
+ */
+@Data
+public class ScheduledTransfer {
+
+  private final long id;
+
+  private final Transfer transfer;
+}
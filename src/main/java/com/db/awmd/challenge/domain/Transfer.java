@@ -1,11 +1,13 @@
 package com.db.awmd.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 import java.math.BigDecimal;
 
 @Data
@@ -19,8 +21,22 @@ public class Transfer {
   @NotEmpty
   private String toAccountId;
 
-  @NotNull
-  private BigDecimal amount;
+  @JsonIgnore
+  private long amountUnits;
+
+  /**
+   * Optional key chosen by the client. A transfer repeated with the same key is not applied again;
+   * it gets the result of the first one. Batch items and atomic legs are not deduplicated, so they
+   * are refused if they carry a key.
+   */
+  @Size(min = 1, max = 128)
+  private String idempotencyKey;
+
+  /**
+   * Optional time, in epoch milliseconds, at which the transfer is to be applied. Only read when
+   * scheduling a transfer; the other transfer endpoints apply transfers straight away.
+   */
+  private Long executeAt;
 
   @JsonCreator
   public Transfer(
@@ -30,6 +46,16 @@ public class Transfer {
   ) {
     this.fromAccountId = fromAccountId;
     this.toAccountId = toAccountId;
-    this.amount = amount;
+    this.amountUnits = Money.toUnits(amount);
+  }
+
+  public Transfer(String fromAccountId, String toAccountId, long amountUnits) {
+    this.fromAccountId = fromAccountId;
+    this.toAccountId = toAccountId;
+    this.amountUnits = amountUnits;
+  }
+
+  public BigDecimal getAmount() {
+    return Money.toBigDecimal(this.amountUnits);
   }
 }
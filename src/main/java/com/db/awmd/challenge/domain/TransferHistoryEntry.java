@@ -0,0 +1,19 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import lombok.Data;
+
+/**
+ * One transfer as seen from one account: the amount is negative for money that left the account.
+ */
+@Data
+public class TransferHistoryEntry {
+
+  private final long sequence;
+
+  private final long timestamp;
+
+  private final String counterpartyAccountId;
+
+  private final BigDecimal amount;
+}
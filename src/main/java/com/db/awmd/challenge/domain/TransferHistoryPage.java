@@ -0,0 +1,18 @@
+package com.db.awmd.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Entries newest first. The next, older page is requested with {@code nextCursor}, which is absent
+ * on the last page.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferHistoryPage {
+
+  private final List<TransferHistoryEntry> transfers;
+
+  private final Long nextCursor;
+}
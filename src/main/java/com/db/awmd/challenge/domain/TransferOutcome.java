@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.Getter;
+
+public enum TransferOutcome {
+  OK(0),
+  INVALID(1),
+  SAME_ACCOUNT(2),
+  NO_AMOUNT(3),
+  ACCOUNT_NOT_FOUND(4),
+  NOT_ENOUGH_FUNDS(5),
+  BALANCE_OVERFLOW(6),
+  IDEMPOTENCY_KEY_REUSED(7),
+  THROTTLED(8);
+
+  /**
+   * Identifies the outcome on the wire, see {@link com.db.awmd.challenge.tcp.TransferProtocol}.
+   * Codes are never changed or reused, whatever the order of the constants.
+   */
+  @Getter
+  private final int code;
+
+  TransferOutcome(int code) {
+    this.code = code;
+  }
+}
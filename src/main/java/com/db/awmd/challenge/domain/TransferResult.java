@@ -0,0 +1,115 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import com.db.awmd.challenge.exception.TransferNoAmountException;
+import com.db.awmd.challenge.exception.TransferSameAccountException;
+import com.db.awmd.challenge.exception.TransferThrottledException;
+import lombok.Getter;
+
+/**
+ * How a transfer ended: the two accounts if it was applied, otherwise the outcome saying why it
+ * was refused. Refusals are returned rather than thrown, so refusing a transfer costs about as
+ * much as applying one; the message of the common refusals is only built when asked for.
+ */
+public final class TransferResult {
+
+  @Getter
+  private final TransferOutcome outcome;
+
+  @Getter
+  private final Account fromAccount;
+
+  @Getter
+  private final Account toAccount;
+
+  // the account a refusal is about, from which its message is built
+  private final String accountId;
+
+  private final String message;
+
+  private TransferResult(
+    TransferOutcome outcome,
+    Account fromAccount,
+    Account toAccount,
+    String accountId,
+    String message
+  ) {
+    this.outcome = outcome;
+    this.fromAccount = fromAccount;
+    this.toAccount = toAccount;
+    this.accountId = accountId;
+    this.message = message;
+  }
+
+  public static TransferResult ok(Account fromAccount, Account toAccount) {
+    return new TransferResult(TransferOutcome.OK, fromAccount, toAccount, null, null);
+  }
+
+  public static TransferResult refused(TransferOutcome outcome, String message) {
+    return new TransferResult(outcome, null, null, null, message);
+  }
+
+  public static TransferResult accountNotFound(String accountId) {
+    return new TransferResult(TransferOutcome.ACCOUNT_NOT_FOUND, null, null, accountId, null);
+  }
+
+  public static TransferResult notEnoughFunds(String accountId) {
+    return new TransferResult(TransferOutcome.NOT_ENOUGH_FUNDS, null, null, accountId, null);
+  }
+
+  public static TransferResult balanceOverflow(long amountUnits) {
+    return refused(
+      TransferOutcome.BALANCE_OVERFLOW,
+      "Balance would overflow when adding " + Money.toBigDecimal(amountUnits) + "!");
+  }
+
+  public boolean isOk() {
+    return this.outcome == TransferOutcome.OK;
+  }
+
+  /**
+   * Why the transfer was refused, or null if it was applied.
+   */
+  public String getMessage() {
+    switch (this.outcome) {
+      case ACCOUNT_NOT_FOUND:
+        return "Account " + this.accountId + " not found!";
+      case NOT_ENOUGH_FUNDS:
+        return "Account " + this.accountId + " does not have enough money!";
+      default:
+        return this.message;
+    }
+  }
+
+  /**
+   * The exception the throwing transfer methods raise for this refusal.
+   */
+  public RuntimeException toException() {
+    switch (this.outcome) {
+      case ACCOUNT_NOT_FOUND:
+        return new AccountNotFoundException(this.getMessage());
+      case NOT_ENOUGH_FUNDS:
+        return new NotEnoughFundsException(this.getMessage());
+      case SAME_ACCOUNT:
+        return new TransferSameAccountException(this.getMessage());
+      case NO_AMOUNT:
+        return new TransferNoAmountException(this.getMessage());
+      case BALANCE_OVERFLOW:
+        return new BalanceOverflowException(this.getMessage());
+      case IDEMPOTENCY_KEY_REUSED:
+        return new IdempotencyKeyReusedException(this.getMessage());
+      case THROTTLED:
+        return new TransferThrottledException(this.getMessage());
+      default:
+        throw new IllegalStateException("Transfer " + this.outcome + " was not refused");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return this.isOk() ? "TransferResult(OK)" : "TransferResult(" + this.outcome + ": " + this.getMessage() + ")";
+  }
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class BalanceOverflowException extends RuntimeException {
+
+  public BalanceOverflowException(String message) {
+    super(message);
+  }
+}
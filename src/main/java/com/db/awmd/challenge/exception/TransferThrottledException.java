@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class TransferThrottledException extends RuntimeException {
+
+  public TransferThrottledException(String message) {
+    super(message);
+  }
+}
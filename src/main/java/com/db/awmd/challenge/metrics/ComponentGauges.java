@@ -0,0 +1,58 @@
+package com.db.awmd.challenge.metrics;
+
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.service.AsyncTransferNotifier;
+import com.db.awmd.challenge.service.CasTransferEngine;
+import com.db.awmd.challenge.tcp.TransferServer;
+import com.db.awmd.challenge.web.AsyncTransferController;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the statistics the optional components already keep as gauges, for whichever of
+ * those components are enabled.
+ */
+@Component
+public class ComponentGauges {
+
+  @Autowired
+  public ComponentGauges(
+    MetricsRegistry registry,
+    Optional<AsyncTransferNotifier> asyncTransferNotifier,
+    Optional<JournalingAccountsRepository> journalingRepository,
+    Optional<OffHeapAccountsRepository> offHeapRepository,
+    Optional<AsyncTransferController> asyncTransferController,
+    Optional<TransferServer> transferServer,
+    Optional<CasTransferEngine> casTransferEngine
+  ) {
+    asyncTransferNotifier.ifPresent(notifier -> {
+      registry.gauge("notifications.enqueued", notifier::getEnqueued);
+      registry.gauge("notifications.delivered", notifier::getDelivered);
+      registry.gauge("notifications.dropped", notifier::getDropped);
+      registry.gauge("notifications.batches", notifier::getBatches);
+      registry.gauge("notifications.failures", notifier::getFailures);
+      registry.gauge("notifications.queue-depth", notifier::getQueueDepth);
+    });
+
+    journalingRepository.ifPresent(repository -> {
+      registry.gauge("journal.recovery.millis", repository::getRecoveryMillis);
+      registry.gauge("journal.recovery.snapshot-accounts", repository::getSnapshotAccountsLoaded);
+      registry.gauge("journal.recovery.replayed-records", repository::getJournalRecordsReplayed);
+      registry.gauge("journal.snapshots.written", repository::getSnapshotsWritten);
+      registry.gauge("journal.snapshots.last-accounts", repository::getLastSnapshotAccounts);
+      registry.gauge("journal.snapshots.last-millis", repository::getLastSnapshotMillis);
+    });
+
+    offHeapRepository.ifPresent(repository -> registry.gauge("accounts.offheap.size", repository::size));
+
+    asyncTransferController.ifPresent(
+      controller -> registry.gauge("web.async.queue-depth", controller::getQueueDepth));
+
+    transferServer.ifPresent(server -> registry.gauge("tcp.connections", server::getConnections));
+
+    casTransferEngine.ifPresent(
+      engine -> registry.gauge("transfers.cas.unrefunded-units", engine::getUnrefundedUnits));
+  }
+}
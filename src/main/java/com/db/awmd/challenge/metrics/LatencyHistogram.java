@@ -0,0 +1,145 @@
+package com.db.awmd.challenge.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of non-negative values, in the spirit of HdrHistogram: every power of two
+ * is split into 32 equal buckets, so any recorded value is reported within about 3% of its true
+ * value.
+ *
+ * <p>Recording allocates nothing and takes no lock. Each thread records into one of a few
+ * striped bucket arrays, picked by its id, so threads rarely write to the same counters.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+  private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+  private final AtomicLongArray[] stripes;
+
+  private final int stripeMask;
+
+  private final AtomicLong max = new AtomicLong();
+
+  public LatencyHistogram() {
+    int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+    this.stripes = new AtomicLongArray[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+    this.stripeMask = stripes - 1;
+  }
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    int stripe = (int) Thread.currentThread().getId() & this.stripeMask;
+    this.stripes[stripe].incrementAndGet(bucketOf(value));
+
+    long currentMax = this.max.get();
+    while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+      currentMax = this.max.get();
+    }
+  }
+
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (AtomicLongArray stripe : this.stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += stripe.get(i);
+      }
+    }
+    return new Snapshot(counts, this.max.get());
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  public static final class Snapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long max;
+
+    private Snapshot(long[] counts, long max) {
+      this.counts = counts;
+      long count = 0;
+      for (long bucketCount : counts) {
+        count += bucketCount;
+      }
+      this.count = count;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return this.count;
+    }
+
+    public long getMax() {
+      return this.max;
+    }
+
+    public double getMean() {
+      if (this.count == 0) {
+        return 0;
+      }
+      double sum = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        sum += (double) this.counts[i] * Math.min(highestValueOf(i), this.max);
+      }
+      return sum / this.count;
+    }
+
+    public long getValueAtPercentile(double percentile) {
+      if (this.count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += this.counts[i];
+        if (seen >= rank) {
+          return Math.min(highestValueOf(i), this.max);
+        }
+      }
+      return this.max;
+    }
+
+    public Map<String, Object> toMap() {
+      Map<String, Object> values = new LinkedHashMap<>();
+      values.put("count", this.count);
+      values.put("mean", Math.round(this.getMean()));
+      for (double percentile : REPORTED_PERCENTILES) {
+        values.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", ""),
+          this.getValueAtPercentile(percentile));
+      }
+      values.put("max", this.max);
+      return values;
+    }
+  }
+}
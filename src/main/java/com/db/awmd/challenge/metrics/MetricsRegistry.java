@@ -0,0 +1,52 @@
+package com.db.awmd.challenge.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Named counters, latency histograms and gauges. Components look up their counters and
+ * histograms once and keep the references, so recording never goes through the registry.
+ */
+@Component
+public class MetricsRegistry {
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+  private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+  public LongAdder counter(String name) {
+    return this.counters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  public LatencyHistogram histogram(String name) {
+    return this.histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  public void gauge(String name, Supplier<? extends Number> value) {
+    this.gauges.put(name, value);
+  }
+
+  public Map<String, Object> snapshot() {
+    Map<String, Object> counters = new TreeMap<>();
+    this.counters.forEach((name, counter) -> counters.put(name, counter.sum()));
+
+    Map<String, Object> histograms = new TreeMap<>();
+    this.histograms.forEach((name, histogram) -> histograms.put(name, histogram.snapshot().toMap()));
+
+    Map<String, Object> gauges = new TreeMap<>();
+    this.gauges.forEach((name, gauge) -> gauges.put(name, gauge.get()));
+
+    Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("counters", counters);
+    snapshot.put("histograms", histograms);
+    snapshot.put("gauges", gauges);
+    return snapshot;
+  }
+}
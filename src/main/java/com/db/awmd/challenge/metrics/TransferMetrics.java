@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.metrics;
+
+import com.db.awmd.challenge.domain.TransferOutcome;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The instruments of the transfer path. All durations are in nanoseconds.
+ */
+@Component
+@Getter
+public class TransferMetrics {
+
+  @Getter(AccessLevel.NONE)
+  private final LongAdder[] outcomes = new LongAdder[TransferOutcome.values().length];
+
+  private final LongAdder errors;
+
+  private final LatencyHistogram transferLatency;
+
+  private final LatencyHistogram engineLatency;
+
+  private final LatencyHistogram notificationLatency;
+
+  private final LatencyHistogram repositoryGetLatency;
+
+  private final LatencyHistogram repositoryUpdateLatency;
+
+  @Autowired
+  public TransferMetrics(MetricsRegistry registry) {
+    for (TransferOutcome outcome : TransferOutcome.values()) {
+      this.outcomes[outcome.ordinal()] =
+        registry.counter("transfers.outcome." + outcome.name().toLowerCase().replace('_', '-'));
+    }
+    this.errors = registry.counter("transfers.outcome.error");
+    this.transferLatency = registry.histogram("transfers.latency.nanos");
+    this.engineLatency = registry.histogram("transfers.engine.nanos");
+    this.notificationLatency = registry.histogram("transfers.notification.nanos");
+    this.repositoryGetLatency = registry.histogram("accounts.repository.get.nanos");
+    this.repositoryUpdateLatency = registry.histogram("accounts.repository.update.nanos");
+  }
+
+  public void outcome(TransferOutcome outcome) {
+    this.outcomes[outcome.ordinal()].increment();
+  }
+}
@@ -0,0 +1,551 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of account changes, written to memory-mapped segment files of a fixed size.
+ *
+ * <p>Each record is {@code [payload length][CRC32 of payload][payload]} and carries absolute
+ * balances, so replaying any suffix of the journal on top of an older state is safe. A record
+ * that is cut short or fails its checksum marks the end of the journal. Account ids are stored
+ * with a two-byte length, so ids of more than {@link #MAX_ACCOUNT_ID_BYTES} bytes are refused.
+ */
+@Slf4j
+public class AccountsJournal implements Closeable {
+
+  public interface ReplayHandler {
+
+    void created(String accountId, long balanceUnits);
+
+    void updated(String accountId, long balanceUnits);
+
+    void cleared();
+  }
+
+  public static final int MAX_ACCOUNT_ID_BYTES = 0xffff;
+
+  private static final int MAGIC = 0x4a524e4c;
+
+  // version 1 segments counted the accounts of an update record in two bytes; they are still
+  // replayed, but only appended to in the current version
+  private static final int VERSION = 2;
+
+  private static final int SEGMENT_HEADER_SIZE = 16;
+
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private static final byte CREATE = 1;
+
+  private static final byte UPDATE = 2;
+
+  private static final byte CLEAR = 3;
+
+  private final Path directory;
+
+  private final int segmentSize;
+
+  private final JournalSyncPolicy syncPolicy;
+
+  private final long syncIntervalMillis;
+
+  private final ReentrantLock appendLock = new ReentrantLock();
+
+  private final List<Segment> segments = new ArrayList<>();
+
+  private Segment current;
+
+  private long writtenPosition;
+
+  private final Object flushMonitor = new Object();
+
+  private volatile long durablePosition;
+
+  private long requestedPosition;
+
+  private volatile boolean running;
+
+  private Thread flusher;
+
+  private final ThreadLocal<long[]> lastAppendedPosition = ThreadLocal.withInitial(() -> new long[1]);
+
+  private final ThreadLocal<ByteBuffer> encodeBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+  private final ThreadLocal<CRC32> checksum = ThreadLocal.withInitial(CRC32::new);
+
+  public AccountsJournal(Path directory, int segmentSize, JournalSyncPolicy syncPolicy, long syncIntervalMillis) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.syncPolicy = syncPolicy;
+    this.syncIntervalMillis = syncIntervalMillis;
+  }
+
+  /**
+   * Replays every record from the given position onwards, then opens the journal for appending
+   * right after the last valid record. Returns the number of records replayed.
+   */
+  public long open(long fromPosition, ReplayHandler handler) throws IOException {
+    Files.createDirectories(this.directory);
+
+    long replayed = 0;
+    boolean torn = false;
+    boolean skipped = false;
+    for (Path file : this.segmentFiles()) {
+      if (torn) {
+        // nothing written after a torn record was ever acknowledged as durable
+        log.warn("Discarding journal segment {} written after a torn record", file);
+        Files.delete(file);
+        continue;
+      }
+
+      Segment segment = this.mapSegment(file, segmentIndexOf(file), false);
+      if (this.current != null && this.current.index != segment.index - 1) {
+        throw new IOException("Journal segment " + file + " does not follow segment " + this.current.index);
+      }
+      this.segments.add(segment);
+      this.current = segment;
+
+      long segmentStart = segment.index * (long) this.segmentSize;
+      skipped = segmentStart + this.segmentSize <= fromPosition;
+      if (skipped) {
+        continue;
+      }
+
+      int offset = segmentStart >= fromPosition ? SEGMENT_HEADER_SIZE : (int) (fromPosition - segmentStart);
+      ReplayResult result = this.replaySegment(segment, offset, handler);
+      replayed += result.records;
+      if (result.torn) {
+        log.warn("Journal segment {} ends with a torn record at offset {}", file, segment.buffer.position());
+        this.discardTail(segment);
+        torn = true;
+      }
+    }
+
+    if (this.current == null) {
+      this.current = this.createSegment(fromPosition / this.segmentSize);
+      this.segments.add(this.current);
+    } else if (this.current.version != VERSION || skipped) {
+      // a skipped segment was never scanned for its end, but the position it was skipped for shows
+      // it was filled up to the end
+      this.current = this.createSegment(this.current.index + 1);
+      this.segments.add(this.current);
+    }
+    this.writtenPosition = this.current.index * (long) this.segmentSize + this.current.buffer.position();
+    this.durablePosition = this.writtenPosition;
+    this.requestedPosition = this.writtenPosition;
+
+    this.running = true;
+    if (this.syncPolicy != JournalSyncPolicy.OS) {
+      this.flusher = new Thread(this::flushLoop, "journal-flusher");
+      this.flusher.setDaemon(true);
+      this.flusher.start();
+    }
+    return replayed;
+  }
+
+  /**
+   * Throws if the account id is too long to be journaled.
+   */
+  public static void checkAccountId(String accountId) {
+    // a char takes at most three bytes in UTF-8, so only long ids need encoding
+    if (accountId.length() * 3 > MAX_ACCOUNT_ID_BYTES
+      && accountId.getBytes(StandardCharsets.UTF_8).length > MAX_ACCOUNT_ID_BYTES) {
+      throw new IllegalArgumentException("Account id is longer than " + MAX_ACCOUNT_ID_BYTES + " bytes!");
+    }
+  }
+
+  public void appendCreate(String accountId, long balanceUnits) {
+    ByteBuffer payload = this.startPayload(CREATE, 32 + accountId.length() * 3);
+    payload = putAccount(payload, accountId, balanceUnits);
+    this.append(payload);
+  }
+
+  public void appendUpdate(List<Account> accounts) {
+    ByteBuffer payload = this.startPayload(UPDATE, 8 + accounts.size() * 64);
+    payload.putInt(accounts.size());
+    for (Account account : accounts) {
+      payload = putAccount(payload, account.getAccountId(), account.getBalanceUnits());
+    }
+    this.append(payload);
+  }
+
+  public void appendClear() {
+    this.append(this.startPayload(CLEAR, 1));
+  }
+
+  /**
+   * Returns the position right after the last record appended by any thread.
+   */
+  public long position() {
+    this.appendLock.lock();
+    try {
+      return this.writtenPosition;
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the records appended by the calling thread are on disk, when the sync policy asks
+   * for it. All threads waiting at the same time are released by a single force of the journal.
+   */
+  public void awaitDurable() {
+    long position = this.lastAppendedPosition.get()[0];
+    if (this.syncPolicy != JournalSyncPolicy.EVERY_OP || this.durablePosition >= position) {
+      return;
+    }
+
+    synchronized (this.flushMonitor) {
+      if (this.requestedPosition < position) {
+        this.requestedPosition = position;
+        this.flushMonitor.notifyAll();
+      }
+      while (this.durablePosition < position) {
+        if (!this.running) {
+          throw new IllegalStateException("Journal closed before the write became durable!");
+        }
+        try {
+          this.flushMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for the journal!", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Forces everything appended so far to disk, whatever the sync policy.
+   */
+  public void sync() {
+    this.flush();
+  }
+
+  /**
+   * Drops the segments that only hold records before the given position.
+   */
+  public void truncateBefore(long position) throws IOException {
+    List<Segment> obsolete = new ArrayList<>();
+    this.appendLock.lock();
+    try {
+      while (this.segments.size() > 1
+        && (this.segments.get(0).index + 1) * (long) this.segmentSize <= position) {
+        obsolete.add(this.segments.remove(0));
+      }
+    } finally {
+      this.appendLock.unlock();
+    }
+
+    for (Segment segment : obsolete) {
+      segment.channel.close();
+      Files.deleteIfExists(segment.file);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.running = false;
+    if (this.flusher != null) {
+      this.flusher.interrupt();
+      try {
+        this.flusher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.flush();
+
+    synchronized (this.flushMonitor) {
+      this.flushMonitor.notifyAll();
+    }
+    for (Segment segment : this.segments) {
+      segment.channel.close();
+    }
+  }
+
+  private ByteBuffer startPayload(byte type, int expectedSize) {
+    ByteBuffer payload = this.encodeBuffer.get();
+    if (payload.capacity() < expectedSize) {
+      payload = ByteBuffer.allocate(Math.max(expectedSize, payload.capacity() * 2));
+      this.encodeBuffer.set(payload);
+    }
+    payload.clear();
+    payload.put(type);
+    return payload;
+  }
+
+  private ByteBuffer putAccount(ByteBuffer payload, String accountId, long balanceUnits) {
+    byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+    if (id.length > MAX_ACCOUNT_ID_BYTES) {
+      throw new IllegalArgumentException("Account id is longer than " + MAX_ACCOUNT_ID_BYTES + " bytes!");
+    }
+    if (payload.remaining() < id.length + 10) {
+      ByteBuffer larger = ByteBuffer.allocate((payload.capacity() + id.length + 10) * 2);
+      payload.flip();
+      larger.put(payload);
+      this.encodeBuffer.set(larger);
+      payload = larger;
+    }
+    payload.putShort((short) id.length);
+    payload.put(id);
+    payload.putLong(balanceUnits);
+    return payload;
+  }
+
+  private void append(ByteBuffer payload) {
+    payload.flip();
+    int length = payload.remaining();
+    if (RECORD_HEADER_SIZE + length > this.segmentSize - SEGMENT_HEADER_SIZE) {
+      throw new IllegalArgumentException("Journal record of " + length + " bytes does not fit in a segment!");
+    }
+
+    CRC32 crc = this.checksum.get();
+    crc.reset();
+    crc.update(payload);
+    payload.flip();
+
+    this.appendLock.lock();
+    try {
+      if (this.current.buffer.remaining() < RECORD_HEADER_SIZE + length) {
+        this.current = this.createSegment(this.current.index + 1);
+        this.segments.add(this.current);
+      }
+
+      MappedByteBuffer buffer = this.current.buffer;
+      buffer.putInt(length);
+      buffer.putInt((int) crc.getValue());
+      buffer.put(payload);
+
+      this.writtenPosition = this.current.index * (long) this.segmentSize + buffer.position();
+      this.lastAppendedPosition.get()[0] = this.writtenPosition;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to append to the journal", e);
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  private void flushLoop() {
+    while (this.running) {
+      try {
+        synchronized (this.flushMonitor) {
+          if (this.syncPolicy == JournalSyncPolicy.EVERY_OP) {
+            while (this.running && this.requestedPosition <= this.durablePosition) {
+              this.flushMonitor.wait();
+            }
+          } else {
+            this.flushMonitor.wait(this.syncIntervalMillis);
+          }
+        }
+        this.flush();
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.error("Failed to flush the journal", e);
+      }
+    }
+  }
+
+  private void flush() {
+    long target;
+    List<Segment> dirty = new ArrayList<>();
+    this.appendLock.lock();
+    try {
+      target = this.writtenPosition;
+      long firstDirtySegment = this.durablePosition / this.segmentSize;
+      for (Segment segment : this.segments) {
+        if (segment.index >= firstDirtySegment) {
+          dirty.add(segment);
+        }
+      }
+    } finally {
+      this.appendLock.unlock();
+    }
+
+    if (target <= this.durablePosition) {
+      return;
+    }
+    for (Segment segment : dirty) {
+      segment.buffer.force();
+    }
+
+    synchronized (this.flushMonitor) {
+      if (target > this.durablePosition) {
+        this.durablePosition = target;
+      }
+      this.flushMonitor.notifyAll();
+    }
+  }
+
+  private ReplayResult replaySegment(Segment segment, int offset, ReplayHandler handler) {
+    ByteBuffer buffer = segment.buffer;
+    buffer.position(SEGMENT_HEADER_SIZE);
+    ReplayResult result = new ReplayResult();
+    CRC32 crc = new CRC32();
+
+    while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      if (length == 0) {
+        buffer.position(start);
+        return result;
+      }
+
+      int expectedCrc = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        buffer.position(start);
+        result.torn = true;
+        return result;
+      }
+
+      ByteBuffer payload = buffer.slice();
+      payload.limit(length);
+      crc.reset();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != expectedCrc) {
+        buffer.position(start);
+        result.torn = true;
+        return result;
+      }
+      buffer.position(buffer.position() + length);
+
+      if (start >= offset) {
+        try {
+          applyRecord(payload, segment.version, handler);
+          result.records++;
+        } catch (BufferUnderflowException e) {
+          buffer.position(start);
+          result.torn = true;
+          return result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void applyRecord(ByteBuffer payload, int version, ReplayHandler handler) {
+    byte type = payload.get();
+    switch (type) {
+      case CREATE:
+        handler.created(readId(payload), payload.getLong());
+        break;
+      case UPDATE:
+        int count = version == 1 ? payload.getShort() & 0xffff : payload.getInt();
+        for (int i = 0; i < count; i++) {
+          handler.updated(readId(payload), payload.getLong());
+        }
+        break;
+      case CLEAR:
+        handler.cleared();
+        break;
+      default:
+        throw new IllegalStateException("Unknown journal record type " + type);
+    }
+  }
+
+  private static String readId(ByteBuffer payload) {
+    byte[] id = new byte[payload.getShort() & 0xffff];
+    payload.get(id);
+    return new String(id, StandardCharsets.UTF_8);
+  }
+
+  private void discardTail(Segment segment) {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(this.directory)) {
+      return files
+        .filter(file -> file.getFileName().toString().matches("journal-\\d+\\.log"))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+
+  private static long segmentIndexOf(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+  }
+
+  private Segment createSegment(long index) throws IOException {
+    Path file = this.directory.resolve(String.format("journal-%016d.log", index));
+    return this.mapSegment(file, index, true);
+  }
+
+  private Segment mapSegment(Path file, long index, boolean create) throws IOException {
+    FileChannel channel = create
+      ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+      : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+
+    if (create) {
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(Money.SCALE).putInt(this.segmentSize);
+    } else {
+      int magic = buffer.getInt();
+      int version = buffer.getInt();
+      int scale = buffer.getInt();
+      int size = buffer.getInt();
+      if (magic != MAGIC || version < 1 || version > VERSION) {
+        throw new IOException(file + " is not a journal segment");
+      }
+      if (size != this.segmentSize) {
+        throw new IOException(file + " has segment size " + size + " but the segment size is " + this.segmentSize);
+      }
+      if (scale != Money.SCALE) {
+        throw new IOException(file + " was written with money scale " + scale + " but the scale is " + Money.SCALE);
+      }
+      buffer.position(SEGMENT_HEADER_SIZE);
+      return new Segment(file, index, version, channel, buffer);
+    }
+    return new Segment(file, index, VERSION, channel, buffer);
+  }
+
+  private static final class Segment {
+
+    private final Path file;
+
+    private final long index;
+
+    private final int version;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private Segment(Path file, long index, int version, FileChannel channel, MappedByteBuffer buffer) {
+      this.file = file;
+      this.index = index;
+      this.version = version;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+  }
+
+  private static final class ReplayResult {
+
+    private long records;
+
+    private boolean torn;
+  }
+}
@@ -3,7 +3,9 @@ package com.db.awmd.challenge.repository;
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface AccountsRepository {
 
@@ -14,4 +16,33 @@ public interface AccountsRepository {
   void clearAccounts();
 
   Account updateAccount(Account account);
+
+  /**
+   * Passes every account to the given action. Accounts created or changed during the iteration
+   * may or may not be seen.
+   */
+  void forEachAccount(Consumer<Account> action);
+
+  /**
+   * Stores the accounts changed by a single operation, which a durable repository records as one
+   * unit.
+   */
+  default void updateAccounts(List<Account> accounts) {
+    accounts.forEach(this::updateAccount);
+  }
+
+  /**
+   * Whether changes made to the accounts this repository returns are already stored, so storing
+   * them again with {@link #updateAccounts} can be skipped.
+   */
+  default boolean isUpdatedInPlace() {
+    return false;
+  }
+
+  /**
+   * Waits until the changes made by the calling thread are durable. Callers should not hold any
+   * account lock while waiting.
+   */
+  default void awaitDurable() {
+  }
 }
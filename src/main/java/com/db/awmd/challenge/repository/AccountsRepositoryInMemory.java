@@ -5,9 +5,14 @@ import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 @Repository
+@Profile("!offheap")
+@Qualifier("accountStorage")
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
   private final Map<String, Account> accounts = new ConcurrentHashMap<>();
@@ -35,4 +40,14 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
   public Account updateAccount(Account account) {
     return accounts.put(account.getAccountId(), account);
   }
+
+  @Override
+  public boolean isUpdatedInPlace() {
+    return true;
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    accounts.values().forEach(action);
+  }
 }
@@ -0,0 +1,325 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact binary snapshots of all accounts, each tagged with the journal position it was started
+ * at.
+ *
+ * <p>A snapshot file is a sequence of chunks of {@code [id length][id][balance units]} entries,
+ * followed by a table with the offset, length, entry count and CRC32 of every chunk and a fixed
+ * size footer. Chunks are mapped and parsed independently, so loading scales with the cores.
+ */
+@Slf4j
+public class AccountsSnapshotStore {
+
+  public interface Loader {
+
+    void loaded(String accountId, long balanceUnits);
+
+    /**
+     * Called when a snapshot turns out to be damaged halfway through, before the next one is
+     * loaded.
+     */
+    void discardLoaded();
+  }
+
+  private static final int MAGIC = 0x534e4150;
+
+  private static final int VERSION = 1;
+
+  private static final int FOOTER_SIZE = 40;
+
+  private static final int TABLE_ENTRY_SIZE = 24;
+
+  private final Path directory;
+
+  private final int accountsPerChunk;
+
+  private final int retained;
+
+  public AccountsSnapshotStore(Path directory, int accountsPerChunk, int retained) {
+    if (retained < 1) {
+      throw new IllegalArgumentException("At least one snapshot must be retained!");
+    }
+    this.directory = directory;
+    this.accountsPerChunk = accountsPerChunk;
+    this.retained = retained;
+  }
+
+  /**
+   * Writes every account passed to the given source into a new snapshot for the given journal
+   * position, and removes the snapshots that are no longer retained. Returns the number of
+   * accounts written.
+   */
+  public long write(long journalPosition, Consumer<Consumer<Account>> source) throws IOException {
+    Files.createDirectories(this.directory);
+    Path temporary = this.directory.resolve(String.format("snapshot-%016d.tmp", journalPosition));
+
+    long accounts;
+    try (FileChannel channel = FileChannel.open(temporary,
+      StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ChunkWriter writer = new ChunkWriter(channel);
+      try {
+        source.accept(writer::add);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      writer.finish(journalPosition);
+      channel.force(true);
+      accounts = writer.accounts;
+    }
+
+    Files.move(temporary, this.snapshotFile(journalPosition), StandardCopyOption.ATOMIC_MOVE);
+    this.prune();
+    return accounts;
+  }
+
+  /**
+   * Loads the newest readable snapshot, falling back to older ones when a snapshot is damaged.
+   * Returns the journal position of the loaded snapshot.
+   */
+  public Optional<Long> loadLatest(Loader loader, int parallelism) throws IOException {
+    List<Path> snapshots = this.snapshotFiles();
+    Collections.reverse(snapshots);
+
+    for (Path snapshot : snapshots) {
+      try {
+        return Optional.of(this.load(snapshot, loader, parallelism));
+      } catch (IOException | RuntimeException e) {
+        log.warn("Skipping unreadable snapshot {}", snapshot, e);
+        loader.discardLoaded();
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns the journal position of the oldest retained snapshot: the journal must be kept from
+   * there on, so that any retained snapshot can still be recovered from.
+   */
+  public Optional<Long> oldestRetainedPosition() throws IOException {
+    List<Path> snapshots = this.snapshotFiles();
+    return snapshots.isEmpty() ? Optional.empty() : Optional.of(positionOf(snapshots.get(0)));
+  }
+
+  private long load(Path snapshot, Loader loader, int parallelism) throws IOException {
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+      ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+      readFully(channel, footer, channel.size() - FOOTER_SIZE);
+      footer.flip();
+      if (footer.getInt() != MAGIC || footer.getInt() != VERSION) {
+        throw new IOException(snapshot + " is not an account snapshot");
+      }
+      int scale = footer.getInt();
+      if (scale != Money.SCALE) {
+        throw new IOException(snapshot + " was written with money scale " + scale);
+      }
+      int chunks = footer.getInt();
+      long journalPosition = footer.getLong();
+      long accounts = footer.getLong();
+      long tableOffset = footer.getLong();
+
+      ByteBuffer table = ByteBuffer.allocate(chunks * TABLE_ENTRY_SIZE);
+      readFully(channel, table, tableOffset);
+      table.flip();
+
+      LongAdder loaded = new LongAdder();
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(chunk -> {
+          ByteBuffer entry = table.duplicate();
+          entry.position(chunk * TABLE_ENTRY_SIZE);
+          loaded.add(loadChunk(channel, entry.getLong(), entry.getInt(), entry.getInt(), entry.getLong(), loader));
+        })).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while loading " + snapshot, e);
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to load " + snapshot, e.getCause());
+      } finally {
+        pool.shutdown();
+      }
+
+      if (loaded.sum() != accounts) {
+        throw new IOException(snapshot + " holds " + loaded.sum() + " accounts instead of " + accounts);
+      }
+      log.info("Loaded {} accounts from snapshot {}", accounts, snapshot);
+      return journalPosition;
+    }
+  }
+
+  private static int loadChunk(FileChannel channel, long offset, int length, int count, long checksum, Loader loader) {
+    MappedByteBuffer buffer;
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(buffer.duplicate());
+    if (crc.getValue() != checksum) {
+      throw new IllegalStateException("Snapshot chunk at offset " + offset + " is damaged");
+    }
+
+    byte[] id = new byte[256];
+    for (int i = 0; i < count; i++) {
+      int idLength = buffer.getShort() & 0xffff;
+      if (idLength > id.length) {
+        id = new byte[idLength];
+      }
+      buffer.get(id, 0, idLength);
+      loader.loaded(new String(id, 0, idLength, StandardCharsets.UTF_8), buffer.getLong());
+    }
+    return count;
+  }
+
+  private void prune() throws IOException {
+    List<Path> snapshots = this.snapshotFiles();
+    for (int i = 0; i < snapshots.size() - this.retained; i++) {
+      Files.deleteIfExists(snapshots.get(i));
+    }
+  }
+
+  private List<Path> snapshotFiles() throws IOException {
+    if (!Files.isDirectory(this.directory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.list(this.directory)) {
+      return files
+        .filter(file -> file.getFileName().toString().matches("snapshot-\\d+\\.snap"))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+
+  private Path snapshotFile(long journalPosition) {
+    return this.directory.resolve(String.format("snapshot-%016d.snap", journalPosition));
+  }
+
+  private static long positionOf(Path snapshot) {
+    String name = snapshot.getFileName().toString();
+    return Long.parseLong(name.substring("snapshot-".length(), name.length() - ".snap".length()));
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of snapshot");
+      }
+      position += read;
+    }
+  }
+
+  private class ChunkWriter {
+
+    private final FileChannel channel;
+
+    private final ByteBuffer chunk = ByteBuffer.allocate(1 << 20);
+
+    private ByteBuffer table = ByteBuffer.allocate(1 << 16);
+
+    private final CRC32 crc = new CRC32();
+
+    private long chunkOffset;
+
+    private int chunkAccounts;
+
+    private int chunks;
+
+    private long accounts;
+
+    private ChunkWriter(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    private void add(Account account) {
+      byte[] id = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+      if (id.length > AccountsJournal.MAX_ACCOUNT_ID_BYTES) {
+        // the journal refuses such ids, so they cannot be in a journaled repository
+        throw new IllegalArgumentException("Account id is longer than " + AccountsJournal.MAX_ACCOUNT_ID_BYTES + " bytes!");
+      }
+      try {
+        if (this.chunkAccounts == accountsPerChunk || this.chunk.remaining() < id.length + 10) {
+          this.flushChunk();
+        }
+        this.chunk.putShort((short) id.length);
+        this.chunk.put(id);
+        this.chunk.putLong(account.getBalanceUnits());
+        this.chunkAccounts++;
+        this.accounts++;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void finish(long journalPosition) throws IOException {
+      this.flushChunk();
+      long tableOffset = this.chunkOffset;
+      this.table.flip();
+      writeFully(this.table);
+
+      ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+      footer.putInt(MAGIC).putInt(VERSION).putInt(Money.SCALE).putInt(this.chunks);
+      footer.putLong(journalPosition).putLong(this.accounts).putLong(tableOffset);
+      footer.flip();
+      writeFully(footer);
+    }
+
+    private void flushChunk() throws IOException {
+      if (this.chunkAccounts == 0) {
+        return;
+      }
+      this.chunk.flip();
+      int length = this.chunk.remaining();
+      this.crc.reset();
+      this.crc.update(this.chunk.duplicate());
+      writeFully(this.chunk);
+      this.chunk.clear();
+
+      if (this.table.remaining() < TABLE_ENTRY_SIZE) {
+        ByteBuffer larger = ByteBuffer.allocate(this.table.capacity() * 2);
+        this.table.flip();
+        larger.put(this.table);
+        this.table = larger;
+      }
+      this.table.putLong(this.chunkOffset).putInt(length).putInt(this.chunkAccounts).putLong(this.crc.getValue());
+
+      this.chunkOffset += length;
+      this.chunkAccounts = 0;
+      this.chunks++;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        this.channel.write(buffer);
+      }
+    }
+  }
+}
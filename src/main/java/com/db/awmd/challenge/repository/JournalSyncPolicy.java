@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.repository;
+
+public enum JournalSyncPolicy {
+  /**
+   * Every write waits until it is on disk. Concurrent writers share one force of the journal.
+   */
+  EVERY_OP,
+  /**
+   * The journal is forced every sync interval; writers do not wait for it.
+   */
+  INTERVAL,
+  /**
+   * The journal is only written back to disk when the operating system decides to.
+   */
+  OS
+}
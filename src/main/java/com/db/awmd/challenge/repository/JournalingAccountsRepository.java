@@ -0,0 +1,213 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Keeps the accounts in the configured account storage and records every change in an {@link AccountsJournal}. On
+ * startup the latest snapshot is loaded and only the journal written after it is replayed.
+ */
+@Slf4j
+@Primary
+@Repository
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class JournalingAccountsRepository implements AccountsRepository {
+
+  private final AccountsRepository accounts;
+
+  private final AccountsJournal journal;
+
+  private final AccountsSnapshotStore snapshots;
+
+  private final int loadParallelism;
+
+  @Getter
+  private long recoveryMillis;
+
+  @Getter
+  private long snapshotAccountsLoaded;
+
+  @Getter
+  private long journalRecordsReplayed;
+
+  @Getter
+  private volatile long snapshotsWritten;
+
+  @Getter
+  private volatile long lastSnapshotAccounts;
+
+  @Getter
+  private volatile long lastSnapshotMillis;
+
+  @Autowired
+  public JournalingAccountsRepository(
+    @Qualifier("accountStorage") AccountsRepository accounts,
+    @Value("${accounts.journal.directory:journal}") String directory,
+    @Value("${accounts.journal.segment-size:67108864}") int segmentSize,
+    @Value("${accounts.journal.sync-policy:EVERY_OP}") JournalSyncPolicy syncPolicy,
+    @Value("${accounts.journal.sync-interval-ms:10}") long syncIntervalMillis,
+    @Value("${accounts.journal.snapshot.accounts-per-chunk:65536}") int accountsPerChunk,
+    @Value("${accounts.journal.snapshot.retained:2}") int retainedSnapshots,
+    @Value("${accounts.transfer-engine:locking}") String transferEngine
+  ) {
+    if (!"locking".equals(transferEngine)) {
+      // the CAS and sharded engines change balances in place without going through the repository
+      throw new IllegalStateException("The account journal requires the locking transfer engine!");
+    }
+
+    Path path = Paths.get(directory);
+    this.accounts = accounts;
+    this.journal = new AccountsJournal(path, segmentSize, syncPolicy, syncIntervalMillis);
+    this.snapshots = new AccountsSnapshotStore(path, accountsPerChunk, retainedSnapshots);
+    this.loadParallelism = Runtime.getRuntime().availableProcessors();
+  }
+
+  @PostConstruct
+  public void open() throws IOException {
+    long start = System.nanoTime();
+
+    LongAdder loaded = new LongAdder();
+    long snapshotPosition = this.snapshots.loadLatest(new AccountsSnapshotStore.Loader() {
+      @Override
+      public void loaded(String accountId, long balanceUnits) {
+        accounts.createAccount(accountOf(accountId, balanceUnits));
+        loaded.increment();
+      }
+
+      @Override
+      public void discardLoaded() {
+        accounts.clearAccounts();
+        loaded.reset();
+      }
+    }, this.loadParallelism).orElse(0L);
+
+    this.journalRecordsReplayed = this.journal.open(snapshotPosition, new AccountsJournal.ReplayHandler() {
+      @Override
+      public void created(String accountId, long balanceUnits) {
+        if (!accounts.getAccount(accountId).isPresent()) {
+          accounts.createAccount(accountOf(accountId, balanceUnits));
+        }
+      }
+
+      @Override
+      public void updated(String accountId, long balanceUnits) {
+        Optional<Account> account = accounts.getAccount(accountId);
+        if (account.isPresent()) {
+          account.get().setBalanceUnits(balanceUnits);
+        } else {
+          accounts.createAccount(accountOf(accountId, balanceUnits));
+        }
+      }
+
+      @Override
+      public void cleared() {
+        accounts.clearAccounts();
+      }
+    });
+
+    this.snapshotAccountsLoaded = loaded.sum();
+    this.recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+    log.info("Recovered accounts in {} ms: {} from the snapshot, then {} journal records replayed",
+      this.recoveryMillis, this.snapshotAccountsLoaded, this.journalRecordsReplayed);
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    this.journal.close();
+  }
+
+  /**
+   * Writes a snapshot of all accounts while transfers go on, then drops the journal segments no
+   * retained snapshot needs anymore.
+   *
+   * <p>The snapshot is fuzzy: each balance is read at some point after the snapshot's journal
+   * position, and replaying the journal from that position brings every account to its latest
+   * balance. The {@code inFlightFence} must return only once every change that was visible in
+   * memory has been appended to the journal; the snapshot is published after the journal is
+   * forced, so it never holds a balance the journal could lose.
+   */
+  public void writeSnapshot(Runnable inFlightFence) throws IOException {
+    long start = System.nanoTime();
+    long position = this.journal.position();
+
+    long written = this.snapshots.write(position, account -> {
+      this.accounts.forEachAccount(account);
+      inFlightFence.run();
+      this.journal.sync();
+    });
+
+    Optional<Long> oldestRetained = this.snapshots.oldestRetainedPosition();
+    if (oldestRetained.isPresent()) {
+      this.journal.truncateBefore(oldestRetained.get());
+    }
+
+    this.lastSnapshotAccounts = written;
+    this.lastSnapshotMillis = (System.nanoTime() - start) / 1_000_000;
+    this.snapshotsWritten++;
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    AccountsJournal.checkAccountId(account.getAccountId());
+    this.accounts.createAccount(account);
+    // a concurrent transfer may journal the account first, which replay tolerates
+    this.journal.appendCreate(account.getAccountId(), account.getBalanceUnits());
+  }
+
+  @Override
+  public Optional<Account> getAccount(String accountId) {
+    return this.accounts.getAccount(accountId);
+  }
+
+  @Override
+  public void clearAccounts() {
+    this.accounts.clearAccounts();
+    this.journal.appendClear();
+  }
+
+  @Override
+  public Account updateAccount(Account account) {
+    this.journal.appendUpdate(Collections.singletonList(account));
+    return this.accounts.updateAccount(account);
+  }
+
+  @Override
+  public void updateAccounts(List<Account> accounts) {
+    this.journal.appendUpdate(accounts);
+    accounts.forEach(this.accounts::updateAccount);
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    this.accounts.forEachAccount(action);
+  }
+
+  @Override
+  public void awaitDurable() {
+    this.journal.awaitDurable();
+  }
+
+  private static Account accountOf(String accountId, long balanceUnits) {
+    Account account = new Account(accountId);
+    account.setBalanceUnits(balanceUnits);
+    return account;
+  }
+}
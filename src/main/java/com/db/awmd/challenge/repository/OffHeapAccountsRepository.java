@@ -0,0 +1,367 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Stores account ids outside of the Java heap and balances in primitive arrays, so the heap holds
+ * no object per account and GC pauses do not grow with the number of accounts.
+ *
+ * <p>Accounts are appended to direct buffer chunks as {@code [hash][id length][balance slot][id
+ * chars]} records and never move. An open-addressing index maps ids to records; its entries are
+ * plain longs packing a hash tag with the record handle, so the index is a single primitive array
+ * the GC never has to trace. Lookups are lock-free, creations are serialized.
+ *
+ * <p>Balances are not kept in the direct buffers: they are changed with compare-and-swap, which
+ * Java 8 only offers on direct memory through {@code sun.misc.Unsafe}. They are kept on the heap
+ * instead, in {@link AtomicLongArray} chunks with one slot per account, numbered in order of
+ * creation, so the heap cost is 8 bytes per account and the GC sees one array per 65536 accounts.
+ *
+ * <p>{@link #getAccount} returns a view of the stored record: balance changes made through it
+ * are stored immediately. Accounts passed to {@link #createAccount} are copied, so later changes
+ * to those objects are not seen by the repository.
+ */
+@Repository
+@Profile("offheap")
+@Qualifier("accountStorage")
+public class OffHeapAccountsRepository implements AccountsRepository {
+
+  private static final int CHUNK_SHIFT = 20;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+  private static final int OFFSET_MASK = CHUNK_SIZE - 1;
+
+  private static final int BALANCE_CHUNK_SHIFT = 16;
+
+  private static final int BALANCE_CHUNK_SIZE = 1 << BALANCE_CHUNK_SHIFT;
+
+  private static final int HASH_OFFSET = 0;
+
+  private static final int LENGTH_OFFSET = 4;
+
+  private static final int SLOT_OFFSET = 6;
+
+  private static final int ID_OFFSET = 10;
+
+  private static final int MAX_ID_LENGTH = 0xffff;
+
+  private static final int HANDLE_BITS = 40;
+
+  private static final long HANDLE_MASK = (1L << HANDLE_BITS) - 1;
+
+  private final int initialCapacity;
+
+  private final Object writeLock = new Object();
+
+  // replaced as a whole when the accounts are cleared, so a reader never pairs an index with the
+  // chunks of another generation
+  private volatile Storage storage;
+
+  @Autowired
+  public OffHeapAccountsRepository(@Value("${accounts.offheap.initial-capacity:65536}") int initialCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16));
+    if (capacity < initialCapacity) {
+      capacity <<= 1;
+    }
+    this.initialCapacity = capacity;
+    this.storage = new Storage(capacity);
+  }
+
+  @Override
+  public void createAccount(Account account) throws DuplicateAccountIdException {
+    String accountId = account.getAccountId();
+    if (accountId.length() > MAX_ID_LENGTH) {
+      throw new IllegalArgumentException("Account id is longer than " + MAX_ID_LENGTH + " characters!");
+    }
+
+    int hash = hashOf(accountId);
+    synchronized (this.writeLock) {
+      Storage storage = this.storage;
+      if (storage.find(accountId, hash) != 0) {
+        throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+      }
+      storage.insert(accountId, hash, account.getBalanceUnits());
+    }
+  }
+
+  @Override
+  public Optional<Account> getAccount(String accountId) {
+    Storage storage = this.storage;
+    long entry = storage.find(accountId, hashOf(accountId));
+    return entry == 0 ? Optional.empty() : Optional.of(storage.view(accountId, entry));
+  }
+
+  @Override
+  public void clearAccounts() {
+    synchronized (this.writeLock) {
+      // concurrent readers may still hold views of the old records; the old chunks are released
+      // by the GC once nothing refers to them
+      this.storage = new Storage(this.initialCapacity);
+    }
+  }
+
+  @Override
+  public boolean isUpdatedInPlace() {
+    return true;
+  }
+
+  @Override
+  public Account updateAccount(Account account) {
+    if (account instanceof OffHeapAccount) {
+      // views write their balance through to the record
+      return account;
+    }
+
+    String accountId = account.getAccountId();
+    int hash = hashOf(accountId);
+    synchronized (this.writeLock) {
+      Storage storage = this.storage;
+      long entry = storage.find(accountId, hash);
+      if (entry == 0) {
+        storage.insert(accountId, hash, account.getBalanceUnits());
+        return null;
+      }
+      Account stored = storage.view(accountId, entry);
+      stored.setBalanceUnits(account.getBalanceUnits());
+      return stored;
+    }
+  }
+
+  @Override
+  public void forEachAccount(Consumer<Account> action) {
+    Storage storage = this.storage;
+    AtomicLongArray index = storage.index;
+    for (int slot = 0; slot < index.length(); slot++) {
+      long entry = index.get(slot);
+      if (entry != 0) {
+        action.accept(storage.view(storage.readId(entry), entry));
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (this.writeLock) {
+      return this.storage.size;
+    }
+  }
+
+  /**
+   * Drops the stored accounts. Direct buffers are freed by the GC, so nothing has to be released
+   * explicitly.
+   */
+  @PreDestroy
+  public void close() {
+    this.clearAccounts();
+  }
+
+  private static int hashOf(String accountId) {
+    int hash = accountId.hashCode() * 0x9e3779b9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static long tagOf(int hash) {
+    return ((long) (hash >>> 9)) << HANDLE_BITS;
+  }
+
+  private static void place(AtomicLongArray index, long entry, int hash) {
+    int mask = index.length() - 1;
+    int slot = hash & mask;
+    while (index.get(slot) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    index.set(slot, entry);
+  }
+
+  /**
+   * The index and chunks of one generation of accounts. Writers hold the repository's write lock.
+   */
+  private static final class Storage {
+
+    private volatile AtomicLongArray index;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[16];
+
+    private volatile AtomicLongArray[] balances = new AtomicLongArray[16];
+
+    private int chunkCount;
+
+    private int chunkUsed;
+
+    private int size;
+
+    private Storage(int capacity) {
+      this.index = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Returns the index entry of the account, or 0 if there is none.
+     */
+    private long find(String accountId, int hash) {
+      AtomicLongArray index = this.index;
+      int mask = index.length() - 1;
+      long tag = tagOf(hash);
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        long entry = index.get(slot);
+        if (entry == 0) {
+          return 0;
+        }
+        if ((entry & ~HANDLE_MASK) == tag) {
+          ByteBuffer records = this.chunkOf(entry);
+          int offset = offsetOf(entry);
+          if (records.getInt(offset + HASH_OFFSET) == hash && idEquals(records, offset, accountId)) {
+            return entry;
+          }
+        }
+      }
+    }
+
+    private void insert(String accountId, int hash, long balanceUnits) {
+      if ((this.size + 1) * 2L > this.index.length()) {
+        this.resize();
+      }
+
+      int recordSize = ID_OFFSET + 2 * accountId.length();
+      if (this.chunkCount == 0 || this.chunkUsed + recordSize > CHUNK_SIZE) {
+        this.addChunk();
+      }
+      long handle = ((long) (this.chunkCount - 1) << CHUNK_SHIFT) | this.chunkUsed;
+      ByteBuffer records = this.chunks[this.chunkCount - 1];
+      int offset = this.chunkUsed;
+      this.chunkUsed += recordSize;
+
+      // accounts are never removed, so the number of accounts numbers the next balance slot
+      int slot = this.size;
+      if ((slot & (BALANCE_CHUNK_SIZE - 1)) == 0) {
+        this.addBalanceChunk(slot >>> BALANCE_CHUNK_SHIFT);
+      }
+      records.putInt(offset + HASH_OFFSET, hash);
+      records.putShort(offset + LENGTH_OFFSET, (short) accountId.length());
+      records.putInt(offset + SLOT_OFFSET, slot);
+      for (int i = 0; i < accountId.length(); i++) {
+        records.putChar(offset + ID_OFFSET + 2 * i, accountId.charAt(i));
+      }
+      this.balances[slot >>> BALANCE_CHUNK_SHIFT].set(slot & (BALANCE_CHUNK_SIZE - 1), balanceUnits);
+
+      // the volatile store of the entry publishes the record to lock-free readers
+      place(this.index, tagOf(hash) | (handle + 1), hash);
+      this.size++;
+    }
+
+    private void resize() {
+      AtomicLongArray current = this.index;
+      AtomicLongArray larger = new AtomicLongArray(current.length() * 2);
+      for (int slot = 0; slot < current.length(); slot++) {
+        long entry = current.get(slot);
+        if (entry != 0) {
+          // rehash with the full hash, the tag only holds its upper bits
+          place(larger, entry, this.chunkOf(entry).getInt(offsetOf(entry) + HASH_OFFSET));
+        }
+      }
+      this.index = larger;
+    }
+
+    private void addChunk() {
+      if ((long) this.chunkCount << CHUNK_SHIFT >= HANDLE_MASK) {
+        throw new IllegalStateException("Off-heap account store is full!");
+      }
+
+      ByteBuffer[] chunks = this.chunks;
+      if (this.chunkCount == chunks.length) {
+        chunks = Arrays.copyOf(chunks, chunks.length * 2);
+      }
+      chunks[this.chunkCount] = ByteBuffer.allocateDirect(CHUNK_SIZE);
+      // publish the chunk table before any index entry can point into the new chunk
+      this.chunks = chunks;
+      this.chunkCount++;
+      this.chunkUsed = 0;
+    }
+
+    private void addBalanceChunk(int index) {
+      AtomicLongArray[] balances = this.balances;
+      if (index == balances.length) {
+        balances = Arrays.copyOf(balances, balances.length * 2);
+      }
+      balances[index] = new AtomicLongArray(BALANCE_CHUNK_SIZE);
+      // published like the record chunks, before an index entry can refer to a slot in it
+      this.balances = balances;
+    }
+
+    private ByteBuffer chunkOf(long entry) {
+      // read after the entry: an entry may point into a chunk added after an earlier read
+      return this.chunks[(int) (((entry & HANDLE_MASK) - 1) >>> CHUNK_SHIFT)];
+    }
+
+    private OffHeapAccount view(String accountId, long entry) {
+      int slot = this.chunkOf(entry).getInt(offsetOf(entry) + SLOT_OFFSET);
+      return new OffHeapAccount(
+        accountId, this.balances[slot >>> BALANCE_CHUNK_SHIFT], slot & (BALANCE_CHUNK_SIZE - 1));
+    }
+
+    private String readId(long entry) {
+      ByteBuffer records = this.chunkOf(entry);
+      int offset = offsetOf(entry);
+      char[] id = new char[records.getShort(offset + LENGTH_OFFSET) & 0xffff];
+      for (int i = 0; i < id.length; i++) {
+        id[i] = records.getChar(offset + ID_OFFSET + 2 * i);
+      }
+      return new String(id);
+    }
+
+    private static int offsetOf(long entry) {
+      return (int) (((entry & HANDLE_MASK) - 1) & OFFSET_MASK);
+    }
+
+    private static boolean idEquals(ByteBuffer records, int offset, String accountId) {
+      int length = records.getShort(offset + LENGTH_OFFSET) & 0xffff;
+      if (length != accountId.length()) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (records.getChar(offset + ID_OFFSET + 2 * i) != accountId.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class OffHeapAccount extends Account {
+
+    private final AtomicLongArray balances;
+
+    private final int slot;
+
+    private OffHeapAccount(String accountId, AtomicLongArray balances, int slot) {
+      super(accountId);
+      this.balances = balances;
+      this.slot = slot;
+    }
+
+    @Override
+    public long getBalanceUnits() {
+      return this.balances.get(this.slot);
+    }
+
+    @Override
+    public void setBalanceUnits(long balanceUnits) {
+      this.balances.set(this.slot, balanceUnits);
+    }
+
+    @Override
+    public boolean compareAndSetBalanceUnits(long expectedBalance, long newBalance) {
+      return this.balances.compareAndSet(this.slot, expectedBalance, newBalance);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.db.awmd.challenge.repository;
+
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferHistoryEntry;
+import com.db.awmd.challenge.domain.TransferHistoryPage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Append-only transfer history of every account, kept in memory.
+ *
+ * <p>An account's history is stored column-wise in fixed-size chunks of primitive arrays: the
+ * time, the signed amount and the counterparty, which is an int index into a shared dictionary of
+ * account ids. An entry takes 20 bytes. Entries are numbered in the order they are appended and
+ * their times never decrease, so both a cursor and a time range are found by index or by binary
+ * search, and a page costs the same whatever the length of the history.
+ *
+ * <p>Nothing is ever evicted: the history, and with it the memory it takes, grows with every
+ * transfer until {@link #clear()} drops all of it. A deployment that keeps running for long has to
+ * move older history elsewhere and clear it.
+ */
+@Repository
+public class TransferHistoryRepository {
+
+  private static final int CHUNK_BITS = 6;
+
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  // the histories and the dictionary their counterparties index into, replaced together on clear
+  private volatile Histories current = new Histories();
+
+  /**
+   * Records the transfer in the history of both accounts.
+   */
+  public void record(Transfer transfer) {
+    long timestamp = System.currentTimeMillis();
+    Histories histories = this.current;
+    int from = histories.indexOf(transfer.getFromAccountId());
+    int to = histories.indexOf(transfer.getToAccountId());
+
+    histories.historyOf(transfer.getFromAccountId()).append(timestamp, -transfer.getAmountUnits(), to);
+    histories.historyOf(transfer.getToAccountId()).append(timestamp, transfer.getAmountUnits(), from);
+  }
+
+  /**
+   * Returns up to {@code limit} entries with a time in {@code [fromTimestamp, toTimestamp)},
+   * newest first, starting below the {@code cursor} sequence if one is given.
+   */
+  public TransferHistoryPage page(String accountId, Long cursor, long fromTimestamp, long toTimestamp, int limit) {
+    Histories histories = this.current;
+    AccountHistory history = histories.histories.get(accountId);
+    if (history == null) {
+      return new TransferHistoryPage(Collections.emptyList(), null);
+    }
+
+    int size = history.size;
+    int end = cursor == null ? size : (int) Math.max(0, Math.min(cursor, size));
+    end = history.firstAtOrAfter(toTimestamp, end);
+    int start = history.firstAtOrAfter(fromTimestamp, end);
+    int last = Math.max(start, end - limit);
+
+    String[] accountIds = histories.accountIds;
+    List<TransferHistoryEntry> entries = new ArrayList<>(end - last);
+    for (int i = end - 1; i >= last; i--) {
+      entries.add(new TransferHistoryEntry(
+        i,
+        history.timestampAt(i),
+        accountIds[history.counterpartyAt(i)],
+        Money.toBigDecimal(history.amountAt(i))));
+    }
+    return new TransferHistoryPage(entries, last > start ? Long.valueOf(last) : null);
+  }
+
+  /**
+   * Drops the history of every account, along with the dictionary of account ids.
+   */
+  public void clear() {
+    this.current = new Histories();
+  }
+
+  private static final class Histories {
+
+    private final Map<String, AccountHistory> histories = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> accountIndexes = new ConcurrentHashMap<>();
+
+    private volatile String[] accountIds = new String[1024];
+
+    private int accountIdCount;
+
+    private AccountHistory historyOf(String accountId) {
+      return this.histories.computeIfAbsent(accountId, id -> new AccountHistory());
+    }
+
+    private int indexOf(String accountId) {
+      Integer index = this.accountIndexes.get(accountId);
+      if (index != null) {
+        return index;
+      }
+
+      synchronized (this) {
+        index = this.accountIndexes.get(accountId);
+        if (index == null) {
+          if (this.accountIdCount == this.accountIds.length) {
+            this.accountIds = Arrays.copyOf(this.accountIds, this.accountIdCount * 2);
+          }
+          index = this.accountIdCount++;
+          this.accountIds[index] = accountId;
+          // published after the id is in the array, so readers can always resolve the index
+          this.accountIndexes.put(accountId, index);
+        }
+        return index;
+      }
+    }
+  }
+
+  /**
+   * Appends are serialized per account; reads take no lock. The size is written last, so a reader
+   * that has read it sees every entry below it.
+   */
+  private static final class AccountHistory {
+
+    private long[][] timestamps = new long[1][];
+
+    private long[][] amounts = new long[1][];
+
+    private int[][] counterparties = new int[1][];
+
+    private volatile int size;
+
+    private synchronized void append(long timestamp, long amount, int counterparty) {
+      int index = this.size;
+      int chunk = index >>> CHUNK_BITS;
+      if (chunk == this.timestamps.length) {
+        this.timestamps = Arrays.copyOf(this.timestamps, chunk * 2);
+        this.amounts = Arrays.copyOf(this.amounts, chunk * 2);
+        this.counterparties = Arrays.copyOf(this.counterparties, chunk * 2);
+      }
+      if (this.timestamps[chunk] == null) {
+        this.timestamps[chunk] = new long[CHUNK_SIZE];
+        this.amounts[chunk] = new long[CHUNK_SIZE];
+        this.counterparties[chunk] = new int[CHUNK_SIZE];
+      }
+
+      // times never go back within one history, even if the clock does
+      long previous = index == 0 ? timestamp : this.timestampAt(index - 1);
+      this.timestamps[chunk][index & CHUNK_MASK] = Math.max(timestamp, previous);
+      this.amounts[chunk][index & CHUNK_MASK] = amount;
+      this.counterparties[chunk][index & CHUNK_MASK] = counterparty;
+      this.size = index + 1;
+    }
+
+    private long timestampAt(int index) {
+      return this.timestamps[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    private long amountAt(int index) {
+      return this.amounts[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    private int counterpartyAt(int index) {
+      return this.counterparties[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * The first index below {@code end} whose time is at or after the given one, or {@code end}.
+     */
+    private int firstAtOrAfter(long timestamp, int end) {
+      int low = 0;
+      int high = end;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (this.timestampAt(middle) < timestamp) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Canonical instances of recently read account ids, so the ids of a request are resolved from
+ * the bytes or characters they are read from instead of being built as new strings every time.
+ *
+ * <p>Besides saving the allocation, a canonical id carries its hash code already computed, and
+ * comparing it with the key of the account it names in the repository's map, which is usually
+ * the same instance, stops at the identity check instead of comparing every character.
+ *
+ * <p>The cache is a direct-mapped table indexed by the hash of the id, so hot ids stay in it and
+ * a miss just replaces whatever id was in the slot. Slots are written without synchronization:
+ * strings are immutable, so a thread sees either a complete id or the previous one.
+ */
+@Component
+public class AccountIdCache {
+
+  private final String[] ids;
+
+  private final int mask;
+
+  private final LongAdder misses;
+
+  @Autowired
+  public AccountIdCache(
+    @Value("${accounts.id-cache.size:4096}") int size,
+    MetricsRegistry metricsRegistry
+  ) {
+    int capacity = size > 0 ? Integer.highestOneBit(size) : 0;
+    this.ids = new String[capacity];
+    this.mask = capacity - 1;
+    this.misses = metricsRegistry.counter("accounts.id-cache.misses");
+  }
+
+  /**
+   * The id spelled by the given characters.
+   */
+  public String intern(char[] chars, int offset, int length) {
+    if (this.ids.length == 0) {
+      return new String(chars, offset, length);
+    }
+
+    int hash = 0;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + chars[i];
+    }
+    int slot = spread(hash) & this.mask;
+    String cached = this.ids[slot];
+    if (cached != null && cached.length() == length) {
+      int i = 0;
+      while (i < length && cached.charAt(i) == chars[offset + i]) {
+        i++;
+      }
+      if (i == length) {
+        return cached;
+      }
+    }
+    return this.miss(slot, new String(chars, offset, length));
+  }
+
+  /**
+   * The id encoded by the given UTF-8 bytes. Only ASCII ids are cached.
+   */
+  public String intern(byte[] utf8, int offset, int length) {
+    int hash = 0;
+    for (int i = offset; i < offset + length; i++) {
+      if (utf8[i] < 0 || this.ids.length == 0) {
+        return new String(utf8, offset, length, StandardCharsets.UTF_8);
+      }
+      hash = 31 * hash + utf8[i];
+    }
+
+    int slot = spread(hash) & this.mask;
+    String cached = this.ids[slot];
+    if (cached != null && cached.length() == length) {
+      int i = 0;
+      while (i < length && cached.charAt(i) == utf8[offset + i]) {
+        i++;
+      }
+      if (i == length) {
+        return cached;
+      }
+    }
+    return this.miss(slot, new String(utf8, offset, length, StandardCharsets.US_ASCII));
+  }
+
+  private String miss(int slot, String id) {
+    this.ids[slot] = id;
+    this.misses.increment();
+    return id;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,147 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Striped lock table keyed by account id. Locks are always taken in ascending stripe order, so
+ * two transfers touching the same accounts can never deadlock, while transfers on disjoint
+ * stripes run in parallel.
+ *
+ * <p>Every stripe also carries a version that is odd while the stripe is held, so readers can
+ * wait for the current holders without taking any lock themselves.
+ */
+@Component
+public class AccountLocks {
+
+  private final Stripe[] stripes;
+
+  private final int mask;
+
+  private final LatencyHistogram lockWait;
+
+  @Autowired
+  public AccountLocks(@Value("${accounts.lock-stripes:1024}") int stripes, MetricsRegistry metricsRegistry) {
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("Number of lock stripes must be positive!");
+    }
+
+    int size = Integer.highestOneBit(stripes);
+    if (size < stripes) {
+      size <<= 1;
+    }
+
+    this.stripes = new Stripe[size];
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = new Stripe();
+    }
+    this.mask = size - 1;
+    this.lockWait = metricsRegistry.histogram("accounts.lock-wait.nanos");
+  }
+
+  public int stripeOf(String accountId) {
+    int hash = accountId.hashCode();
+    return (hash ^ (hash >>> 16)) & this.mask;
+  }
+
+  public void lock(String firstAccountId, String secondAccountId) {
+    int first = stripeOf(firstAccountId);
+    int second = stripeOf(secondAccountId);
+
+    if (first == second) {
+      this.acquire(first);
+    } else if (first < second) {
+      this.acquire(first);
+      this.acquire(second);
+    } else {
+      this.acquire(second);
+      this.acquire(first);
+    }
+  }
+
+  public void unlock(String firstAccountId, String secondAccountId) {
+    int first = stripeOf(firstAccountId);
+    int second = stripeOf(secondAccountId);
+
+    this.release(first);
+    if (first != second) {
+      this.release(second);
+    }
+  }
+
+  public int[] stripesOf(Collection<String> accountIds) {
+    return accountIds.stream().mapToInt(this::stripeOf).distinct().sorted().toArray();
+  }
+
+  public void lockAll(int[] sortedStripes) {
+    for (int stripe : sortedStripes) {
+      this.acquire(stripe);
+    }
+  }
+
+  public void unlockAll(int[] sortedStripes) {
+    for (int i = sortedStripes.length - 1; i >= 0; i--) {
+      this.release(sortedStripes[i]);
+    }
+  }
+
+  /**
+   * Returns once every lock held at the time of the call has been released. Stripes are taken
+   * one at a time, so transfers are never stopped as a whole.
+   */
+  public void awaitCurrentHolders() {
+    for (Stripe stripe : this.stripes) {
+      stripe.lock();
+      stripe.unlock();
+    }
+  }
+
+  /**
+   * Returns once every one of the given stripes that is held at the time of the call has been
+   * released, without locking any of them. A null array means every stripe.
+   */
+  public void awaitReleased(int[] stripes) {
+    int count = stripes == null ? this.stripes.length : stripes.length;
+    for (int i = 0; i < count; i++) {
+      Stripe stripe = this.stripes[stripes == null ? i : stripes[i]];
+      long version = stripe.version;
+      while ((version & 1) != 0 && stripe.version == version) {
+        Thread.yield();
+      }
+    }
+  }
+
+  private void acquire(int stripe) {
+    Stripe lock = this.stripes[stripe];
+    // only a contended acquisition pays for reading the clock
+    if (lock.tryLock()) {
+      this.lockWait.record(0);
+    } else {
+      long start = System.nanoTime();
+      lock.lock();
+      this.lockWait.record(System.nanoTime() - start);
+    }
+    if (lock.getHoldCount() == 1) {
+      lock.version++;
+    }
+  }
+
+  private void release(int stripe) {
+    Stripe lock = this.stripes[stripe];
+    if (lock.getHoldCount() == 1) {
+      lock.version++;
+    }
+    lock.unlock();
+  }
+
+  private static final class Stripe extends ReentrantLock {
+
+    // only written by the holder of the lock
+    private volatile long version;
+  }
+}
@@ -0,0 +1,58 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class AccountSnapshotScheduler {
+
+  private final JournalingAccountsRepository accountsRepository;
+
+  private final AccountLocks accountLocks;
+
+  private final ScheduledExecutorService executor;
+
+  @Autowired
+  public AccountSnapshotScheduler(
+    JournalingAccountsRepository accountsRepository,
+    AccountLocks accountLocks,
+    @Value("${accounts.journal.snapshot.interval-ms:300000}") long intervalMillis
+  ) {
+    this.accountsRepository = accountsRepository;
+    this.accountLocks = accountLocks;
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "account-snapshots");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    if (intervalMillis > 0) {
+      this.executor.scheduleWithFixedDelay(this::snapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public void snapshot() {
+    try {
+      this.accountsRepository.writeSnapshot(this.accountLocks::awaitCurrentHolders);
+      log.info("Wrote snapshot of {} accounts in {} ms",
+        this.accountsRepository.getLastSnapshotAccounts(), this.accountsRepository.getLastSnapshotMillis());
+    } catch (Exception e) {
+      log.error("Failed to write an account snapshot", e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+}
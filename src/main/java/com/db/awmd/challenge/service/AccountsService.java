@@ -1,20 +1,44 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountsQueryResult;
+import com.db.awmd.challenge.domain.AccountsTotal;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatchItemResult;
+import com.db.awmd.challenge.domain.TransferHistoryPage;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
 import com.db.awmd.challenge.exception.NotEnoughFundsException;
 import com.db.awmd.challenge.exception.TransferSameAccountException;
 import com.db.awmd.challenge.exception.TransferNoAmountException;
+import com.db.awmd.challenge.exception.TransferThrottledException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
 import com.db.awmd.challenge.repository.AccountsRepository;
-import javafx.util.Pair;
+import com.db.awmd.challenge.repository.TransferHistoryRepository;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import lombok.Getter;
-import lombok.Synchronized;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-
 @Service
 public class AccountsService {
 
@@ -22,79 +46,499 @@ public class AccountsService {
   private final AccountsRepository accountsRepository;
 
   @Getter
-  private final NotificationService notificationService;
+  private final TransferNotifier transferNotifier;
+
+  private final TransferEngine transferEngine;
+
+  private final AccountLocks accountLocks;
+
+  private final TransferMetrics transferMetrics;
+
+  private final IdempotencyCache idempotencyCache;
+
+  @Getter
+  private final TransferHistoryRepository transferHistory;
+
+  private final SnapshotReads snapshotReads;
+
+  private final HotAccounts hotAccounts;
+
+  private final TransferAdmission transferAdmission;
 
   @Autowired
-  public AccountsService(AccountsRepository accountsRepository, NotificationService notificationService) {
+  public AccountsService(
+    AccountsRepository accountsRepository,
+    TransferNotifier transferNotifier,
+    TransferEngine transferEngine,
+    AccountLocks accountLocks,
+    TransferMetrics transferMetrics,
+    IdempotencyCache idempotencyCache,
+    TransferHistoryRepository transferHistory,
+    SnapshotReads snapshotReads,
+    HotAccounts hotAccounts,
+    TransferAdmission transferAdmission
+  ) {
     this.accountsRepository = accountsRepository;
-    this.notificationService = notificationService;
+    this.transferNotifier = transferNotifier;
+    this.transferEngine = transferEngine;
+    this.accountLocks = accountLocks;
+    this.transferMetrics = transferMetrics;
+    this.idempotencyCache = idempotencyCache;
+    this.transferHistory = transferHistory;
+    this.snapshotReads = snapshotReads;
+    this.hotAccounts = hotAccounts;
+    this.transferAdmission = transferAdmission;
   }
 
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    // held so that a snapshot can wait for the creation to reach the journal
+    this.accountLocks.lock(account.getAccountId(), account.getAccountId());
+    try {
+      this.snapshotReads.beforeCreate(account.getAccountId());
+      this.accountsRepository.createAccount(account);
+    } finally {
+      this.accountLocks.unlock(account.getAccountId(), account.getAccountId());
+    }
+    this.accountsRepository.awaitDurable();
+  }
+
+  /**
+   * Creates the accounts of one bulk import chunk, split across the available processors. Each
+   * worker waits once for all the accounts it created to be durable. Returns the accounts that
+   * were rejected because their id already exists.
+   */
+  public List<Account> createAccounts(List<Account> accounts) {
+    Queue<Account> duplicates = new ConcurrentLinkedQueue<>();
+    int parts = Math.max(1, Math.min(accounts.size(), Runtime.getRuntime().availableProcessors()));
+    IntStream.range(0, parts).parallel().forEach(part -> {
+      for (int i = part; i < accounts.size(); i += parts) {
+        Account account = accounts.get(i);
+        this.accountLocks.lock(account.getAccountId(), account.getAccountId());
+        try {
+          this.snapshotReads.beforeCreate(account.getAccountId());
+          this.accountsRepository.createAccount(account);
+        } catch (DuplicateAccountIdException e) {
+          duplicates.add(account);
+        } finally {
+          this.accountLocks.unlock(account.getAccountId(), account.getAccountId());
+        }
+      }
+      this.accountsRepository.awaitDurable();
+    });
+    return new ArrayList<>(duplicates);
   }
 
   public Account getAccount(String accountId) throws AccountNotFoundException {
-    return this.accountsRepository.getAccount(accountId).orElseThrow(
-      () -> new AccountNotFoundException("Account " + accountId + " not found!"));
+    long start = System.nanoTime();
+    Optional<Account> account = this.accountsRepository.getAccount(accountId);
+    this.transferMetrics.getRepositoryGetLatency().record(System.nanoTime() - start);
+
+    return this.withSubBalances(account.orElseThrow(
+      () -> new AccountNotFoundException("Account " + accountId + " not found!")));
+  }
+
+  /**
+   * Passes every account to the given action, as {@link #getAccount} would return it.
+   */
+  public void forEachAccount(Consumer<Account> action) {
+    this.accountsRepository.forEachAccount(account -> action.accept(this.withSubBalances(account)));
+  }
+
+  /**
+   * A hot account's own balance leaves out its sub-balances, so it is returned as a copy with
+   * them added.
+   */
+  private Account withSubBalances(Account account) {
+    if (!this.hotAccounts.isHot(account.getAccountId())) {
+      return account;
+    }
+    Account copy = new Account(account.getAccountId());
+    copy.setBalanceUnits(this.hotAccounts.balanceOf(account));
+    return copy;
+  }
+
+  /**
+   * Reads the given accounts as of a single moment, without taking their locks. The accounts in
+   * the result are copies, so they do not change afterwards.
+   */
+  public AccountsQueryResult queryAccounts(List<String> accountIds) {
+    Map<String, Long> balances = this.snapshotReads.balances(new LinkedHashSet<>(accountIds));
+
+    List<Account> accounts = new ArrayList<>(balances.size());
+    List<String> notFound = new ArrayList<>();
+    long total = 0;
+    for (String accountId : new LinkedHashSet<>(accountIds)) {
+      Long balance = balances.get(accountId);
+      if (balance == null) {
+        notFound.add(accountId);
+      } else {
+        Account account = new Account(accountId);
+        account.setBalanceUnits(balance);
+        accounts.add(account);
+        total = Money.add(total, balance);
+      }
+    }
+    return new AccountsQueryResult(accounts, notFound, Money.toBigDecimal(total));
+  }
+
+  /**
+   * Counts all accounts and sums their balances as of a single moment, without taking any lock.
+   */
+  public AccountsTotal getAccountsTotal() {
+    return this.snapshotReads.total();
   }
 
+  /**
+   * Returns a page of the account's transfer history, newest first. See
+   * {@link TransferHistoryRepository#page}.
+   */
+  public TransferHistoryPage getTransferHistoryPage(
+    String accountId,
+    Long cursor,
+    long fromTimestamp,
+    long toTimestamp,
+    int limit
+  ) throws AccountNotFoundException {
+    this.getAccount(accountId);
+    return this.transferHistory.page(accountId, cursor, fromTimestamp, toTimestamp, limit);
+  }
+
+  /**
+   * Applies the transfer, throwing if it is refused. See {@link #tryTransfer}, which reports
+   * refusals without the cost of an exception.
+   */
   public void transfer(Transfer transfer) throws
     AccountNotFoundException,
     TransferSameAccountException,
     NotEnoughFundsException,
+    TransferNoAmountException,
+    BalanceOverflowException,
+    IdempotencyKeyReusedException,
+    TransferThrottledException {
+    TransferResult result = this.tryTransfer(transfer);
+    if (!result.isOk()) {
+      throw result.toException();
+    }
+  }
+
+  /**
+   * Applies the transfer, or returns why it was refused. A transfer with an idempotency key that
+   * was already seen is not applied again: it returns whatever the first one did. A transfer that
+   * is not admitted is refused before anything else, so it can be retried with the same key.
+   */
+  public TransferResult tryTransfer(Transfer transfer) {
+    TransferResult refusal = this.admit(transfer);
+    if (refusal != null) {
+      return refusal;
+    }
+    if (transfer.getIdempotencyKey() == null) {
+      return this.applyTransfer(transfer);
+    }
+
+    try {
+      return this.deduplicate(transfer, () -> CompletableFuture.completedFuture(this.applyTransfer(transfer))).join();
+    } catch (CompletionException e) {
+      Throwable cause = unwrap(e);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+  }
+
+  private TransferResult applyTransfer(Transfer transfer) {
+    long start = System.nanoTime();
+    try {
+      TransferResult result = this.validate(transfer);
+      if (result == null) {
+        result = this.transferEngine.transfer(transfer);
+      }
+      this.finish(transfer, result, start);
+      return result;
+    } catch (RuntimeException e) {
+      this.transferMetrics.getErrors().increment();
+      throw e;
+    } finally {
+      this.transferMetrics.getTransferLatency().record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Same as {@link #transfer(Transfer)}, but the calling thread does not wait: blocking engines
+   * run the transfer on the given executor. A refusal completes the returned future
+   * exceptionally with the same exception {@link #transfer(Transfer)} would throw.
+   */
+  public CompletableFuture<Void> transferAsync(Transfer transfer, Executor executor) {
+    return this.tryTransferAsync(transfer, executor).thenApply(result -> {
+      if (!result.isOk()) {
+        throw result.toException();
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Same as {@link #tryTransfer(Transfer)}, but the calling thread does not wait: blocking engines
+   * run the transfer on the given executor. The returned future only completes exceptionally if
+   * the transfer could not be run at all, e.g. because the executor rejected it.
+   */
+  public CompletableFuture<TransferResult> tryTransferAsync(Transfer transfer, Executor executor) {
+    TransferResult refusal = this.admit(transfer);
+    if (refusal != null) {
+      return CompletableFuture.completedFuture(refusal);
+    }
+    if (transfer.getIdempotencyKey() == null) {
+      return this.applyTransferAsync(transfer, executor);
+    }
+    return this.deduplicate(transfer, () -> this.applyTransferAsync(transfer, executor));
+  }
+
+  private CompletableFuture<TransferResult> applyTransferAsync(Transfer transfer, Executor executor) {
+    long start = System.nanoTime();
+    CompletableFuture<TransferResult> transferred;
+    TransferResult refusal = this.validate(transfer);
+    if (refusal != null) {
+      this.finish(transfer, refusal, start);
+      transferred = CompletableFuture.completedFuture(refusal);
+    } else {
+      try {
+        transferred = this.transferEngine.hasOwnThreads()
+          // keeps recording and notifying off the engine's threads
+          ? this.transferEngine.transferAsync(transfer, executor).thenApplyAsync(result -> {
+            this.finish(transfer, result, start);
+            return result;
+          }, executor)
+          // finished on the thread that applied it, which is the one the journal knows to wait for
+          : CompletableFuture.supplyAsync(() -> {
+            TransferResult result = this.transferEngine.transfer(transfer);
+            this.finish(transfer, result, start);
+            return result;
+          }, executor);
+      } catch (RuntimeException e) {
+        transferred = new CompletableFuture<>();
+        transferred.completeExceptionally(e);
+      }
+    }
+
+    return transferred.whenComplete((ignored, failure) -> {
+      if (failure != null) {
+        this.transferMetrics.getErrors().increment();
+      }
+      this.transferMetrics.getTransferLatency().record(System.nanoTime() - start);
+    });
+  }
+
+  /**
+   * Records and notifies an applied transfer, or just counts a refused one.
+   */
+  private void finish(Transfer transfer, TransferResult result, long start) {
+    if (!result.isOk()) {
+      this.transferMetrics.outcome(result.getOutcome());
+      return;
+    }
+
+    // measured up to the engine's return: recording and waiting for the journal do not queue
+    // transfers behind each other, so they must not make admission shed load
+    long transferred = System.nanoTime();
+    this.transferMetrics.getEngineLatency().record(transferred - start);
+    this.transferAdmission.completed(transferred - start);
+
+    this.transferHistory.record(transfer);
+    this.accountsRepository.awaitDurable();
+    long durable = System.nanoTime();
+    transferNotifier.transferCompleted(result.getFromAccount(), result.getToAccount(), transfer);
+    this.transferMetrics.getNotificationLatency().record(System.nanoTime() - durable);
+    this.transferMetrics.outcome(TransferOutcome.OK);
+  }
+
+  /**
+   * Whether the transfer engine can apply multi-leg transfers atomically; the atomic transfer
+   * endpoint is only there when it can.
+   */
+  public boolean supportsAtomicTransfers() {
+    return this.transferEngine instanceof AtomicTransferEngine;
+  }
+
+  /**
+   * Applies all legs of the transfer as one unit: if any leg is invalid or would overdraw an
+   * account, no leg is applied. Only for engines that {@link #supportsAtomicTransfers()}.
+   */
+  public void transferAtomically(MultiLegTransfer multiLegTransfer) throws
+    AccountNotFoundException,
+    TransferSameAccountException,
+    NotEnoughFundsException,
+    TransferNoAmountException,
+    BalanceOverflowException {
+    if (!this.supportsAtomicTransfers()) {
+      throw new IllegalStateException(
+        this.transferEngine.getClass().getSimpleName() + " cannot apply atomic transfers!");
+    }
+
+    List<Transfer> legs = multiLegTransfer.getLegs();
+    Map<String, Account> accounts;
+    try {
+      for (Transfer leg : legs) {
+        this.validateTransfer(leg);
+      }
+
+      accounts = ((AtomicTransferEngine) this.transferEngine).transferAtomically(legs);
+      legs.forEach(this.transferHistory::record);
+      this.accountsRepository.awaitDurable();
+      this.transferMetrics.outcome(TransferOutcome.OK);
+    } catch (RuntimeException e) {
+      this.recordFailure(e);
+      throw e;
+    }
+
+    for (Transfer leg : legs) {
+      transferNotifier.transferCompleted(
+        accounts.get(leg.getFromAccountId()), accounts.get(leg.getToAccountId()), leg);
+    }
+  }
+
+  /**
+   * Applies a batch of independent transfers. Every transfer gets its own result, in the order of
+   * the given list, and a failing transfer does not abort the rest of the batch. Each transfer
+   * goes through admission control like a single one.
+   */
+  public List<TransferBatchItemResult> transferBatch(List<Transfer> transfers) {
+    return this.transferBatch(transfers, true);
+  }
+
+  /**
+   * Same as {@link #transferBatch(List)}, without admission control: scheduled transfers were
+   * accepted when they were scheduled, and are not turned away once they fall due.
+   */
+  public List<TransferBatchItemResult> transferScheduledBatch(List<Transfer> transfers) {
+    return this.transferBatch(transfers, false);
+  }
+
+  private List<TransferBatchItemResult> transferBatch(List<Transfer> transfers, boolean admit) {
+    TransferBatchItemResult[] results = new TransferBatchItemResult[transfers.size()];
+    List<Transfer> accepted = new ArrayList<>(transfers.size());
+    int[] acceptedIndexes = new int[transfers.size()];
+
+    for (int i = 0; i < transfers.size(); i++) {
+      TransferResult refusal = this.validate(transfers.get(i));
+      if (refusal == null && admit) {
+        refusal = this.transferAdmission.tryAdmit(transfers.get(i));
+      }
+      if (refusal == null) {
+        acceptedIndexes[accepted.size()] = i;
+        accepted.add(transfers.get(i));
+      } else {
+        results[i] = this.refusedResult(i, refusal);
+      }
+    }
+
+    Account[][] transferred = new Account[accepted.size()][];
+    this.transferEngine.transferBatch(accepted, new TransferEngine.BatchCallback() {
+      @Override
+      public void transferred(int index, Account fromAccount, Account toAccount) {
+        transferred[index] = new Account[] {fromAccount, toAccount};
+        AccountsService.this.transferHistory.record(accepted.get(index));
+      }
+
+      @Override
+      public void failed(int index, TransferResult refusal) {
+        results[acceptedIndexes[index]] = AccountsService.this.refusedResult(acceptedIndexes[index], refusal);
+      }
+    });
+    this.accountsRepository.awaitDurable();
+
+    for (int i = 0; i < transferred.length; i++) {
+      if (transferred[i] != null) {
+        transferNotifier.transferCompleted(transferred[i][0], transferred[i][1], accepted.get(i));
+        results[acceptedIndexes[i]] = new TransferBatchItemResult(acceptedIndexes[i], TransferOutcome.OK, null);
+        this.transferMetrics.outcome(TransferOutcome.OK);
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
+  private void validateTransfer(Transfer transfer) throws
+    TransferSameAccountException,
     TransferNoAmountException {
+    TransferResult refusal = this.validate(transfer);
+    if (refusal != null) {
+      throw refusal.toException();
+    }
+  }
+
+  /**
+   * Returns null if the transfer is valid, otherwise why it is not.
+   */
+  public TransferResult validate(Transfer transfer) {
     if (accountsAreEqual(transfer.getFromAccountId(), transfer.getToAccountId())) {
-      throw new TransferSameAccountException(
+      return TransferResult.refused(
+        TransferOutcome.SAME_ACCOUNT,
         "Transfer to the same account (Id: )" + transfer.getFromAccountId() + " is not allowed!"
       );
     }
 
-    if (transfer.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
-      throw new TransferNoAmountException(
+    if (transfer.getAmountUnits() <= 0) {
+      return TransferResult.refused(
+        TransferOutcome.NO_AMOUNT,
         "Transfer amount must be greater than zero!"
       );
     }
+    return null;
+  }
 
-    Pair<Account, Account> transferAccounts = this.syncTransferOperations(transfer);
+  private CompletableFuture<TransferResult> deduplicate(
+    Transfer transfer,
+    Supplier<CompletableFuture<TransferResult>> action
+  ) {
+    CompletableFuture<TransferResult> result = this.idempotencyCache.deduplicate(transfer, action);
+    // the cache refuses a reused key straight away, without running the transfer
+    if (result.isDone() && !result.isCompletedExceptionally()
+      && result.join().getOutcome() == TransferOutcome.IDEMPOTENCY_KEY_REUSED) {
+      this.transferMetrics.outcome(TransferOutcome.IDEMPOTENCY_KEY_REUSED);
+    }
+    return result;
+  }
 
-    notificationService.notifyAboutTransfer(
-      transferAccounts.getKey(),
-      "Transfer to account " + transfer.getToAccountId() + " for amount " + transfer.getAmount()
-    );
+  private static Throwable unwrap(Throwable failure) {
+    return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+  }
 
-    notificationService.notifyAboutTransfer(
-      transferAccounts.getValue(),
-      "Transfer from account " + transfer.getFromAccountId() + " for amount " + transfer.getAmount()
-    );
+  private TransferBatchItemResult refusedResult(int index, TransferResult refusal) {
+    this.transferMetrics.outcome(refusal.getOutcome());
+    return new TransferBatchItemResult(index, refusal.getOutcome(), refusal.getMessage());
   }
 
-  @Synchronized
-  private Pair<Account, Account> syncTransferOperations(Transfer transfer) throws
-    AccountNotFoundException,
-    NotEnoughFundsException
-  {
-    Account fromAccount = this.getAccount(transfer.getFromAccountId());
-    Account toAccount = this.getAccount(transfer.getToAccountId());
-
-    if (!accountHasEnoughMoney(fromAccount, transfer.getAmount())) {
-      throw new NotEnoughFundsException(
-              "Account " + fromAccount.getAccountId() + " does not have enough money!"
-      );
+  private TransferResult admit(Transfer transfer) {
+    TransferResult refusal = this.transferAdmission.tryAdmit(transfer);
+    if (refusal != null) {
+      this.transferMetrics.outcome(refusal.getOutcome());
     }
+    return refusal;
+  }
 
-    fromAccount.setBalance(fromAccount.getBalance().subtract(transfer.getAmount()));
-    toAccount.setBalance(toAccount.getBalance().add(transfer.getAmount()));
-
-    this.accountsRepository.updateAccount(fromAccount);
-    this.accountsRepository.updateAccount(toAccount);
-
-    return new Pair<>(fromAccount, toAccount);
+  private void recordFailure(RuntimeException failure) {
+    TransferOutcome outcome = outcomeOf(failure);
+    if (outcome == null) {
+      this.transferMetrics.getErrors().increment();
+    } else {
+      this.transferMetrics.outcome(outcome);
+    }
   }
 
-  private boolean accountHasEnoughMoney(Account account, BigDecimal amount) {
-    return account.getBalance().compareTo(amount) >= 0;
-}
+  private static TransferOutcome outcomeOf(RuntimeException failure) {
+    if (failure instanceof AccountNotFoundException) {
+      return TransferOutcome.ACCOUNT_NOT_FOUND;
+    } else if (failure instanceof NotEnoughFundsException) {
+      return TransferOutcome.NOT_ENOUGH_FUNDS;
+    } else if (failure instanceof TransferSameAccountException) {
+      return TransferOutcome.SAME_ACCOUNT;
+    } else if (failure instanceof TransferNoAmountException) {
+      return TransferOutcome.NO_AMOUNT;
+    } else if (failure instanceof BalanceOverflowException) {
+      return TransferOutcome.BALANCE_OVERFLOW;
+    }
+    return null;
+  }
 
   private boolean accountsAreEqual(String fromAccount, String toAccount) {
     return fromAccount.equals(toAccount);
@@ -0,0 +1,270 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queues notifications and delivers them from dedicated worker threads, so a slow
+ * {@link NotificationService} does not add to the transfer latency. Each account is always
+ * handled by the same worker, which keeps its notifications in order and lets the worker merge
+ * the pending notifications of one account into a single delivery.
+ *
+ * <p>When a worker's queue is full, {@link OverflowPolicy#CALLER_RUNS} has the calling thread
+ * deliver the oldest queued notifications in the worker's place until its own fits in the queue,
+ * so notifications still reach each account in order. {@link OverflowPolicy#DROP} counts what it
+ * drops and logs a summary at most every few seconds.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notifications.async.enabled", havingValue = "true")
+public class AsyncTransferNotifier implements TransferNotifier {
+
+  public enum OverflowPolicy {
+    BLOCK, DROP, CALLER_RUNS
+  }
+
+  private final NotificationService notificationService;
+
+  private final OverflowPolicy overflowPolicy;
+
+  private final int batchSize;
+
+  private static final long DROP_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final List<BlockingQueue<PendingNotification>> queues = new ArrayList<>();
+
+  // held while notifications taken from the queue of the same index are delivered
+  private final List<ReentrantLock> deliveryLocks = new ArrayList<>();
+
+  private final List<Thread> workers = new ArrayList<>();
+
+  private final LongAdder enqueued = new LongAdder();
+
+  private final LongAdder delivered = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  private final LongAdder batches = new LongAdder();
+
+  private final LongAdder failures = new LongAdder();
+
+  private final AtomicLong lastDropLog = new AtomicLong(System.nanoTime() - DROP_LOG_INTERVAL_NANOS);
+
+  private volatile boolean running = true;
+
+  @Autowired
+  public AsyncTransferNotifier(
+    NotificationService notificationService,
+    @Value("${notifications.async.workers:2}") int workers,
+    @Value("${notifications.async.queue-capacity:10000}") int queueCapacity,
+    @Value("${notifications.async.batch-size:64}") int batchSize,
+    @Value("${notifications.async.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy
+  ) {
+    this.notificationService = notificationService;
+    this.overflowPolicy = overflowPolicy;
+    this.batchSize = batchSize;
+
+    for (int i = 0; i < workers; i++) {
+      BlockingQueue<PendingNotification> queue = new ArrayBlockingQueue<>(queueCapacity);
+      // fair, so a caller delivering in the worker's place gets its turn after the current batch
+      ReentrantLock deliveryLock = new ReentrantLock(true);
+      Thread worker = new Thread(() -> this.deliverLoop(queue, deliveryLock), "notification-worker-" + i);
+      worker.setDaemon(true);
+      this.queues.add(queue);
+      this.deliveryLocks.add(deliveryLock);
+      this.workers.add(worker);
+    }
+    this.workers.forEach(Thread::start);
+  }
+
+  @Override
+  public void transferCompleted(Account fromAccount, Account toAccount, Transfer transfer) {
+    this.enqueue(new PendingNotification(fromAccount, transfer, true));
+    this.enqueue(new PendingNotification(toAccount, transfer, false));
+  }
+
+  public long getEnqueued() {
+    return this.enqueued.sum();
+  }
+
+  public long getDelivered() {
+    return this.delivered.sum();
+  }
+
+  public long getDropped() {
+    return this.dropped.sum();
+  }
+
+  public long getBatches() {
+    return this.batches.sum();
+  }
+
+  public long getFailures() {
+    return this.failures.sum();
+  }
+
+  public int getQueueDepth() {
+    return this.queues.stream().mapToInt(BlockingQueue::size).sum();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    this.running = false;
+    for (Thread worker : this.workers) {
+      worker.join(TimeUnit.SECONDS.toMillis(5));
+      worker.interrupt();
+    }
+  }
+
+  private void enqueue(PendingNotification notification) {
+    int index = this.indexOf(notification.account.getAccountId());
+    BlockingQueue<PendingNotification> queue = this.queues.get(index);
+    if (queue.offer(notification)) {
+      this.enqueued.increment();
+      return;
+    }
+
+    switch (this.overflowPolicy) {
+      case BLOCK:
+        try {
+          queue.put(notification);
+          this.enqueued.increment();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          this.dropped.increment();
+        }
+        break;
+      case CALLER_RUNS:
+        this.enqueueBehindOlder(queue, this.deliveryLocks.get(index), notification);
+        break;
+      default:
+        this.dropped.increment();
+        long lastLog = this.lastDropLog.get();
+        long now = System.nanoTime();
+        if (now - lastLog >= DROP_LOG_INTERVAL_NANOS && this.lastDropLog.compareAndSet(lastLog, now)) {
+          log.warn("Notification queue full, {} notifications dropped so far", this.dropped.sum());
+        }
+    }
+  }
+
+  /**
+   * Delivers the oldest notifications of the full queue in the worker's place until the given one
+   * fits behind them.
+   */
+  private void enqueueBehindOlder(
+    BlockingQueue<PendingNotification> queue,
+    ReentrantLock deliveryLock,
+    PendingNotification notification
+  ) {
+    List<PendingNotification> batch = new ArrayList<>(this.batchSize);
+    deliveryLock.lock();
+    try {
+      while (!queue.offer(notification)) {
+        queue.drainTo(batch, this.batchSize);
+        this.deliverBatch(batch);
+        batch.clear();
+      }
+      this.enqueued.increment();
+    } finally {
+      deliveryLock.unlock();
+    }
+  }
+
+  private int indexOf(String accountId) {
+    int hash = accountId.hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % this.queues.size();
+  }
+
+  private void deliverLoop(BlockingQueue<PendingNotification> queue, ReentrantLock deliveryLock) {
+    List<PendingNotification> batch = new ArrayList<>(this.batchSize);
+    while (this.running || !queue.isEmpty()) {
+      // taken and delivered under the lock, so a caller delivering in the worker's place cannot
+      // overtake a batch the worker already holds
+      deliveryLock.lock();
+      try {
+        try {
+          PendingNotification first = queue.poll(100, TimeUnit.MILLISECONDS);
+          if (first == null) {
+            continue;
+          }
+          batch.add(first);
+          queue.drainTo(batch, this.batchSize - 1);
+        } catch (InterruptedException e) {
+          queue.drainTo(batch);
+        }
+
+        this.deliverBatch(batch);
+      } finally {
+        batch.clear();
+        deliveryLock.unlock();
+      }
+    }
+  }
+
+  private void deliverBatch(List<PendingNotification> batch) {
+    Map<String, List<PendingNotification>> byAccount = new LinkedHashMap<>();
+    for (PendingNotification notification : batch) {
+      byAccount.computeIfAbsent(notification.account.getAccountId(), id -> new ArrayList<>())
+        .add(notification);
+    }
+
+    for (List<PendingNotification> notifications : byAccount.values()) {
+      StringBuilder description = new StringBuilder();
+      for (PendingNotification notification : notifications) {
+        if (description.length() > 0) {
+          description.append('\n');
+        }
+        description.append(notification.description());
+      }
+      this.deliver(notifications.get(0).account, description.toString());
+    }
+    this.delivered.add(batch.size());
+    this.batches.increment();
+  }
+
+  private void deliver(Account account, String description) {
+    try {
+      this.notificationService.notifyAboutTransfer(account, description);
+    } catch (RuntimeException e) {
+      this.failures.increment();
+      log.error("Failed to notify owner of account {}", account.getAccountId(), e);
+    }
+  }
+
+  private static final class PendingNotification {
+
+    private final Account account;
+
+    private final Transfer transfer;
+
+    private final boolean outgoing;
+
+    private PendingNotification(Account account, Transfer transfer, boolean outgoing) {
+      this.account = account;
+      this.transfer = transfer;
+      this.outgoing = outgoing;
+    }
+
+    private String description() {
+      return this.outgoing
+        ? TransferNotifier.outgoingDescription(this.transfer)
+        : TransferNotifier.incomingDescription(this.transfer);
+    }
+  }
+}
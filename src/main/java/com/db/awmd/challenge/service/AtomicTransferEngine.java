@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An engine that can also apply multi-leg transfers as one unit. Only the locking engine can: the
+ * CAS engine has no way to hold several accounts at once, and the sharded engine would need the
+ * shards to agree.
+ */
+public interface AtomicTransferEngine extends TransferEngine {
+
+  /**
+   * Applies all legs as one unit: either every leg is applied or, if any leg fails, none is. Returns
+   * the accounts involved by id.
+   */
+  Map<String, Account> transferAtomically(List<Transfer> legs) throws
+    AccountNotFoundException,
+    NotEnoughFundsException,
+    BalanceOverflowException;
+}
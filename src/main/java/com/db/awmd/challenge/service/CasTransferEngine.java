@@ -0,0 +1,101 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lock-free engine: the debit is applied with a compare-and-swap retry loop that re-checks the
+ * funds on every attempt, then the credit is applied the same way. Between the two steps the
+ * amount is in flight, so the sum of all balances may briefly be lower than the money in the
+ * system, but it is never higher and no account is ever overdrawn.
+ *
+ * <p>A credit that would overflow the target account is refunded to the source. Credits to the
+ * source while the amount was in flight can leave it too little room for the refund; the source is
+ * then filled up to the largest balance, and the rest is held as unrefunded and logged, so that no
+ * money is lost.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.transfer-engine", havingValue = "cas")
+public class CasTransferEngine implements TransferEngine {
+
+  private final AccountsRepository accountsRepository;
+
+  private final AtomicLong unrefundedUnits = new AtomicLong();
+
+  @Autowired
+  public CasTransferEngine(AccountsRepository accountsRepository) {
+    this.accountsRepository = accountsRepository;
+  }
+
+  @Override
+  public TransferResult transfer(Transfer transfer) {
+    Account fromAccount = this.accountsRepository.getAccount(transfer.getFromAccountId()).orElse(null);
+    if (fromAccount == null) {
+      return TransferResult.accountNotFound(transfer.getFromAccountId());
+    }
+    Account toAccount = this.accountsRepository.getAccount(transfer.getToAccountId()).orElse(null);
+    if (toAccount == null) {
+      return TransferResult.accountNotFound(transfer.getToAccountId());
+    }
+    long amount = transfer.getAmountUnits();
+
+    long balance;
+    do {
+      balance = fromAccount.getBalanceUnits();
+      if (balance < amount) {
+        return TransferResult.notEnoughFunds(fromAccount.getAccountId());
+      }
+    } while (!fromAccount.compareAndSetBalanceUnits(balance, balance - amount));
+
+    if (!credit(toAccount, amount)) {
+      this.refund(transfer, fromAccount, amount);
+      return TransferResult.balanceOverflow(amount);
+    }
+
+    // The accounts are updated in place, so there is no repository write: re-putting them in the
+    // map would only take the map's bin lock.
+    return TransferResult.ok(fromAccount, toAccount);
+  }
+
+  private static boolean credit(Account account, long amount) {
+    long balance;
+    do {
+      balance = account.getBalanceUnits();
+      if (!Money.canAdd(balance, amount)) {
+        return false;
+      }
+    } while (!account.compareAndSetBalanceUnits(balance, balance + amount));
+    return true;
+  }
+
+  /**
+   * Money refunded to no account because it no longer fit in the source account's balance.
+   */
+  public long getUnrefundedUnits() {
+    return this.unrefundedUnits.get();
+  }
+
+  private void refund(Transfer transfer, Account account, long amount) {
+    long balance;
+    long refunded;
+    do {
+      balance = account.getBalanceUnits();
+      refunded = Money.canAdd(balance, amount) ? amount : Long.MAX_VALUE - balance;
+    } while (!account.compareAndSetBalanceUnits(balance, balance + refunded));
+
+    if (refunded < amount) {
+      this.unrefundedUnits.addAndGet(amount - refunded);
+      log.error("Transfer {} could only refund {} of its amount, the rest is held as unrefunded",
+        transfer, Money.toBigDecimal(refunded));
+    }
+  }
+}
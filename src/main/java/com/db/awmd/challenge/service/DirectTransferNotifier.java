@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "notifications.async.enabled", havingValue = "false", matchIfMissing = true)
+public class DirectTransferNotifier implements TransferNotifier {
+
+  private final NotificationService notificationService;
+
+  @Autowired
+  public DirectTransferNotifier(NotificationService notificationService) {
+    this.notificationService = notificationService;
+  }
+
+  @Override
+  public void transferCompleted(Account fromAccount, Account toAccount, Transfer transfer) {
+    notificationService.notifyAboutTransfer(fromAccount, TransferNotifier.outgoingDescription(transfer));
+    notificationService.notifyAboutTransfer(toAccount, TransferNotifier.incomingDescription(transfer));
+  }
+}
@@ -0,0 +1,223 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Accounts designated as hot, such as fee collection or omnibus accounts, that are credited by a
+ * large share of all transfers.
+ *
+ * <p>Credits to a hot account do not take its lock: each goes to one of several striped
+ * sub-balances, picked by the crediting thread, so inbound transfers to the account run in
+ * parallel. The account's own balance stays the one that debits draw from, under its lock; a
+ * debit it cannot cover first folds the sub-balances into it. The account's balance as seen by
+ * clients is its own balance plus the sub-balances.
+ *
+ * <p>A credit is added to its sub-balance first and checked against the whole balance after, and
+ * taken back if the balance no longer fits in a long. Of two credits that only overflow together,
+ * at least one sees the other and is refused, so the balance never overflows for longer than a
+ * refused credit takes to be taken back.
+ */
+@Component
+public class HotAccounts {
+
+  // each sub-balance sits on its own 64-byte cache line
+  private static final int CELL_SHIFT = 3;
+
+  private static final long OVERFLOW = Long.MIN_VALUE;
+
+  private final Map<String, SubBalances> subBalances;
+
+  private final int mask;
+
+  private final LongAdder folds;
+
+  @Autowired
+  public HotAccounts(
+    @Value("${accounts.hot.account-ids:}") String[] accountIds,
+    @Value("${accounts.hot.stripes:0}") int stripes,
+    @Value("${accounts.transfer-engine:locking}") String transferEngine,
+    @Value("${accounts.journal.enabled:false}") boolean journalEnabled,
+    MetricsRegistry metricsRegistry
+  ) {
+    if (accountIds.length > 0 && (!"locking".equals(transferEngine) || journalEnabled)) {
+      // credits bypass the account lock and the repository, which only the locking engine
+      // without the journal can live with
+      throw new IllegalStateException(
+        "Hot accounts require the locking transfer engine and cannot be used with the journal!");
+    }
+
+    int size = 1;
+    int requested = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+    while (size < requested) {
+      size <<= 1;
+    }
+    this.mask = size - 1;
+
+    Map<String, SubBalances> subBalances = new HashMap<>();
+    for (String accountId : accountIds) {
+      subBalances.put(accountId.trim(), new SubBalances(size));
+    }
+    this.subBalances = Collections.unmodifiableMap(subBalances);
+    this.folds = metricsRegistry.counter("accounts.hot.folds");
+  }
+
+  public boolean isHot(String accountId) {
+    return this.subBalances.containsKey(accountId);
+  }
+
+  /**
+   * The balance clients see: the account's own balance plus its sub-balances if it is hot.
+   */
+  public long balanceOf(Account account) {
+    SubBalances subBalances = this.subBalances.get(account.getAccountId());
+    if (subBalances == null) {
+      return account.getBalanceUnits();
+    }
+
+    while (true) {
+      long balance = this.totalOf(account, subBalances);
+      if (balance != OVERFLOW) {
+        return balance;
+      }
+      // only seen until the credit that overflowed is taken back
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Credits a hot account without its lock. Returns false, crediting nothing, if the balance would
+   * overflow.
+   */
+  public boolean credit(Account account, long amount) {
+    SubBalances subBalances = this.subBalances.get(account.getAccountId());
+    int cell = ((int) Thread.currentThread().getId() & this.mask) << CELL_SHIFT;
+    long credited;
+    do {
+      credited = subBalances.cells.get(cell);
+      if (!Money.canAdd(credited, amount)) {
+        return false;
+      }
+    } while (!subBalances.cells.compareAndSet(cell, credited, credited + amount));
+    if (this.totalOf(account, subBalances) == OVERFLOW) {
+      subBalances.cells.getAndAdd(cell, -amount);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Moves everything credited to a hot account's sub-balances into its own balance, so a debit
+   * can draw from it. Must be called under the account's lock; the account is left unchanged if
+   * it is not hot. A sub-balance that would overflow the account's own balance is left where it
+   * is, which only happens while a credit that overflowed the balance is being taken back.
+   */
+  public void fold(Account account) {
+    SubBalances subBalances = this.subBalances.get(account.getAccountId());
+    if (subBalances == null) {
+      return;
+    }
+
+    long balance = account.getBalanceUnits();
+    boolean folded = false;
+    subBalances.foldVersion++;
+    try {
+      for (int i = 0; i <= this.mask; i++) {
+        long credited = subBalances.cells.getAndSet(i << CELL_SHIFT, 0);
+        try {
+          balance = Math.addExact(balance, credited);
+          folded |= credited != 0;
+        } catch (ArithmeticException e) {
+          subBalances.cells.getAndAdd(i << CELL_SHIFT, credited);
+        }
+      }
+      account.setBalanceUnits(balance);
+    } finally {
+      subBalances.foldVersion++;
+    }
+    if (folded) {
+      this.folds.increment();
+    }
+  }
+
+  /**
+   * Raises the own balance of an account under its lock. Returns false, changing nothing, if the
+   * account is hot and its balance with the sub-balances would overflow; like a credit, the raise
+   * is made first and checked after, so it cannot slip past a concurrent credit.
+   */
+  public boolean raise(Account account, long balanceUnits) {
+    SubBalances subBalances = this.subBalances.get(account.getAccountId());
+    if (subBalances == null) {
+      account.setBalanceUnits(balanceUnits);
+      return true;
+    }
+
+    long previous = account.getBalanceUnits();
+    subBalances.foldVersion++;
+    try {
+      account.setBalanceUnits(balanceUnits);
+      if (subBalances.total(balanceUnits) == OVERFLOW) {
+        account.setBalanceUnits(previous);
+        return false;
+      }
+      return true;
+    } finally {
+      subBalances.foldVersion++;
+    }
+  }
+
+  private long totalOf(Account account, SubBalances subBalances) {
+    // a fold moves amounts between the sub-balances and the account, so a read that overlaps one
+    // could count them twice or not at all
+    while (true) {
+      int version = subBalances.foldVersion;
+      if ((version & 1) == 0) {
+        long total = subBalances.total(account.getBalanceUnits());
+        if (subBalances.foldVersion == version) {
+          return total;
+        }
+      }
+      Thread.yield();
+    }
+  }
+
+  private static final class SubBalances {
+
+    private final AtomicLongArray cells;
+
+    // odd while a fold or raise is running; only written under the account's lock
+    private volatile int foldVersion;
+
+    private SubBalances(int stripes) {
+      this.cells = new AtomicLongArray(stripes << CELL_SHIFT);
+    }
+
+    /**
+     * The balance plus the sub-balances, or {@link #OVERFLOW} if that does not fit in a long. The
+     * sum is exact: a sub-balance taken back after a fold is negative, so a partial sum may
+     * overflow while the whole does not.
+     */
+    private long total(long balance) {
+      long total = balance;
+      long carry = 0;
+      for (int i = 0; i < this.cells.length(); i += 1 << CELL_SHIFT) {
+        long cell = this.cells.get(i);
+        long sum = total + cell;
+        if (((total ^ sum) & (cell ^ sum)) < 0) {
+          carry += cell < 0 ? -1 : 1;
+        }
+        total = sum;
+      }
+      return carry == 0 ? total : OVERFLOW;
+    }
+  }
+}
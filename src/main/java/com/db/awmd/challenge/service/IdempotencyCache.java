@@ -0,0 +1,186 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the result of every transfer sent with an idempotency key, so a retried request gets
+ * the original result instead of being applied again.
+ *
+ * <p>Keys are spread over segments, each an insertion-ordered map behind its own lock. A segment
+ * holds at most its share of the capacity: adding to a full segment evicts its oldest key, and
+ * keys older than the time to live are dropped from the head of the map as new ones come in, so
+ * both lookups and eviction are O(1) and the cache never grows past its capacity.
+ *
+ * <p>A key only joins that map once its transfer completes. Until then it is pinned in a map of
+ * its own that nothing evicts, so a retry of a transfer that is still running waits for it rather
+ * than running it again. Those keys are bounded by the transfers in flight, not the capacity, and
+ * the time to live counts from completion.
+ */
+@Component
+public class IdempotencyCache {
+
+  private static final int SEGMENTS = 64;
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  private final long ttlNanos;
+
+  private final LongAdder replays;
+
+  @Autowired
+  public IdempotencyCache(
+    @Value("${accounts.idempotency.capacity:100000}") int capacity,
+    @Value("${accounts.idempotency.ttl-ms:3600000}") long ttlMillis,
+    MetricsRegistry metricsRegistry
+  ) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Idempotency cache capacity must be positive!");
+    }
+
+    int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+    for (int i = 0; i < SEGMENTS; i++) {
+      this.segments[i] = new Segment(segmentCapacity);
+    }
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.replays = metricsRegistry.counter("transfers.idempotency.replays");
+    metricsRegistry.gauge("transfers.idempotency.keys", this::size);
+  }
+
+  /**
+   * Returns the result of the first transfer seen with this key, or, if there is none, runs the
+   * transfer and remembers its result. Refusals are remembered like any other result, but a
+   * transfer that fails with an exception is forgotten once it does, so that the client's next
+   * retry runs the transfer again. A key first used for a different transfer is refused with
+   * {@link TransferOutcome#IDEMPOTENCY_KEY_REUSED}.
+   */
+  public CompletableFuture<TransferResult> deduplicate(
+    Transfer transfer,
+    Supplier<CompletableFuture<TransferResult>> action
+  ) {
+    String key = transfer.getIdempotencyKey();
+    Segment segment = this.segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    long now = System.nanoTime();
+
+    Entry entry;
+    segment.lock.lock();
+    try {
+      segment.expire(now, this.ttlNanos);
+      entry = segment.inFlight.get(key);
+      if (entry == null) {
+        entry = segment.entries.get(key);
+      }
+      if (entry != null) {
+        if (!entry.transfer.equals(transfer)) {
+          return CompletableFuture.completedFuture(TransferResult.refused(
+            TransferOutcome.IDEMPOTENCY_KEY_REUSED,
+            "Idempotency key " + key + " was already used for a different transfer!"));
+        }
+        this.replays.increment();
+        return entry.result;
+      }
+
+      entry = new Entry(transfer);
+      segment.inFlight.put(key, entry);
+    } finally {
+      segment.lock.unlock();
+    }
+
+    Entry claimed = entry;
+    CompletableFuture<TransferResult> result;
+    try {
+      result = action.get();
+    } catch (RuntimeException e) {
+      result = new CompletableFuture<>();
+      result.completeExceptionally(e);
+    }
+
+    result.whenComplete((transferResult, failure) -> {
+      segment.lock.lock();
+      try {
+        segment.inFlight.remove(key, claimed);
+        if (failure == null) {
+          claimed.completedAt = System.nanoTime();
+          segment.entries.put(key, claimed);
+        }
+      } finally {
+        segment.lock.unlock();
+      }
+
+      if (failure == null) {
+        claimed.result.complete(transferResult);
+      } else {
+        claimed.result.completeExceptionally(failure);
+      }
+    });
+    return claimed.result;
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : this.segments) {
+      segment.lock.lock();
+      try {
+        size += segment.entries.size() + segment.inFlight.size();
+      } finally {
+        segment.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  private static final class Entry {
+
+    private final Transfer transfer;
+
+    private final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+    // set under the segment's lock before the entry joins the evictable keys
+    private long completedAt;
+
+    private Entry(Transfer transfer) {
+      this.transfer = transfer;
+    }
+  }
+
+  private static final class Segment {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // completed keys, evicted by age and size
+    private final Map<String, Entry> entries;
+
+    // keys whose transfer is still running, never evicted
+    private final Map<String, Entry> inFlight = new HashMap<>();
+
+    private Segment(int capacity) {
+      this.entries = new LinkedHashMap<String, Entry>(capacity * 4 / 3 + 1) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          return this.size() > capacity;
+        }
+      };
+    }
+
+    private void expire(long now, long ttlNanos) {
+      Iterator<Entry> iterator = this.entries.values().iterator();
+      while (iterator.hasNext() && now - iterator.next().completedAt > ttlNanos) {
+        iterator.remove();
+      }
+    }
+  }
+}
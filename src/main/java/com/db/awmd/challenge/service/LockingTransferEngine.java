@@ -0,0 +1,270 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "accounts.transfer-engine", havingValue = "locking", matchIfMissing = true)
+public class LockingTransferEngine implements AtomicTransferEngine {
+
+  private final AccountsRepository accountsRepository;
+
+  private final AccountLocks accountLocks;
+
+  private final TransferMetrics transferMetrics;
+
+  private final SnapshotReads snapshotReads;
+
+  private final HotAccounts hotAccounts;
+
+  @Autowired
+  public LockingTransferEngine(
+    AccountsRepository accountsRepository,
+    AccountLocks accountLocks,
+    TransferMetrics transferMetrics,
+    SnapshotReads snapshotReads,
+    HotAccounts hotAccounts
+  ) {
+    this.accountsRepository = accountsRepository;
+    this.accountLocks = accountLocks;
+    this.transferMetrics = transferMetrics;
+    this.snapshotReads = snapshotReads;
+    this.hotAccounts = hotAccounts;
+  }
+
+  @Override
+  public TransferResult transfer(Transfer transfer) {
+    // a hot account is credited without its lock, so only the debited account is locked
+    String lockedAccountId = this.hotAccounts.isHot(transfer.getToAccountId())
+      ? transfer.getFromAccountId()
+      : transfer.getToAccountId();
+    this.accountLocks.lock(transfer.getFromAccountId(), lockedAccountId);
+    try {
+      return this.applyTransfer(transfer);
+    } finally {
+      this.accountLocks.unlock(transfer.getFromAccountId(), lockedAccountId);
+    }
+  }
+
+  /**
+   * Splits the batch into groups of transfers connected through shared accounts, and applies each
+   * group under a single acquisition of all of its account locks.
+   */
+  @Override
+  public void transferBatch(List<Transfer> transfers, BatchCallback callback) {
+    for (List<Integer> group : groupBySharedAccounts(transfers)) {
+      Set<String> accountIds = new HashSet<>();
+      for (int index : group) {
+        accountIds.add(transfers.get(index).getFromAccountId());
+        accountIds.add(transfers.get(index).getToAccountId());
+      }
+
+      int[] stripes = this.accountLocks.stripesOf(accountIds);
+      this.accountLocks.lockAll(stripes);
+      try {
+        for (int index : group) {
+          TransferResult result = this.applyTransfer(transfers.get(index));
+          if (result.isOk()) {
+            callback.transferred(index, result.getFromAccount(), result.getToAccount());
+          } else {
+            callback.failed(index, result);
+          }
+        }
+      } finally {
+        this.accountLocks.unlockAll(stripes);
+      }
+    }
+  }
+
+  /**
+   * Takes the locks of every account involved once, in stripe order, then replays the legs in
+   * order on local copies of the balances. Nothing is written unless every leg succeeds, and each
+   * account is then written exactly once with its final balance.
+   */
+  @Override
+  public Map<String, Account> transferAtomically(List<Transfer> legs) throws
+    AccountNotFoundException,
+    NotEnoughFundsException,
+    BalanceOverflowException
+  {
+    Set<String> accountIds = new HashSet<>();
+    for (Transfer leg : legs) {
+      accountIds.add(leg.getFromAccountId());
+      accountIds.add(leg.getToAccountId());
+    }
+
+    int[] stripes = this.accountLocks.stripesOf(accountIds);
+    this.accountLocks.lockAll(stripes);
+    try {
+      Map<String, Account> accounts = new LinkedHashMap<>();
+      Map<String, Long> balances = new HashMap<>();
+      for (Transfer leg : legs) {
+        for (String accountId : new String[] {leg.getFromAccountId(), leg.getToAccountId()}) {
+          if (!accounts.containsKey(accountId)) {
+            accounts.put(accountId, this.findAccount(accountId));
+          }
+        }
+      }
+      this.snapshotReads.beforeChange(accounts.values());
+      for (Account account : accounts.values()) {
+        this.hotAccounts.fold(account);
+        balances.put(account.getAccountId(), account.getBalanceUnits());
+      }
+      Map<String, Long> initial = new HashMap<>(balances);
+
+      for (Transfer leg : legs) {
+        long fromBalance = balances.get(leg.getFromAccountId());
+        if (fromBalance < leg.getAmountUnits()) {
+          throw new NotEnoughFundsException(
+            "Account " + leg.getFromAccountId() + " does not have enough money!"
+          );
+        }
+        balances.put(leg.getFromAccountId(), fromBalance - leg.getAmountUnits());
+        balances.put(leg.getToAccountId(), Money.add(balances.get(leg.getToAccountId()), leg.getAmountUnits()));
+      }
+
+      // hot accounts are credited concurrently through their sub-balances, so raising one is
+      // checked against those before anything is written
+      List<Account> raised = new ArrayList<>();
+      for (Account account : accounts.values()) {
+        long previous = initial.get(account.getAccountId());
+        long balance = balances.get(account.getAccountId());
+        if (balance > previous && this.hotAccounts.isHot(account.getAccountId())) {
+          if (!this.hotAccounts.raise(account, balance)) {
+            for (Account other : raised) {
+              other.setBalanceUnits(initial.get(other.getAccountId()));
+            }
+            throw new BalanceOverflowException(
+              "Balance would overflow when adding " + Money.toBigDecimal(balance - previous) + "!");
+          }
+          raised.add(account);
+        }
+      }
+      for (Account account : accounts.values()) {
+        account.setBalanceUnits(balances.get(account.getAccountId()));
+      }
+      this.updateAccounts(new ArrayList<>(accounts.values()));
+      return accounts;
+    } finally {
+      this.accountLocks.unlockAll(stripes);
+    }
+  }
+
+  private TransferResult applyTransfer(Transfer transfer) {
+    Account fromAccount = this.lookUpAccount(transfer.getFromAccountId());
+    if (fromAccount == null) {
+      return TransferResult.accountNotFound(transfer.getFromAccountId());
+    }
+    Account toAccount = this.lookUpAccount(transfer.getToAccountId());
+    if (toAccount == null) {
+      return TransferResult.accountNotFound(transfer.getToAccountId());
+    }
+
+    long amount = transfer.getAmountUnits();
+    long fromBalance = fromAccount.getBalanceUnits();
+    if (fromBalance < amount && this.hotAccounts.isHot(fromAccount.getAccountId())) {
+      this.snapshotReads.beforeChange(fromAccount);
+      this.hotAccounts.fold(fromAccount);
+      fromBalance = fromAccount.getBalanceUnits();
+    }
+    if (fromBalance < amount) {
+      return TransferResult.notEnoughFunds(fromAccount.getAccountId());
+    }
+
+    if (this.hotAccounts.isHot(toAccount.getAccountId())) {
+      if (!this.hotAccounts.credit(toAccount, amount)) {
+        return TransferResult.balanceOverflow(amount);
+      }
+      this.snapshotReads.beforeChange(fromAccount);
+      fromAccount.setBalanceUnits(fromBalance - amount);
+      this.updateAccounts(Collections.singletonList(fromAccount));
+      return TransferResult.ok(fromAccount, toAccount);
+    }
+    if (!Money.canAdd(toAccount.getBalanceUnits(), amount)) {
+      return TransferResult.balanceOverflow(amount);
+    }
+    long toBalance = toAccount.getBalanceUnits() + amount;
+
+    this.snapshotReads.beforeChange(fromAccount, toAccount);
+    fromAccount.setBalanceUnits(fromBalance - amount);
+    toAccount.setBalanceUnits(toBalance);
+
+    this.updateAccounts(Arrays.asList(fromAccount, toAccount));
+
+    return TransferResult.ok(fromAccount, toAccount);
+  }
+
+  private Account findAccount(String accountId) throws AccountNotFoundException {
+    Account account = this.lookUpAccount(accountId);
+    if (account == null) {
+      throw new AccountNotFoundException("Account " + accountId + " not found!");
+    }
+    return account;
+  }
+
+  private Account lookUpAccount(String accountId) {
+    long start = System.nanoTime();
+    Optional<Account> account = this.accountsRepository.getAccount(accountId);
+    this.transferMetrics.getRepositoryGetLatency().record(System.nanoTime() - start);
+    return account.orElse(null);
+  }
+
+  private void updateAccounts(List<Account> accounts) {
+    if (this.accountsRepository.isUpdatedInPlace()) {
+      return;
+    }
+    long start = System.nanoTime();
+    this.accountsRepository.updateAccounts(accounts);
+    this.transferMetrics.getRepositoryUpdateLatency().record(System.nanoTime() - start);
+  }
+
+  private static List<List<Integer>> groupBySharedAccounts(List<Transfer> transfers) {
+    int[] parent = new int[transfers.size()];
+    Map<String, Integer> firstUse = new HashMap<>();
+    for (int i = 0; i < transfers.size(); i++) {
+      parent[i] = i;
+      union(parent, i, firstUse.putIfAbsent(transfers.get(i).getFromAccountId(), i));
+      union(parent, i, firstUse.putIfAbsent(transfers.get(i).getToAccountId(), i));
+    }
+
+    Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < transfers.size(); i++) {
+      groups.computeIfAbsent(find(parent, i), root -> new ArrayList<>()).add(i);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  private static void union(int[] parent, int index, Integer other) {
+    if (other != null) {
+      parent[find(parent, index)] = find(parent, other);
+    }
+  }
+
+  private static int find(int[] parent, int index) {
+    while (parent[index] != index) {
+      parent[index] = parent[parent[index]];
+      index = parent[index];
+    }
+    return index;
+  }
+}
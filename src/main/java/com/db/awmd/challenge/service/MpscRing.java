@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded ring buffer for many producers and a single consumer. Every slot carries a sequence
+ * number: producers claim a slot by advancing the tail with a compare-and-swap and publish it by
+ * bumping the slot's sequence, so the consumer never takes a lock and never sees a half-written
+ * slot.
+ */
+final class MpscRing<T> {
+
+  private final Object[] slots;
+
+  private final AtomicLongArray sequences;
+
+  private final int mask;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  // only read and written by the consumer
+  private long head;
+
+  MpscRing(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Ring capacity must be positive!");
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.slots = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.sequences.set(i, i);
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Returns false if the ring is full.
+   */
+  boolean offer(T element) {
+    while (true) {
+      long tail = this.tail.get();
+      int index = (int) tail & this.mask;
+      long sequence = this.sequences.get(index);
+      if (sequence == tail) {
+        if (this.tail.compareAndSet(tail, tail + 1)) {
+          this.slots[index] = element;
+          // a full volatile write, so a producer that then checks whether the consumer is asleep
+          // cannot have that read reordered before the publication
+          this.sequences.set(index, tail + 1);
+          return true;
+        }
+      } else if (sequence < tail) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns null if the ring is empty. Must only be called by the consumer.
+   */
+  @SuppressWarnings("unchecked")
+  T poll() {
+    int index = (int) this.head & this.mask;
+    if (this.sequences.get(index) != this.head + 1) {
+      return null;
+    }
+
+    T element = (T) this.slots[index];
+    this.slots[index] = null;
+    this.sequences.lazySet(index, this.head + this.slots.length);
+    this.head++;
+    return element;
+  }
+
+  /**
+   * Must only be called by the consumer.
+   */
+  boolean isEmpty() {
+    return this.sequences.get((int) this.head & this.mask) != this.head + 1;
+  }
+}
@@ -0,0 +1,330 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-writer engine: accounts are partitioned by id across a fixed number of shards, and only
+ * a shard's own thread ever changes the balances it owns. Callers hand transfers to the shard of
+ * the source account through its ring buffer and wait for the result.
+ *
+ * <p>When both accounts live on the same shard the transfer is applied directly, with no
+ * synchronization at all. Otherwise the source shard checks the funds and debits, then passes the
+ * transfer on to the target shard, which credits; if the credit fails the transfer goes back to
+ * the source shard to be refunded. As with the CAS engine the amount is in flight between the two
+ * steps, so the sum of all balances may briefly be lower than the money in the system.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "accounts.transfer-engine", havingValue = "sharded")
+public class ShardedTransferEngine implements TransferEngine {
+
+  private static final int IDLE_SPINS = 100;
+
+  private static final long PENDING_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final AccountsRepository accountsRepository;
+
+  private final Shard[] shards;
+
+  private volatile boolean running = true;
+
+  @Autowired
+  public ShardedTransferEngine(
+    AccountsRepository accountsRepository,
+    @Value("${accounts.sharded.shards:0}") int shards,
+    @Value("${accounts.sharded.ring-size:4096}") int ringSize
+  ) {
+    this.accountsRepository = accountsRepository;
+
+    int count = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    this.shards = new Shard[count];
+    for (int i = 0; i < count; i++) {
+      this.shards[i] = new Shard(i, ringSize);
+    }
+    for (Shard shard : this.shards) {
+      shard.thread.start();
+    }
+  }
+
+  @Override
+  public TransferResult transfer(Transfer transfer) {
+    try {
+      return this.transferAsync(transfer, Runnable::run).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Hands the transfer to its shard and returns straight away; no thread waits for the result,
+   * which completes on a shard thread.
+   */
+  @Override
+  public CompletableFuture<TransferResult> transferAsync(Transfer transfer, Executor executor) {
+    Shard source = this.shards[this.shardOf(transfer.getFromAccountId())];
+    Shard target = this.shards[this.shardOf(transfer.getToAccountId())];
+    TransferCommand command = new TransferCommand(transfer, source, target);
+    source.submit(command);
+    return command.result;
+  }
+
+  @Override
+  public boolean hasOwnThreads() {
+    return true;
+  }
+
+  public int shardOf(String accountId) {
+    int hash = accountId.hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % this.shards.length;
+  }
+
+  public int getShards() {
+    return this.shards.length;
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    this.running = false;
+    for (Shard shard : this.shards) {
+      LockSupport.unpark(shard.thread);
+      shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  private enum Step {
+    APPLY, DEBIT, CREDIT, REFUND
+  }
+
+  /**
+   * One transfer, passed from shard to shard as it goes through its steps. Only the shard that
+   * currently holds it touches its fields.
+   */
+  private static final class TransferCommand {
+
+    private final Transfer transfer;
+
+    private final Shard source;
+
+    private final Shard target;
+
+    private final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+
+    private Step step;
+
+    private Shard recipient;
+
+    private Account fromAccount;
+
+    private Account toAccount;
+
+    private TransferResult refusal;
+
+    private TransferCommand(Transfer transfer, Shard source, Shard target) {
+      this.transfer = transfer;
+      this.source = source;
+      this.target = target;
+      this.step = source == target ? Step.APPLY : Step.DEBIT;
+    }
+  }
+
+  private final class Shard {
+
+    private final MpscRing<TransferCommand> ring;
+
+    private final Thread thread;
+
+    // transfers this shard passed on while the recipient's ring was full; they are retried in
+    // order before anything else, so the shards never block on each other
+    private final ArrayDeque<TransferCommand> pending = new ArrayDeque<>();
+
+    private volatile boolean sleeping;
+
+    private Shard(int index, int ringSize) {
+      this.ring = new MpscRing<>(ringSize);
+      this.thread = new Thread(this::run, "transfer-shard-" + index);
+      this.thread.setDaemon(true);
+    }
+
+    private void submit(TransferCommand command) {
+      while (!this.ring.offer(command)) {
+        if (!ShardedTransferEngine.this.running) {
+          throw new IllegalStateException("The transfer engine is shut down!");
+        }
+        Thread.yield();
+      }
+      this.wake();
+    }
+
+    private void wake() {
+      if (this.sleeping) {
+        LockSupport.unpark(this.thread);
+      }
+    }
+
+    private void send(Shard recipient, TransferCommand command) {
+      command.recipient = recipient;
+      if (this.pending.isEmpty() && recipient.ring.offer(command)) {
+        recipient.wake();
+      } else {
+        this.pending.add(command);
+      }
+    }
+
+    private void flushPending() {
+      TransferCommand command;
+      while ((command = this.pending.peek()) != null && command.recipient.ring.offer(command)) {
+        this.pending.poll();
+        command.recipient.wake();
+      }
+    }
+
+    private void run() {
+      int idle = 0;
+      while (ShardedTransferEngine.this.running) {
+        this.flushPending();
+        TransferCommand command = this.ring.poll();
+        if (command == null) {
+          idle = this.idle(idle);
+          continue;
+        }
+        idle = 0;
+        this.execute(command);
+      }
+
+      TransferCommand command;
+      while ((command = this.ring.poll()) != null || (command = this.pending.poll()) != null) {
+        command.result.completeExceptionally(
+          new IllegalStateException("The transfer engine is shut down!"));
+      }
+    }
+
+    private int idle(int idle) {
+      if (idle < IDLE_SPINS) {
+        return idle + 1;
+      }
+
+      if (!this.pending.isEmpty()) {
+        LockSupport.parkNanos(this, PENDING_RETRY_NANOS);
+      } else {
+        // producers check the flag after publishing, so either they see it and unpark this
+        // thread or the ring is seen as non-empty here
+        this.sleeping = true;
+        if (this.ring.isEmpty() && ShardedTransferEngine.this.running) {
+          LockSupport.park(this);
+        }
+        this.sleeping = false;
+      }
+      return idle;
+    }
+
+    private void execute(TransferCommand command) {
+      try {
+        switch (command.step) {
+          case APPLY:
+            this.apply(command);
+            break;
+          case DEBIT:
+            this.debit(command);
+            break;
+          case CREDIT:
+            this.credit(command);
+            break;
+          default:
+            this.refund(command);
+        }
+      } catch (RuntimeException e) {
+        if (command.step == Step.CREDIT || command.step == Step.REFUND) {
+          log.error("Transfer {} failed after its debit", command.transfer, e);
+        }
+        command.result.completeExceptionally(e);
+      }
+    }
+
+    private void apply(TransferCommand command) {
+      Account fromAccount = findAccount(command, command.transfer.getFromAccountId());
+      Account toAccount = fromAccount == null ? null : findAccount(command, command.transfer.getToAccountId());
+      long amount = command.transfer.getAmountUnits();
+      if (toAccount == null || !hasFunds(command, fromAccount, amount)) {
+        return;
+      }
+      if (!Money.canAdd(toAccount.getBalanceUnits(), amount)) {
+        command.result.complete(TransferResult.balanceOverflow(amount));
+        return;
+      }
+
+      fromAccount.setBalanceUnits(fromAccount.getBalanceUnits() - amount);
+      toAccount.setBalanceUnits(toAccount.getBalanceUnits() + amount);
+      command.result.complete(TransferResult.ok(fromAccount, toAccount));
+    }
+
+    private void debit(TransferCommand command) {
+      command.fromAccount = findAccount(command, command.transfer.getFromAccountId());
+      command.toAccount = command.fromAccount == null ? null : findAccount(command, command.transfer.getToAccountId());
+      long amount = command.transfer.getAmountUnits();
+      if (command.toAccount == null || !hasFunds(command, command.fromAccount, amount)) {
+        return;
+      }
+      command.fromAccount.setBalanceUnits(command.fromAccount.getBalanceUnits() - amount);
+
+      command.step = Step.CREDIT;
+      this.send(command.target, command);
+    }
+
+    private void credit(TransferCommand command) {
+      long amount = command.transfer.getAmountUnits();
+      if (!Money.canAdd(command.toAccount.getBalanceUnits(), amount)) {
+        command.refusal = TransferResult.balanceOverflow(amount);
+        command.step = Step.REFUND;
+        this.send(command.source, command);
+        return;
+      }
+      command.toAccount.setBalanceUnits(command.toAccount.getBalanceUnits() + amount);
+
+      command.result.complete(TransferResult.ok(command.fromAccount, command.toAccount));
+    }
+
+    private void refund(TransferCommand command) {
+      command.fromAccount.setBalanceUnits(
+        command.fromAccount.getBalanceUnits() + command.transfer.getAmountUnits());
+      command.result.complete(command.refusal);
+    }
+
+    /**
+     * Looks the account up, completing the transfer as refused if there is no such account.
+     */
+    private Account findAccount(TransferCommand command, String accountId) {
+      Account account = accountsRepository.getAccount(accountId).orElse(null);
+      if (account == null) {
+        command.result.complete(TransferResult.accountNotFound(accountId));
+      }
+      return account;
+    }
+
+    private boolean hasFunds(TransferCommand command, Account account, long amount) {
+      if (account.getBalanceUnits() < amount) {
+        command.result.complete(TransferResult.notEnoughFunds(account.getAccountId()));
+        return false;
+      }
+      return true;
+    }
+  }
+}
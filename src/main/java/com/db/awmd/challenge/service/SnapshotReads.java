@@ -0,0 +1,199 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountsTotal;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Point-in-time reads of many accounts that take no account lock and never hold up a transfer.
+ *
+ * <p>A read registers a snapshot, then waits for the transfers that were already holding the
+ * stripes it reads to finish; that moment is the point in time it reports. From then on, every
+ * writer that changes or creates an account first records the account's balance as of that
+ * moment in the snapshot, once. The read then takes each account's current balance unless the
+ * snapshot has an earlier one for it. Writers pay one volatile read while no read is running, and
+ * one map insert per account they touch while one is.
+ *
+ * <p>Writers report changes under the account's stripe lock, so reads are only point-in-time
+ * with an engine that changes balances under those locks, which is the locking engine. With the
+ * others each balance is still read atomically. The same goes for hot accounts, which are
+ * credited without their lock.
+ */
+@Component
+public class SnapshotReads {
+
+  private static final long ABSENT = Long.MIN_VALUE;
+
+  private static final Snapshot[] NONE = new Snapshot[0];
+
+  private final AccountsRepository accountsRepository;
+
+  private final AccountLocks accountLocks;
+
+  private final HotAccounts hotAccounts;
+
+  private volatile Snapshot[] active = NONE;
+
+  @Autowired
+  public SnapshotReads(AccountsRepository accountsRepository, AccountLocks accountLocks, HotAccounts hotAccounts) {
+    this.accountsRepository = accountsRepository;
+    this.accountLocks = accountLocks;
+    this.hotAccounts = hotAccounts;
+  }
+
+  /**
+   * Must be called under the account's stripe lock, before its balance changes.
+   */
+  public void beforeChange(Account account) {
+    Snapshot[] active = this.active;
+    if (active.length > 0) {
+      this.record(active, account);
+    }
+  }
+
+  /**
+   * Must be called under both accounts' stripe locks, before either balance changes. Both are
+   * recorded in the same snapshots: a snapshot that began between two separate calls would hold
+   * the earlier balance of only one of them, yet report the change of the other.
+   */
+  public void beforeChange(Account first, Account second) {
+    Snapshot[] active = this.active;
+    if (active.length > 0) {
+      this.record(active, first);
+      this.record(active, second);
+    }
+  }
+
+  /**
+   * Must be called under the stripe locks of all the accounts, before any of their balances
+   * change.
+   */
+  public void beforeChange(Collection<Account> accounts) {
+    Snapshot[] active = this.active;
+    if (active.length > 0) {
+      for (Account account : accounts) {
+        this.record(active, account);
+      }
+    }
+  }
+
+  /**
+   * Must be called under the account's stripe lock, before it is created.
+   */
+  public void beforeCreate(String accountId) {
+    for (Snapshot snapshot : this.active) {
+      snapshot.balances.putIfAbsent(accountId, ABSENT);
+    }
+  }
+
+  /**
+   * Returns the balances of the given accounts, in minor units, all as of the same moment.
+   * Accounts that did not exist at that moment are left out.
+   */
+  public Map<String, Long> balances(Collection<String> accountIds) {
+    Snapshot snapshot = this.begin(this.accountLocks.stripesOf(accountIds));
+    try {
+      Map<String, Long> balances = new LinkedHashMap<>();
+      for (String accountId : accountIds) {
+        Optional<Account> account = this.accountsRepository.getAccount(accountId);
+        if (account.isPresent()) {
+          long balance = snapshot.balanceOf(account.get());
+          if (balance != ABSENT) {
+            balances.put(accountId, balance);
+          }
+        }
+      }
+      return balances;
+    } finally {
+      this.end(snapshot);
+    }
+  }
+
+  /**
+   * Returns the number of accounts and the sum of all balances, both as of the same moment.
+   */
+  public AccountsTotal total() {
+    Snapshot snapshot = this.begin(null);
+    try {
+      long[] sum = new long[3];
+      this.accountsRepository.forEachAccount(account -> {
+        long balance = snapshot.balanceOf(account);
+        if (balance != ABSENT) {
+          // balances are never negative, so the low word overflows as an unsigned number
+          long low = sum[0] + balance;
+          if (Long.compareUnsigned(low, sum[0]) < 0) {
+            sum[1]++;
+          }
+          sum[0] = low;
+          sum[2]++;
+        }
+      });
+
+      BigInteger units = BigInteger.valueOf(sum[1]).shiftLeft(64)
+        .add(new BigInteger(Long.toUnsignedString(sum[0])));
+      return new AccountsTotal(sum[2], Money.toBigDecimal(units));
+    } finally {
+      this.end(snapshot);
+    }
+  }
+
+  private void record(Snapshot[] active, Account account) {
+    long balance = this.hotAccounts.balanceOf(account);
+    for (Snapshot snapshot : active) {
+      snapshot.balances.putIfAbsent(account.getAccountId(), balance);
+    }
+  }
+
+  private Snapshot begin(int[] stripes) {
+    Snapshot snapshot = new Snapshot(this.hotAccounts);
+    synchronized (this) {
+      Snapshot[] active = Arrays.copyOf(this.active, this.active.length + 1);
+      active[active.length - 1] = snapshot;
+      this.active = active;
+    }
+    // writers that got their stripe before the snapshot was published may not have seen it
+    this.accountLocks.awaitReleased(stripes);
+    return snapshot;
+  }
+
+  private synchronized void end(Snapshot snapshot) {
+    Snapshot[] active = new Snapshot[this.active.length - 1];
+    int next = 0;
+    for (Snapshot other : this.active) {
+      if (other != snapshot) {
+        active[next++] = other;
+      }
+    }
+    this.active = active.length == 0 ? NONE : active;
+  }
+
+  private static final class Snapshot {
+
+    // balances as of the snapshot, for the accounts changed or created since
+    private final Map<String, Long> balances = new ConcurrentHashMap<>();
+
+    private final HotAccounts hotAccounts;
+
+    private Snapshot(HotAccounts hotAccounts) {
+      this.hotAccounts = hotAccounts;
+    }
+
+    private long balanceOf(Account account) {
+      // the current balance must be read before looking for an earlier one: a writer records the
+      // earlier balance before it changes the current one
+      long current = this.hotAccounts.balanceOf(account);
+      Long earlier = this.balances.get(account.getAccountId());
+      return earlier != null ? earlier : current;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package com.db.awmd.challenge.service;
+
+import java.util.function.Consumer;
+import lombok.Getter;
+
+/**
+ * Hierarchical timing wheel. Time is counted in ticks; each level is a ring of slots, and one
+ * slot of a level spans a whole turn of the level below it. A timer goes into the lowest level
+ * whose turn reaches its deadline, and moves down a level whenever the level below starts the
+ * turn it falls in, so scheduling and cancelling a timer are O(1) however many are pending, and
+ * a timer is moved at most once per level before it expires.
+ *
+ * <p>Timers due further out than the top level spans are parked in its farthest slot and placed
+ * again each time that slot comes round. Not thread-safe.
+ */
+public class TimingWheel<T> {
+
+  private final int bits;
+
+  private final int mask;
+
+  private final Timer<T>[][] slots;
+
+  // the next tick to expire
+  private long tick;
+
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  public TimingWheel(int slotsPerLevel, int levels, long startTick) {
+    int size = 2;
+    while (size < slotsPerLevel) {
+      size <<= 1;
+    }
+    this.bits = Integer.numberOfTrailingZeros(size);
+    if (levels <= 0 || levels * this.bits > 62) {
+      throw new IllegalArgumentException("A timing wheel needs between 1 and " + 62 / this.bits + " levels!");
+    }
+
+    this.mask = size - 1;
+    this.slots = (Timer<T>[][]) new Timer<?>[levels][size];
+    this.tick = startTick;
+  }
+
+  /**
+   * Schedules the value to expire at the given tick. A deadline that has already passed expires
+   * on the next call to {@link #advance}.
+   */
+  public Timer<T> schedule(long deadline, T value) {
+    Timer<T> timer = new Timer<>(deadline, value);
+    this.place(timer);
+    this.size++;
+    return timer;
+  }
+
+  /**
+   * Returns false if the timer has already expired or been cancelled.
+   */
+  public boolean cancel(Timer<T> timer) {
+    if (timer.level < 0) {
+      return false;
+    }
+    this.unlink(timer);
+    this.size--;
+    return true;
+  }
+
+  /**
+   * Expires every timer due at or before the given tick, passing its value to the action.
+   */
+  public void advance(long now, Consumer<? super T> expired) {
+    while (this.tick <= now) {
+      int slot = (int) this.tick & this.mask;
+      if (slot == 0) {
+        this.cascade();
+      }
+
+      Timer<T> due = this.slots[0][slot];
+      this.slots[0][slot] = null;
+      // detached first, so the action may schedule and cancel timers
+      for (Timer<T> timer = due; timer != null; timer = timer.next) {
+        timer.level = -1;
+        this.size--;
+      }
+      this.tick++;
+
+      while (due != null) {
+        Timer<T> next = due.next;
+        due.prev = null;
+        due.next = null;
+        expired.accept(due.value);
+        due = next;
+      }
+    }
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Moves the timers of the slots that start their turn at the current tick down a level.
+   */
+  private void cascade() {
+    for (int level = 1; level < this.slots.length; level++) {
+      int slot = (int) (this.tick >>> (level * this.bits)) & this.mask;
+      Timer<T> timer = this.slots[level][slot];
+      this.slots[level][slot] = null;
+      while (timer != null) {
+        Timer<T> next = timer.next;
+        this.place(timer);
+        timer = next;
+      }
+      if (slot != 0) {
+        return;
+      }
+    }
+  }
+
+  private void place(Timer<T> timer) {
+    long at = timer.deadline;
+    long delta = at - this.tick;
+    int level = 0;
+    if (delta < 0) {
+      at = this.tick;
+    } else {
+      while (level < this.slots.length - 1 && delta >= 1L << ((level + 1) * this.bits)) {
+        level++;
+      }
+      long span = 1L << (this.slots.length * this.bits);
+      if (delta >= span) {
+        at = this.tick + span - 1;
+      }
+    }
+
+    int slot = (int) (at >>> (level * this.bits)) & this.mask;
+    Timer<T> head = this.slots[level][slot];
+    timer.level = level;
+    timer.slot = slot;
+    timer.prev = null;
+    timer.next = head;
+    if (head != null) {
+      head.prev = timer;
+    }
+    this.slots[level][slot] = timer;
+  }
+
+  private void unlink(Timer<T> timer) {
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    } else {
+      this.slots[timer.level][timer.slot] = timer.next;
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+    timer.prev = null;
+    timer.next = null;
+    timer.level = -1;
+  }
+
+  public static final class Timer<T> {
+
+    @Getter
+    private final long deadline;
+
+    @Getter
+    private final T value;
+
+    // -1 once expired or cancelled
+    private int level = -1;
+
+    private int slot;
+
+    private Timer<T> prev;
+
+    private Timer<T> next;
+
+    private Timer(long deadline, T value) {
+      this.deadline = deadline;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admission control for transfers sent by clients, singly or in batches, applied before they
+ * reach the engine, so that a client flooding a few accounts is turned away instead of queueing
+ * everyone else behind those accounts. Scheduled transfers are exempt once they fall due.
+ *
+ * <p>Each account involved in a transfer has a token bucket, kept as the single time at which it
+ * will be full again and updated with a compare-and-swap. Hot accounts are exempt, since their
+ * credits do not queue. Full buckets are forgotten by a background sweep; while the number of
+ * tracked accounts is at its limit, accounts without a bucket are not limited.
+ *
+ * <p>On top of that, the time admitted transfers spend getting through the engine, which is mostly
+ * time spent waiting for locks, workers or shards, is averaged over short intervals. It ends when
+ * the engine returns, before the transfer is recorded and made durable. While the average is over
+ * the latency budget, a share of all transfers is shed, growing with every interval over budget
+ * and shrinking with every interval under it.
+ */
+@Component
+public class TransferAdmission {
+
+  private static final double SHED_STEP = 0.1;
+
+  // some transfers always go through, so the delay keeps being measured
+  private static final double MAX_SHED = 0.9;
+
+  private final long nanosPerToken;
+
+  private final long burstNanos;
+
+  private final int maxTrackedAccounts;
+
+  private final long budgetNanos;
+
+  private final long intervalNanos;
+
+  private final HotAccounts hotAccounts;
+
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService sweeper;
+
+  private final LongAdder delaySum = new LongAdder();
+
+  private final LongAdder delayCount = new LongAdder();
+
+  private final AtomicLong intervalEnd;
+
+  private volatile double shedShare;
+
+  @Autowired
+  public TransferAdmission(
+    @Value("${accounts.admission.rate-per-account:0}") long ratePerAccount,
+    @Value("${accounts.admission.burst:100}") long burst,
+    @Value("${accounts.admission.max-tracked-accounts:100000}") int maxTrackedAccounts,
+    @Value("${accounts.admission.latency-budget-ms:0}") long latencyBudgetMillis,
+    @Value("${accounts.admission.interval-ms:100}") long intervalMillis,
+    HotAccounts hotAccounts,
+    MetricsRegistry metricsRegistry
+  ) {
+    this.nanosPerToken = ratePerAccount > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerAccount : 0;
+    this.burstNanos = this.nanosPerToken * Math.max(burst, 1);
+    this.maxTrackedAccounts = maxTrackedAccounts;
+    this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis);
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.intervalEnd = new AtomicLong(System.nanoTime() + this.intervalNanos);
+    this.hotAccounts = hotAccounts;
+
+    metricsRegistry.gauge("transfers.admission.shed-percent", () -> Math.round(this.shedShare * 100));
+    metricsRegistry.gauge("transfers.admission.tracked-accounts", this.buckets::size);
+
+    if (this.nanosPerToken > 0) {
+      this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "admission-sweeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      // a bucket left alone for its burst time is full again
+      long sweepNanos = Math.max(this.burstNanos, TimeUnit.MILLISECONDS.toNanos(100));
+      this.sweeper.scheduleWithFixedDelay(this::sweep, sweepNanos, sweepNanos, TimeUnit.NANOSECONDS);
+    } else {
+      this.sweeper = null;
+    }
+  }
+
+  /**
+   * Returns null if the transfer is admitted, otherwise why it was not.
+   */
+  public TransferResult tryAdmit(Transfer transfer) {
+    long now = System.nanoTime();
+    if (this.budgetNanos > 0 && this.shouldShed(now)) {
+      return TransferResult.refused(TransferOutcome.THROTTLED, "Too many transfers in progress, try again later!");
+    }
+    if (this.nanosPerToken > 0) {
+      AtomicLong from = this.bucketOf(transfer.getFromAccountId(), now);
+      if (!this.takeToken(from, now)) {
+        return throttled(transfer.getFromAccountId());
+      }
+      if (!this.takeToken(this.bucketOf(transfer.getToAccountId(), now), now)) {
+        // the transfer is not going ahead, so it must not use up the source account's rate
+        this.refundToken(from);
+        return throttled(transfer.getToAccountId());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reports how long an admitted transfer took to get through the engine.
+   */
+  public void completed(long engineNanos) {
+    if (this.budgetNanos > 0) {
+      this.delaySum.add(engineNanos);
+      this.delayCount.increment();
+    }
+  }
+
+  private boolean shouldShed(long now) {
+    long end = this.intervalEnd.get();
+    if (now - end >= 0 && this.intervalEnd.compareAndSet(end, now + this.intervalNanos)) {
+      long count = this.delayCount.sumThenReset();
+      long sum = this.delaySum.sumThenReset();
+      this.shedShare = count > 0 && sum / count > this.budgetNanos
+        ? Math.min(MAX_SHED, this.shedShare + SHED_STEP)
+        : Math.max(0, this.shedShare - SHED_STEP);
+    }
+
+    double shedShare = this.shedShare;
+    return shedShare > 0 && ThreadLocalRandom.current().nextDouble() < shedShare;
+  }
+
+  /**
+   * Returns null if the account is not limited.
+   */
+  private AtomicLong bucketOf(String accountId, long now) {
+    if (this.hotAccounts.isHot(accountId)) {
+      return null;
+    }
+
+    AtomicLong bucket = this.buckets.get(accountId);
+    if (bucket == null) {
+      if (this.buckets.size() >= this.maxTrackedAccounts) {
+        return null;
+      }
+      bucket = this.buckets.computeIfAbsent(accountId, id -> new AtomicLong(now));
+    }
+    return bucket;
+  }
+
+  private boolean takeToken(AtomicLong bucket, long now) {
+    if (bucket == null) {
+      return true;
+    }
+
+    while (true) {
+      // the bucket is full from this time on; every token taken pushes it back
+      long fullAt = bucket.get();
+      long next = Math.max(fullAt - now, 0) + this.nanosPerToken;
+      if (next > this.burstNanos) {
+        return false;
+      }
+      if (bucket.compareAndSet(fullAt, now + next)) {
+        return true;
+      }
+    }
+  }
+
+  private void refundToken(AtomicLong bucket) {
+    if (bucket != null) {
+      bucket.addAndGet(-this.nanosPerToken);
+    }
+  }
+
+  /**
+   * Forgets accounts whose bucket is full, which is the same as never having seen them.
+   */
+  private void sweep() {
+    long now = System.nanoTime();
+    this.buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+  }
+
+  private static TransferResult throttled(String accountId) {
+    return TransferResult.refused(
+      TransferOutcome.THROTTLED, "Too many transfers for account " + accountId + ", try again later!");
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (this.sweeper != null) {
+      this.sweeper.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+public interface TransferEngine {
+
+  /**
+   * Applies the transfer. A missing account, missing funds or an overflowing balance are reported
+   * in the result, not thrown.
+   */
+  TransferResult transfer(Transfer transfer);
+
+  /**
+   * Starts the transfer without blocking the calling thread. Engines that block while applying a
+   * transfer run it on the given executor; engines with their own threads may complete the
+   * returned future from one of them, so its continuations must be short.
+   */
+  default CompletableFuture<TransferResult> transferAsync(Transfer transfer, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> this.transfer(transfer), executor);
+  }
+
+  /**
+   * Whether {@link #transferAsync} completes from the engine's own threads rather than running
+   * the transfer on the given executor.
+   */
+  default boolean hasOwnThreads() {
+    return false;
+  }
+
+  /**
+   * Applies every transfer of the batch, reporting each one to the callback by its index in the
+   * list. A failing transfer does not stop the rest of the batch, and transfers touching the same
+   * account are applied in list order.
+   */
+  default void transferBatch(List<Transfer> transfers, BatchCallback callback) {
+    for (int i = 0; i < transfers.size(); i++) {
+      TransferResult result = this.transfer(transfers.get(i));
+      if (result.isOk()) {
+        callback.transferred(i, result.getFromAccount(), result.getToAccount());
+      } else {
+        callback.failed(i, result);
+      }
+    }
+  }
+
+  interface BatchCallback {
+
+    void transferred(int index, Account fromAccount, Account toAccount);
+
+    void failed(int index, TransferResult refusal);
+  }
+}
@@ -0,0 +1,17 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+
+public interface TransferNotifier {
+
+  void transferCompleted(Account fromAccount, Account toAccount, Transfer transfer);
+
+  static String outgoingDescription(Transfer transfer) {
+    return "Transfer to account " + transfer.getToAccountId() + " for amount " + transfer.getAmount();
+  }
+
+  static String incomingDescription(Transfer transfer) {
+    return "Transfer from account " + transfer.getFromAccountId() + " for amount " + transfer.getAmount();
+  }
+}
@@ -0,0 +1,274 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatchItemResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.TransferNoAmountException;
+import com.db.awmd.challenge.exception.TransferSameAccountException;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Transfers to be applied at a later time, such as standing orders and end-of-day sweeps.
+ *
+ * <p>Pending transfers are kept in a {@link TimingWheel}, so scheduling and cancelling one costs
+ * the same however many are pending. A single thread advances the wheel every tick and applies
+ * the transfers that became due through {@link AccountsService#transferScheduledBatch}, in order
+ * of execution time, a batch at a time. Refused transfers are logged and dropped. Pending
+ * transfers are only kept in memory.
+ *
+ * <p>A transfer scheduled with an idempotency key is scheduled once: scheduling it again with the
+ * same key, for as long as the key is remembered, returns the transfer scheduled the first time.
+ * Keys are remembered for the idempotency TTL and, like in {@link IdempotencyCache}, up to its
+ * capacity: scheduling with a new key when that many are remembered forgets the oldest one.
+ */
+@Slf4j
+@Component
+public class TransferScheduler {
+
+  private static final Comparator<ScheduledTransfer> EXECUTION_ORDER = Comparator
+    .comparingLong((ScheduledTransfer scheduled) -> scheduled.getTransfer().getExecuteAt())
+    .thenComparingLong(ScheduledTransfer::getId);
+
+  private final AccountsService accountsService;
+
+  private final long tickMillis;
+
+  private final int batchSize;
+
+  private final TimingWheel<ScheduledTransfer> wheel;
+
+  private final Map<Long, TimingWheel.Timer<ScheduledTransfer>> pending = new HashMap<>();
+
+  private final Map<String, Map<Long, ScheduledTransfer>> pendingByAccount = new HashMap<>();
+
+  // in order of scheduling, so expired and evicted keys are found at the head
+  private final LinkedHashMap<String, KeyedTransfer> byIdempotencyKey;
+
+  private final long idempotencyTtlMillis;
+
+  private final LongAdder executed;
+
+  private final LongAdder refused;
+
+  private final ScheduledExecutorService executor;
+
+  private long lastId;
+
+  @Autowired
+  public TransferScheduler(
+    AccountsService accountsService,
+    MetricsRegistry metricsRegistry,
+    @Value("${accounts.scheduler.tick-ms:100}") long tickMillis,
+    @Value("${accounts.scheduler.slots-per-level:256}") int slotsPerLevel,
+    @Value("${accounts.scheduler.levels:4}") int levels,
+    @Value("${accounts.scheduler.batch-size:1000}") int batchSize,
+    @Value("${accounts.idempotency.capacity:100000}") int idempotencyCapacity,
+    @Value("${accounts.idempotency.ttl-ms:3600000}") long idempotencyTtlMillis
+  ) {
+    if (tickMillis <= 0 || batchSize <= 0) {
+      throw new IllegalArgumentException("Scheduler tick and batch size must be positive!");
+    }
+    if (idempotencyCapacity <= 0) {
+      throw new IllegalArgumentException("Idempotency cache capacity must be positive!");
+    }
+
+    this.accountsService = accountsService;
+    this.tickMillis = tickMillis;
+    this.batchSize = batchSize;
+    this.idempotencyTtlMillis = idempotencyTtlMillis;
+    this.byIdempotencyKey = new LinkedHashMap<String, KeyedTransfer>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, KeyedTransfer> eldest) {
+        return this.size() > idempotencyCapacity;
+      }
+    };
+    this.wheel = new TimingWheel<>(slotsPerLevel, levels, System.currentTimeMillis() / tickMillis);
+    this.executed = metricsRegistry.counter("transfers.scheduled.executed");
+    this.refused = metricsRegistry.counter("transfers.scheduled.refused");
+    metricsRegistry.gauge("transfers.scheduled.pending", this::size);
+
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "transfer-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Schedules the transfer for its execution time; one whose time has passed is applied on the
+   * next tick. Whether there are enough funds is only known once it is applied.
+   */
+  public ScheduledTransfer schedule(Transfer transfer) throws
+    AccountNotFoundException,
+    TransferSameAccountException,
+    TransferNoAmountException,
+    IdempotencyKeyReusedException {
+    if (transfer.getExecuteAt() == null) {
+      throw new IllegalArgumentException("Scheduled transfers need an execution time!");
+    }
+    TransferResult refusal = this.accountsService.validate(transfer);
+    if (refusal != null) {
+      throw refusal.toException();
+    }
+    this.accountsService.getAccount(transfer.getFromAccountId());
+    this.accountsService.getAccount(transfer.getToAccountId());
+
+    synchronized (this) {
+      String key = transfer.getIdempotencyKey();
+      long now = System.currentTimeMillis();
+      if (key != null) {
+        this.expireKeys(now);
+        KeyedTransfer keyed = this.byIdempotencyKey.get(key);
+        if (keyed != null) {
+          if (!keyed.scheduled.getTransfer().equals(transfer)) {
+            throw new IdempotencyKeyReusedException(
+              "Idempotency key " + key + " was already used for a different transfer!");
+          }
+          return keyed.scheduled;
+        }
+      }
+
+      ScheduledTransfer scheduled = new ScheduledTransfer(++this.lastId, transfer);
+      if (key != null) {
+        this.byIdempotencyKey.put(key, new KeyedTransfer(scheduled, now));
+      }
+      this.pending.put(scheduled.getId(), this.wheel.schedule(transfer.getExecuteAt() / this.tickMillis, scheduled));
+      this.index(transfer.getFromAccountId(), scheduled);
+      this.index(transfer.getToAccountId(), scheduled);
+      return scheduled;
+    }
+  }
+
+  /**
+   * Returns false if there is no pending transfer with the id, because it was never scheduled,
+   * was cancelled or has already been applied.
+   */
+  public synchronized boolean cancel(long id) {
+    TimingWheel.Timer<ScheduledTransfer> timer = this.pending.remove(id);
+    if (timer == null) {
+      return false;
+    }
+    this.wheel.cancel(timer);
+    this.unindex(timer.getValue());
+    return true;
+  }
+
+  /**
+   * The pending transfers from or to the account, in order of execution time.
+   */
+  public synchronized List<ScheduledTransfer> pendingTransfers(String accountId) {
+    return this.pendingByAccount.getOrDefault(accountId, Collections.emptyMap()).values().stream()
+      .sorted(EXECUTION_ORDER)
+      .collect(Collectors.toList());
+  }
+
+  public synchronized int size() {
+    return this.wheel.size();
+  }
+
+  /**
+   * Applies every pending transfer that is due.
+   */
+  public void tick() {
+    try {
+      List<ScheduledTransfer> due = new ArrayList<>();
+      synchronized (this) {
+        this.wheel.advance(System.currentTimeMillis() / this.tickMillis, due::add);
+        for (ScheduledTransfer scheduled : due) {
+          this.pending.remove(scheduled.getId());
+          this.unindex(scheduled);
+        }
+      }
+      if (due.isEmpty()) {
+        return;
+      }
+
+      due.sort(EXECUTION_ORDER);
+      for (int start = 0; start < due.size(); start += this.batchSize) {
+        List<ScheduledTransfer> batch = due.subList(start, Math.min(due.size(), start + this.batchSize));
+        this.apply(batch);
+      }
+    } catch (Exception e) {
+      log.error("Failed to apply scheduled transfers", e);
+    }
+  }
+
+  private void apply(List<ScheduledTransfer> batch) {
+    List<Transfer> transfers = batch.stream().map(ScheduledTransfer::getTransfer).collect(Collectors.toList());
+    List<TransferBatchItemResult> results = this.accountsService.transferScheduledBatch(transfers);
+    for (TransferBatchItemResult result : results) {
+      if (result.getOutcome() == TransferOutcome.OK) {
+        this.executed.increment();
+      } else {
+        this.refused.increment();
+        log.warn("Scheduled transfer {} was refused: {}", batch.get(result.getIndex()).getId(), result.getMessage());
+      }
+    }
+  }
+
+  private void expireKeys(long now) {
+    Iterator<KeyedTransfer> keys = this.byIdempotencyKey.values().iterator();
+    while (keys.hasNext()) {
+      if (now - keys.next().scheduledAt < this.idempotencyTtlMillis) {
+        return;
+      }
+      keys.remove();
+    }
+  }
+
+  private void index(String accountId, ScheduledTransfer scheduled) {
+    this.pendingByAccount.computeIfAbsent(accountId, key -> new HashMap<>()).put(scheduled.getId(), scheduled);
+  }
+
+  private void unindex(ScheduledTransfer scheduled) {
+    for (String accountId : new String[] {
+      scheduled.getTransfer().getFromAccountId(),
+      scheduled.getTransfer().getToAccountId()
+    }) {
+      Map<Long, ScheduledTransfer> byId = this.pendingByAccount.get(accountId);
+      if (byId != null && byId.remove(scheduled.getId()) != null && byId.isEmpty()) {
+        this.pendingByAccount.remove(accountId);
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  private static final class KeyedTransfer {
+
+    private final ScheduledTransfer scheduled;
+
+    private final long scheduledAt;
+
+    private KeyedTransfer(ScheduledTransfer scheduled, long scheduledAt) {
+      this.scheduled = scheduled;
+      this.scheduledAt = scheduledAt;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.db.awmd.challenge.tcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking client for {@link TransferServer}. Requests are buffered and sent when the buffer fills
+ * or on {@link #flush()}, and may be pipelined: the server answers them in order. A client sending
+ * more than a few buffers' worth without reading should read the responses from another thread,
+ * since the server stops reading a connection whose responses are not being read.
+ *
+ * <p>Sending and receiving may each be done by one thread at a time.
+ */
+public class TransferClient implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Socket socket;
+
+  private final DataOutputStream output;
+
+  private final DataInputStream input;
+
+  public TransferClient(String host, int port) throws IOException {
+    this.socket = new Socket(host, port);
+    this.socket.setTcpNoDelay(true);
+    this.output = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), BUFFER_SIZE));
+    this.input = new DataInputStream(new BufferedInputStream(this.socket.getInputStream(), BUFFER_SIZE));
+  }
+
+  public void send(long requestId, String fromAccountId, String toAccountId, long amountUnits) throws IOException {
+    byte[] from = fromAccountId.getBytes(StandardCharsets.UTF_8);
+    byte[] to = toAccountId.getBytes(StandardCharsets.UTF_8);
+    int length = 8 + 2 + from.length + 2 + to.length + 8;
+    if (length > TransferProtocol.MAX_FRAME_LENGTH) {
+      throw new IllegalArgumentException("Account ids are too long for a transfer request!");
+    }
+
+    this.output.writeInt(length);
+    this.output.writeLong(requestId);
+    this.output.writeShort(from.length);
+    this.output.write(from);
+    this.output.writeShort(to.length);
+    this.output.write(to);
+    this.output.writeLong(amountUnits);
+  }
+
+  public void flush() throws IOException {
+    this.output.flush();
+  }
+
+  /**
+   * Blocks until the response to the oldest unanswered request arrives.
+   */
+  public TransferResponse receive() throws IOException {
+    this.input.readInt();
+    long requestId = this.input.readLong();
+    int outcome = this.input.readUnsignedByte();
+    byte[] message = new byte[this.input.readUnsignedShort()];
+    this.input.readFully(message);
+
+    return new TransferResponse(
+      requestId,
+      TransferProtocol.outcomeOf(outcome),
+      message.length == 0 ? null : new String(message, StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.socket.close();
+  }
+}
@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.domain.TransferOutcome;
+import java.net.ProtocolException;
+
+/**
+ * Length-prefixed binary transfer protocol for internal clients. All numbers are big-endian and
+ * strings are UTF-8, each preceded by its length in bytes as an unsigned short.
+ *
+ * <pre>
+ * request:  int length | long requestId | string fromAccountId | string toAccountId | long amountUnits
+ * response: int length | long requestId | byte outcome | string message
+ * </pre>
+ *
+ * <p>{@code length} counts the bytes after it. Amounts are minor units at the server's
+ * {@link com.db.awmd.challenge.domain.Money#SCALE}. {@code outcome} is the code of the
+ * {@link TransferOutcome}, and the message is empty for {@link TransferOutcome#OK}.
+ *
+ * <p>A client may send any number of requests without waiting for responses. Responses come back
+ * in the order of the requests; the request id is only echoed back, for the client's convenience.
+ * A malformed or oversized frame closes the connection.
+ */
+public final class TransferProtocol {
+
+  public static final int MAX_FRAME_LENGTH = 8192;
+
+  private static final TransferOutcome[] OUTCOMES = new TransferOutcome[256];
+
+  static {
+    for (TransferOutcome outcome : TransferOutcome.values()) {
+      OUTCOMES[outcome.getCode()] = outcome;
+    }
+  }
+
+  private TransferProtocol() {
+  }
+
+  static TransferOutcome outcomeOf(int code) throws ProtocolException {
+    TransferOutcome outcome = OUTCOMES[code];
+    if (outcome == null) {
+      throw new ProtocolException("Unknown transfer outcome " + code + "!");
+    }
+    return outcome;
+  }
+}
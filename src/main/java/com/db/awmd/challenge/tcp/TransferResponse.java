@@ -0,0 +1,14 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.domain.TransferOutcome;
+import lombok.Data;
+
+@Data
+public class TransferResponse {
+
+  private final long requestId;
+
+  private final TransferOutcome outcome;
+
+  private final String message;
+}
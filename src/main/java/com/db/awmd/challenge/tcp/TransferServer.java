@@ -0,0 +1,387 @@
+package com.db.awmd.challenge.tcp;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatchItemResult;
+import com.db.awmd.challenge.service.AccountIdCache;
+import com.db.awmd.challenge.service.AccountsService;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Binary transfer ingress over plain TCP, next to HTTP, speaking {@link TransferProtocol}.
+ *
+ * <p>A single selector thread does all the socket I/O. Whatever complete requests a connection
+ * has buffered, up to {@code max-batch}, are handed to a worker as one
+ * {@link AccountsService#transferBatch} call, and all of their responses are written back as one
+ * buffer. Each connection has at most one batch in flight, which keeps its responses in order;
+ * the requests that arrive meanwhile make up the next batch, so batches grow with the load.
+ * A connection is not read while its input buffer is full or its responses are not being read.
+ */
+@Component
+@ConditionalOnProperty(name = "accounts.tcp.enabled", havingValue = "true")
+@Slf4j
+public class TransferServer {
+
+  private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+  private static final int MAX_PENDING_WRITES = 4;
+
+  // request id, both id lengths and the amount
+  private static final int MIN_FRAME_LENGTH = 8 + 2 + 2 + 8;
+
+  private static final byte[] NO_MESSAGE = new byte[0];
+
+  private final AccountsService accountsService;
+
+  private final AccountIdCache accountIdCache;
+
+  private final int port;
+
+  private final int maxBatch;
+
+  private final ExecutorService workers;
+
+  private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger connections = new AtomicInteger();
+
+  private Selector selector;
+
+  private ServerSocketChannel serverChannel;
+
+  private Thread selectorThread;
+
+  private volatile boolean running;
+
+  @Autowired
+  public TransferServer(
+    AccountsService accountsService,
+    AccountIdCache accountIdCache,
+    @Value("${accounts.tcp.port:18081}") int port,
+    @Value("${accounts.tcp.workers:0}") int workers,
+    @Value("${accounts.tcp.max-batch:1024}") int maxBatch
+  ) {
+    this.accountsService = accountsService;
+    this.accountIdCache = accountIdCache;
+    this.port = port;
+    this.maxBatch = maxBatch;
+
+    AtomicInteger threads = new AtomicInteger();
+    this.workers = Executors.newFixedThreadPool(
+      workers > 0 ? workers : Runtime.getRuntime().availableProcessors(),
+      runnable -> {
+        Thread thread = new Thread(runnable, "transfer-tcp-worker-" + threads.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    this.serverChannel.bind(new InetSocketAddress(this.port));
+    this.serverChannel.configureBlocking(false);
+    this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+
+    this.running = true;
+    this.selectorThread = new Thread(this::run, "transfer-tcp-selector");
+    this.selectorThread.setDaemon(true);
+    this.selectorThread.start();
+    log.info("Accepting binary transfers on port {}", this.getPort());
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    this.running = false;
+    this.selector.wakeup();
+    this.selectorThread.join();
+    this.workers.shutdown();
+    this.workers.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * The port actually listened on, which is chosen by the system when configured as 0.
+   */
+  public int getPort() {
+    return this.serverChannel.socket().getLocalPort();
+  }
+
+  public int getConnections() {
+    return this.connections.get();
+  }
+
+  private void run() {
+    while (this.running) {
+      try {
+        this.selector.select();
+
+        Connection connection;
+        while ((connection = this.completed.poll()) != null) {
+          connection.completed();
+        }
+
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            this.accept();
+          } else {
+            ((Connection) key.attachment()).ready(key);
+          }
+        }
+      } catch (IOException e) {
+        log.error("Binary transfer server failed to accept a connection", e);
+      } catch (RuntimeException e) {
+        // the selector thread serves every connection, so it outlives whatever went wrong
+        log.error("Binary transfer server failed", e);
+      }
+    }
+
+    for (SelectionKey key : this.selector.keys()) {
+      if (key.attachment() instanceof Connection) {
+        ((Connection) key.attachment()).close();
+      }
+    }
+    try {
+      this.serverChannel.close();
+      this.selector.close();
+    } catch (IOException e) {
+      log.warn("Failed to close the binary transfer server", e);
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = this.serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+    this.connections.incrementAndGet();
+  }
+
+  private String readAccountId(ByteBuffer input, int end) throws ProtocolException {
+    if (end - input.position() < 2) {
+      throw new ProtocolException("Truncated transfer request!");
+    }
+    int length = input.getShort() & 0xFFFF;
+    if (end - input.position() < length) {
+      throw new ProtocolException("Truncated transfer request!");
+    }
+    String value = this.accountIdCache.intern(input.array(), input.arrayOffset() + input.position(), length);
+    input.position(input.position() + length);
+    return value;
+  }
+
+  private static ByteBuffer encode(long[] requestIds, List<TransferBatchItemResult> results) {
+    byte[][] messages = new byte[results.size()][];
+    int size = 0;
+    for (int i = 0; i < messages.length; i++) {
+      String message = results.get(i).getMessage();
+      messages[i] = message == null ? NO_MESSAGE : message.getBytes(StandardCharsets.UTF_8);
+      size += 4 + 8 + 1 + 2 + messages[i].length;
+    }
+
+    ByteBuffer output = ByteBuffer.allocate(size);
+    for (int i = 0; i < messages.length; i++) {
+      output.putInt(8 + 1 + 2 + messages[i].length)
+        .putLong(requestIds[i])
+        .put((byte) results.get(i).getOutcome().getCode())
+        .putShort((short) messages[i].length)
+        .put(messages[i]);
+    }
+    output.flip();
+    return output;
+  }
+
+  /**
+   * Everything but {@link #process} runs on the selector thread.
+   */
+  private final class Connection {
+
+    private final SocketChannel channel;
+
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+
+    private final long[] requestIds = new long[maxBatch];
+
+    private SelectionKey key;
+
+    private boolean inFlight;
+
+    // handed from the worker to the selector thread through the completed queue
+    private ByteBuffer response;
+
+    private Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    private void ready(SelectionKey key) {
+      try {
+        if (key.isReadable()) {
+          if (this.channel.read(this.input) < 0) {
+            this.close();
+            return;
+          }
+          this.dispatch();
+        }
+        if (key.isValid() && key.isWritable()) {
+          this.write();
+        }
+        this.updateInterest();
+      } catch (IOException e) {
+        log.debug("Closing binary transfer connection", e);
+        this.close();
+      } catch (RuntimeException e) {
+        log.error("Closing binary transfer connection after an unexpected failure", e);
+        this.close();
+      }
+    }
+
+    private void completed() {
+      this.inFlight = false;
+      if (!this.channel.isOpen()) {
+        return;
+      }
+      if (this.response == null) {
+        // the batch failed for a reason its transfers cannot explain
+        this.close();
+        return;
+      }
+
+      try {
+        this.output.add(this.response);
+        this.response = null;
+        this.write();
+        this.dispatch();
+        this.updateInterest();
+      } catch (IOException e) {
+        log.debug("Closing binary transfer connection", e);
+        this.close();
+      } catch (RuntimeException e) {
+        log.error("Closing binary transfer connection after an unexpected failure", e);
+        this.close();
+      }
+    }
+
+    private void dispatch() throws ProtocolException {
+      if (this.inFlight) {
+        return;
+      }
+
+      List<Transfer> transfers = new ArrayList<>();
+      this.input.flip();
+      try {
+        while (transfers.size() < maxBatch && this.input.remaining() >= 4) {
+          int length = this.input.getInt(this.input.position());
+          if (length < MIN_FRAME_LENGTH || length > TransferProtocol.MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid frame length " + length + "!");
+          }
+          if (this.input.remaining() < 4 + length) {
+            break;
+          }
+
+          this.input.position(this.input.position() + 4);
+          int end = this.input.position() + length;
+          this.requestIds[transfers.size()] = this.input.getLong();
+          String fromAccountId = readAccountId(this.input, end);
+          String toAccountId = readAccountId(this.input, end);
+          if (end - this.input.position() != 8) {
+            throw new ProtocolException("Malformed transfer request!");
+          }
+          transfers.add(new Transfer(fromAccountId, toAccountId, this.input.getLong()));
+        }
+      } finally {
+        this.input.compact();
+      }
+
+      if (!transfers.isEmpty()) {
+        this.inFlight = true;
+        long[] requestIds = Arrays.copyOf(this.requestIds, transfers.size());
+        workers.execute(() -> this.process(transfers, requestIds));
+      }
+    }
+
+    private void process(List<Transfer> transfers, long[] requestIds) {
+      try {
+        this.response = encode(requestIds, accountsService.transferBatch(transfers));
+      } catch (RuntimeException e) {
+        log.error("Failed to apply a batch of {} binary transfers", transfers.size(), e);
+      }
+      completed.add(this);
+      selector.wakeup();
+    }
+
+    private void write() throws IOException {
+      while (!this.output.isEmpty()) {
+        ByteBuffer buffer = this.output.peek();
+        this.channel.write(buffer);
+        if (buffer.hasRemaining()) {
+          return;
+        }
+        this.output.poll();
+      }
+    }
+
+    private void updateInterest() {
+      if (!this.key.isValid()) {
+        return;
+      }
+      int operations = 0;
+      if (this.input.hasRemaining() && this.output.size() < MAX_PENDING_WRITES) {
+        operations |= SelectionKey.OP_READ;
+      }
+      if (!this.output.isEmpty()) {
+        operations |= SelectionKey.OP_WRITE;
+      }
+      this.key.interestOps(operations);
+    }
+
+    private void close() {
+      if (!this.channel.isOpen()) {
+        return;
+      }
+      this.key.cancel();
+      try {
+        this.channel.close();
+      } catch (IOException e) {
+        log.debug("Failed to close binary transfer connection", e);
+      }
+      connections.decrementAndGet();
+    }
+  }
+}
@@ -1,14 +1,47 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.AccountsQuery;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatchItemResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
 import com.db.awmd.challenge.exception.*;
 import com.db.awmd.challenge.service.AccountsService;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +50,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -24,15 +58,39 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class AccountsController {
 
+  private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
+  private static final int MAX_IMPORT_ERRORS = 100;
+
+  private static final String NDJSON_VALUE = "application/x-ndjson";
+
+  private static final String CSV_VALUE = "text/csv";
+
+  private static final String CSV_HEADER = "accountId,balance";
+
   private final AccountsService accountsService;
 
+  private final ObjectMapper objectMapper;
+
+  private final Validator validator;
+
+  private final int batchChunkSize;
+
   @Autowired
-  public AccountsController(AccountsService accountsService) {
+  public AccountsController(
+    AccountsService accountsService,
+    ObjectMapper objectMapper,
+    Validator validator,
+    @Value("${accounts.batch.chunk-size:1000}") int batchChunkSize
+  ) {
     this.accountsService = accountsService;
+    this.objectMapper = objectMapper;
+    this.validator = validator;
+    this.batchChunkSize = batchChunkSize;
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
+  public ResponseEntity<Object> createAccount(@RequestBody Account account) {
     log.info("Creating account {}", account);
 
     try {
@@ -44,23 +102,140 @@ public class AccountsController {
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
-  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<Object> transfer(@RequestBody @Valid Transfer transfer) {
-    log.info(
-      "Transferring funds from account with id {} to account with id {}",
-      transfer.getFromAccountId(),
-      transfer.getToAccountId()
-    );
+  /**
+   * Bulk import of accounts, as NDJSON (one account object per line) or as CSV
+   * ({@code accountId,balance}, optionally with that header line). The body is read one account at
+   * a time and the accounts are created in parallel, a chunk at a time, so memory use does not
+   * depend on the size of the import.
+   */
+  @PostMapping(consumes = {NDJSON_VALUE, CSV_VALUE})
+  public ResponseEntity<Object> importAccounts(HttpServletRequest request) throws IOException {
+    log.info("Importing accounts");
 
+    AccountImport accountImport = new AccountImport();
     try {
-      this.accountsService.transfer(transfer);
-    } catch (AccountNotFoundException e) {
-      return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
-    } catch (TransferSameAccountException | NotEnoughFundsException | TransferNoAmountException e) {
-      return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+      if (MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.parseMediaType(CSV_VALUE))) {
+        this.readCsvAccounts(request.getReader(), accountImport);
+      } else {
+        this.readNdjsonAccounts(request.getInputStream(), accountImport);
+      }
+    } catch (JsonProcessingException e) {
+      accountImport.flush();
+      accountImport.reject(e.getLocation() == null ? 0 : e.getLocation().getLineNr(), e.getOriginalMessage());
+      return new ResponseEntity<>(accountImport.result(), HttpStatus.BAD_REQUEST);
+    }
+    accountImport.flush();
+
+    log.info("Imported {} accounts, rejected {}", accountImport.imported, accountImport.rejected);
+    return ResponseEntity.ok().body(accountImport.result());
+  }
+
+  /**
+   * Streams every account as NDJSON, straight to the response. Accounts created or changed while
+   * the export runs may or may not be included.
+   */
+  @GetMapping(produces = NDJSON_VALUE)
+  public void exportAccountsAsNdjson(HttpServletResponse response) throws IOException {
+    log.info("Exporting accounts as NDJSON");
+    response.setContentType(NDJSON_VALUE);
+
+    ObjectWriter writer = this.objectMapper.writerFor(Account.class)
+      .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+      this.accountsService.forEachAccount(account -> {
+        try {
+          writer.writeValue(generator, account);
+          generator.writeRaw('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+
+  /**
+   * Streams every account as CSV, straight to the response.
+   */
+  @GetMapping(produces = CSV_VALUE)
+  public void exportAccountsAsCsv(HttpServletResponse response) throws IOException {
+    log.info("Exporting accounts as CSV");
+    response.setContentType(CSV_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+    try (Writer writer = new BufferedWriter(
+      new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8))) {
+      writer.write(CSV_HEADER);
+      writer.write('\n');
+      this.accountsService.forEachAccount(account -> {
+        try {
+          writer.write(csvField(account.getAccountId()));
+          writer.write(',');
+          writer.write(account.getBalance().toPlainString());
+          writer.write('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+
+  @PostMapping(path = "/transfers/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transferBatch(HttpServletRequest request) throws IOException {
+    log.info("Transferring funds for a batch of transfers");
+
+    List<TransferBatchItemResult> results = new ArrayList<>();
+    List<Transfer> transfers = new ArrayList<>();
+    List<Integer> indexes = new ArrayList<>();
+
+    try (JsonParser parser = this.objectMapper.getFactory().createParser(request.getInputStream())) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        return new ResponseEntity<>("Request body must be an array of transfers!", HttpStatus.BAD_REQUEST);
+      }
+
+      // the whole body is read before any transfer is applied, so a malformed body moves no money
+      JsonToken token;
+      for (int index = 0; (token = parser.nextToken()) != JsonToken.END_ARRAY; index++) {
+        if (token == null) {
+          return new ResponseEntity<>("Unexpected end of the transfers array!", HttpStatus.BAD_REQUEST);
+        }
+
+        JsonNode node = parser.readValueAsTree();
+        try {
+          transfers.add(this.readTransfer(node));
+          indexes.add(index);
+        } catch (JsonProcessingException e) {
+          results.add(new TransferBatchItemResult(index, TransferOutcome.INVALID, e.getOriginalMessage()));
+        } catch (IllegalArgumentException e) {
+          results.add(new TransferBatchItemResult(index, TransferOutcome.INVALID, e.getMessage()));
+        }
+      }
+    } catch (JsonProcessingException e) {
+      return new ResponseEntity<>(e.getOriginalMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    for (int start = 0; start < transfers.size(); start += this.batchChunkSize) {
+      int end = Math.min(transfers.size(), start + this.batchChunkSize);
+      this.applyBatchChunk(transfers.subList(start, end), indexes.subList(start, end), results);
     }
 
-    return new ResponseEntity<>(HttpStatus.OK);
+    results.sort((first, second) -> Integer.compare(first.getIndex(), second.getIndex()));
+    return ResponseEntity.ok().body(results);
+  }
+
+  /**
+   * Balances of many accounts at once, all as of the same moment. Unknown ids are listed in
+   * {@code notFound} rather than failing the query.
+   */
+  @PostMapping(path = "/query", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> queryAccounts(@RequestBody @Valid AccountsQuery query) {
+    log.info("Querying {} accounts", query.getAccountIds().size());
+    return ResponseEntity.ok().body(this.accountsService.queryAccounts(query.getAccountIds()));
+  }
+
+  @GetMapping(path = "/total")
+  public ResponseEntity<Object> getAccountsTotal() {
+    log.info("Retrieving the total balance of all accounts");
+    return ResponseEntity.ok().body(this.accountsService.getAccountsTotal());
   }
 
   @GetMapping(path = "/{accountId}")
@@ -73,4 +248,193 @@ public class AccountsController {
     }
   }
 
+  /**
+   * Pages through the account's transfers, newest first. {@code since} (inclusive) and
+   * {@code until} (exclusive) are epoch milliseconds.
+   */
+  @GetMapping(path = "/{accountId}/transfers")
+  public ResponseEntity<Object> getTransfers(
+    @PathVariable String accountId,
+    @RequestParam(required = false) Long cursor,
+    @RequestParam(required = false) Long since,
+    @RequestParam(required = false) Long until,
+    @RequestParam(defaultValue = "50") int limit
+  ) {
+    log.info("Retrieving transfers of account with id {}", accountId);
+    if (limit <= 0 || limit > MAX_HISTORY_PAGE_SIZE) {
+      return new ResponseEntity<>(
+        "Limit must be between 1 and " + MAX_HISTORY_PAGE_SIZE + "!", HttpStatus.BAD_REQUEST);
+    }
+
+    try {
+      return ResponseEntity.ok().body(this.accountsService.getTransferHistoryPage(
+        accountId,
+        cursor,
+        since == null ? Long.MIN_VALUE : since,
+        until == null ? Long.MAX_VALUE : until,
+        limit));
+    } catch (AccountNotFoundException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+    }
+  }
+
+  private Transfer readTransfer(JsonNode node) throws JsonProcessingException {
+    Transfer transfer = this.validated(this.objectMapper.treeToValue(node, Transfer.class), "Transfer");
+    if (transfer.getExecuteAt() != null) {
+      throw new IllegalArgumentException(TransferResponses.NOT_SCHEDULED);
+    }
+    if (transfer.getIdempotencyKey() != null) {
+      throw new IllegalArgumentException(TransferResponses.NOT_DEDUPLICATED);
+    }
+    return transfer;
+  }
+
+  private void readNdjsonAccounts(InputStream input, AccountImport accountImport) throws IOException {
+    try (JsonParser parser = this.objectMapper.getFactory().createParser(input)) {
+      while (parser.nextToken() != null) {
+        int line = parser.getTokenLocation().getLineNr();
+        JsonNode node = parser.readValueAsTree();
+        try {
+          accountImport.add(line, this.validated(this.objectMapper.treeToValue(node, Account.class), "Account"));
+        } catch (JsonProcessingException e) {
+          accountImport.reject(line, e.getOriginalMessage());
+        } catch (IllegalArgumentException e) {
+          accountImport.reject(line, e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void readCsvAccounts(BufferedReader reader, AccountImport accountImport) throws IOException {
+    String row;
+    for (int line = 1; (row = reader.readLine()) != null; line++) {
+      if (row.trim().isEmpty() || (line == 1 && row.trim().equals(CSV_HEADER))) {
+        continue;
+      }
+
+      List<String> fields = splitCsvRow(row);
+      if (fields.size() != 2) {
+        accountImport.reject(line, "Expected " + CSV_HEADER + " but got " + fields.size() + " fields");
+        continue;
+      }
+      try {
+        accountImport.add(line, this.validated(
+          new Account(fields.get(0), new BigDecimal(fields.get(1).trim())), "Account"));
+      } catch (NumberFormatException e) {
+        accountImport.reject(line, "Balance " + fields.get(1) + " is not a number");
+      } catch (IllegalArgumentException e) {
+        accountImport.reject(line, e.getMessage());
+      }
+    }
+  }
+
+  private <T> T validated(T value, String name) {
+    if (value == null) {
+      throw new IllegalArgumentException(name + " must not be null!");
+    }
+
+    Set<ConstraintViolation<T>> violations = this.validator.validate(value);
+    if (!violations.isEmpty()) {
+      throw new IllegalArgumentException(violations.stream()
+        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+        .collect(Collectors.joining(", ")));
+    }
+    return value;
+  }
+
+  private static List<String> splitCsvRow(String row) {
+    List<String> fields = new ArrayList<>(2);
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < row.length(); i++) {
+      char c = row.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static String csvField(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private void applyBatchChunk(
+    List<Transfer> chunk,
+    List<Integer> chunkIndexes,
+    List<TransferBatchItemResult> results
+  ) {
+    for (TransferBatchItemResult result : this.accountsService.transferBatch(chunk)) {
+      results.add(new TransferBatchItemResult(
+        chunkIndexes.get(result.getIndex()), result.getOutcome(), result.getMessage()));
+    }
+  }
+
+  /**
+   * The accounts read so far that are not created yet, and the running totals of an import.
+   */
+  private final class AccountImport {
+
+    private final List<Account> chunk = new ArrayList<>(AccountsController.this.batchChunkSize);
+
+    private final Map<Account, Integer> lines = new IdentityHashMap<>();
+
+    private final List<String> errors = new ArrayList<>();
+
+    private long imported;
+
+    private long rejected;
+
+    private void add(int line, Account account) {
+      this.chunk.add(account);
+      this.lines.put(account, line);
+      if (this.chunk.size() == AccountsController.this.batchChunkSize) {
+        this.flush();
+      }
+    }
+
+    private void reject(int line, String message) {
+      this.rejected++;
+      if (this.errors.size() < MAX_IMPORT_ERRORS) {
+        this.errors.add("Line " + line + ": " + message);
+      }
+    }
+
+    private void flush() {
+      if (this.chunk.isEmpty()) {
+        return;
+      }
+
+      List<Account> duplicates = AccountsController.this.accountsService.createAccounts(this.chunk);
+      this.imported += this.chunk.size() - duplicates.size();
+      duplicates.stream()
+        .sorted(Comparator.comparing(this.lines::get))
+        .forEach(account -> this.reject(
+          this.lines.get(account), "Account id " + account.getAccountId() + " already exists!"));
+      this.chunk.clear();
+      this.lines.clear();
+    }
+
+    private AccountImportResult result() {
+      return new AccountImportResult(this.imported, this.rejected, this.errors);
+    }
+  }
 }
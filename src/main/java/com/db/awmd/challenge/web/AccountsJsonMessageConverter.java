@@ -0,0 +1,223 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.AccountIdCache;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads {@link Transfer} and {@link Account} request bodies and writes {@link Account} responses
+ * with Jackson's streaming parser and generator instead of data binding. Amounts go straight from
+ * the parser's character buffer to minor units and back, without a {@link java.math.BigDecimal},
+ * and the constraints declared on both classes are checked inline instead of through
+ * {@code javax.validation}, so handlers taking these bodies need no {@code @Valid}. Account ids
+ * are resolved through the {@link AccountIdCache} from the same buffer.
+ *
+ * <p>Jackson's parsers and generators already reuse per-thread buffers; the only other buffer is
+ * the per-thread one amounts are formatted into. Every other type, including these classes nested
+ * in other payloads, is left to the regular Jackson converter.
+ */
+@Component
+public class AccountsJsonMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+  private static final ThreadLocal<char[]> AMOUNT_BUFFER = ThreadLocal.withInitial(() -> new char[32]);
+
+  private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 128;
+
+  private final JsonFactory jsonFactory;
+
+  private final AccountIdCache accountIdCache;
+
+  @Autowired
+  public AccountsJsonMessageConverter(ObjectMapper objectMapper, AccountIdCache accountIdCache) {
+    super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    this.jsonFactory = objectMapper.getFactory();
+    this.accountIdCache = accountIdCache;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return clazz == Transfer.class || Account.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+    return Account.class.isAssignableFrom(clazz) && this.canWrite(mediaType);
+  }
+
+  @Override
+  protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+    try (JsonParser parser = this.jsonFactory.createParser(inputMessage.getBody())) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new HttpMessageNotReadableException("Request body must be a JSON object!");
+      }
+      return clazz == Transfer.class ? this.readTransfer(parser) : this.readAccount(parser);
+    } catch (JsonProcessingException e) {
+      throw new HttpMessageNotReadableException("Could not read JSON: " + e.getOriginalMessage(), e);
+    } catch (IllegalArgumentException e) {
+      throw new HttpMessageNotReadableException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  protected void writeInternal(Object object, HttpOutputMessage outputMessage) throws IOException {
+    Account account = (Account) object;
+    char[] buffer = AMOUNT_BUFFER.get();
+    JsonGenerator generator = this.jsonFactory.createGenerator(outputMessage.getBody());
+    generator.writeStartObject();
+    generator.writeStringField("accountId", account.getAccountId());
+    generator.writeFieldName("balance");
+    generator.writeRawValue(buffer, 0, Money.format(account.getBalanceUnits(), buffer));
+    generator.writeEndObject();
+    // the response stream is closed by the container
+    generator.flush();
+  }
+
+  private Transfer readTransfer(JsonParser parser) throws IOException {
+    String fromAccountId = null;
+    String toAccountId = null;
+    String idempotencyKey = null;
+    Long executeAt = null;
+    long amountUnits = 0;
+    boolean hasAmount = false;
+
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      JsonToken token = parser.nextToken();
+      switch (field) {
+        case "fromAccountId":
+          fromAccountId = this.readAccountId(parser, token);
+          break;
+        case "toAccountId":
+          toAccountId = this.readAccountId(parser, token);
+          break;
+        case "amount":
+          hasAmount = token != JsonToken.VALUE_NULL;
+          amountUnits = readAmount(parser, token);
+          break;
+        case "idempotencyKey":
+          idempotencyKey = readString(parser, token);
+          break;
+        case "executeAt":
+          executeAt = readTimestamp(parser, token);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    requireAccountId("fromAccountId", fromAccountId);
+    requireAccountId("toAccountId", toAccountId);
+    if (!hasAmount) {
+      throw new IllegalArgumentException("Amount must not be null!");
+    }
+    if (idempotencyKey != null
+      && (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+      throw new IllegalArgumentException(
+        "idempotencyKey must be between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters long!");
+    }
+
+    Transfer transfer = new Transfer(fromAccountId, toAccountId, amountUnits);
+    transfer.setIdempotencyKey(idempotencyKey);
+    transfer.setExecuteAt(executeAt);
+    return transfer;
+  }
+
+  private Account readAccount(JsonParser parser) throws IOException {
+    String accountId = null;
+    long balanceUnits = 0;
+    boolean hasBalance = false;
+
+    String field;
+    while ((field = parser.nextFieldName()) != null) {
+      JsonToken token = parser.nextToken();
+      switch (field) {
+        case "accountId":
+          accountId = this.readAccountId(parser, token);
+          break;
+        case "balance":
+          hasBalance = token != JsonToken.VALUE_NULL;
+          balanceUnits = readAmount(parser, token);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    requireAccountId("accountId", accountId);
+    if (!hasBalance) {
+      throw new IllegalArgumentException("Amount must not be null!");
+    }
+    if (balanceUnits < 0) {
+      throw new IllegalArgumentException("Initial balance must be positive.");
+    }
+
+    Account account = new Account(accountId);
+    account.setBalanceUnits(balanceUnits);
+    return account;
+  }
+
+  private String readAccountId(JsonParser parser, JsonToken token) throws IOException {
+    if (token != JsonToken.VALUE_STRING) {
+      return readString(parser, token);
+    }
+    return this.accountIdCache.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+  }
+
+  private static String readString(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token != JsonToken.VALUE_STRING) {
+      throw new IllegalArgumentException("Expected a string for " + parser.getCurrentName() + "!");
+    }
+    return parser.getText();
+  }
+
+  private static Long readTimestamp(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return null;
+    }
+    if (token != JsonToken.VALUE_NUMBER_INT) {
+      throw new IllegalArgumentException(parser.getCurrentName() + " must be in epoch milliseconds!");
+    }
+    return parser.getLongValue();
+  }
+
+  private static long readAmount(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return 0;
+    }
+    if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT
+      && token != JsonToken.VALUE_STRING) {
+      throw new IllegalArgumentException("Expected a number for " + parser.getCurrentName() + "!");
+    }
+
+    try {
+      return Money.toUnits(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(parser.getText() + " is not a valid amount!", e);
+    }
+  }
+
+  private static void requireAccountId(String field, String accountId) {
+    if (accountId == null || accountId.isEmpty()) {
+      throw new IllegalArgumentException(field + " must not be empty!");
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.AccountsService;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Single transfers as asynchronous servlet requests: the request thread hands the transfer over
+ * and goes back to the container's pool straight away, so requests waiting behind a hot account
+ * are held as queued tasks rather than as blocked container threads. Blocking engines run the
+ * transfers on a bounded worker pool; the sharded engine needs no thread per transfer at all.
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnProperty(name = "accounts.web.async.enabled", havingValue = "true")
+@Slf4j
+public class AsyncTransferController {
+
+  private final AccountsService accountsService;
+
+  private final ThreadPoolExecutor executor;
+
+  private final long timeoutMillis;
+
+  @Autowired
+  public AsyncTransferController(
+    AccountsService accountsService,
+    @Value("${accounts.web.async.workers:64}") int workers,
+    @Value("${accounts.web.async.queue-capacity:10000}") int queueCapacity,
+    @Value("${accounts.web.async.timeout-ms:30000}") long timeoutMillis
+  ) {
+    this.accountsService = accountsService;
+    this.timeoutMillis = timeoutMillis;
+
+    AtomicInteger threads = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(
+      workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+      runnable -> {
+        Thread thread = new Thread(runnable, "transfer-worker-" + threads.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+  }
+
+  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public DeferredResult<ResponseEntity<Object>> transfer(@RequestBody Transfer transfer) {
+    log.info(
+      "Transferring funds from account with id {} to account with id {}",
+      transfer.getFromAccountId(),
+      transfer.getToAccountId()
+    );
+    if (transfer.getExecuteAt() != null) {
+      DeferredResult<ResponseEntity<Object>> rejected = new DeferredResult<>();
+      rejected.setResult(new ResponseEntity<>(TransferResponses.NOT_SCHEDULED, HttpStatus.BAD_REQUEST));
+      return rejected;
+    }
+
+    // the transfer may still be applied after the timeout, so the outcome is not known yet
+    DeferredResult<ResponseEntity<Object>> result = new DeferredResult<>(
+      this.timeoutMillis, new ResponseEntity<>(
+        "Transfer outcome unknown, retry with the same idempotency key to learn it!", HttpStatus.ACCEPTED));
+
+    this.accountsService.tryTransferAsync(transfer, this.executor).whenComplete((transferResult, failure) -> {
+      if (failure == null) {
+        result.setResult(TransferResponses.of(transferResult));
+      } else {
+        result.setResult(failureResponse(failure instanceof CompletionException ? failure.getCause() : failure));
+      }
+    });
+    return result;
+  }
+
+  public int getQueueDepth() {
+    return this.executor.getQueue().size();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    this.executor.shutdown();
+    this.executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+  private static ResponseEntity<Object> failureResponse(Throwable failure) {
+    if (failure instanceof RejectedExecutionException) {
+      return new ResponseEntity<>("Too many transfers in progress!", HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    log.error("Transfer failed", failure);
+    return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+  }
+}
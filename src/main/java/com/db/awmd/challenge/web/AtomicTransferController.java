@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import com.db.awmd.challenge.exception.TransferNoAmountException;
+import com.db.awmd.challenge.exception.TransferSameAccountException;
+import com.db.awmd.challenge.service.AccountsService;
+import javax.validation.Valid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Multi-leg transfers applied as one unit. Only the locking engine supports them, so the endpoint
+ * is not registered with the other engines.
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnProperty(name = "accounts.transfer-engine", havingValue = "locking", matchIfMissing = true)
+@Slf4j
+public class AtomicTransferController {
+
+  private final AccountsService accountsService;
+
+  @Autowired
+  public AtomicTransferController(AccountsService accountsService) {
+    if (!accountsService.supportsAtomicTransfers()) {
+      throw new IllegalStateException("Atomic transfers need an engine that supports them!");
+    }
+    this.accountsService = accountsService;
+  }
+
+  @PostMapping(path = "/transfers/atomic", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transferAtomically(@RequestBody @Valid MultiLegTransfer multiLegTransfer) {
+    log.info("Transferring funds atomically over {} legs", multiLegTransfer.getLegs().size());
+    if (multiLegTransfer.getLegs().stream().anyMatch(leg -> leg.getExecuteAt() != null)) {
+      return new ResponseEntity<>(TransferResponses.NOT_SCHEDULED, HttpStatus.BAD_REQUEST);
+    }
+    if (multiLegTransfer.getLegs().stream().anyMatch(leg -> leg.getIdempotencyKey() != null)) {
+      return new ResponseEntity<>(TransferResponses.NOT_DEDUPLICATED, HttpStatus.BAD_REQUEST);
+    }
+
+    try {
+      this.accountsService.transferAtomically(multiLegTransfer);
+    } catch (AccountNotFoundException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (TransferSameAccountException | NotEnoughFundsException | TransferNoAmountException |
+      BalanceOverflowException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+}
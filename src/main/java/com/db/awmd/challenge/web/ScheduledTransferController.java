@@ -0,0 +1,76 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.exception.TransferNoAmountException;
+import com.db.awmd.challenge.exception.TransferSameAccountException;
+import com.db.awmd.challenge.service.TransferScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Transfers applied at their {@code executeAt} time instead of straight away, see
+ * {@link TransferScheduler}.
+ */
+@RestController
+@RequestMapping("/v1/accounts/transfers/scheduled")
+@Slf4j
+public class ScheduledTransferController {
+
+  private final TransferScheduler transferScheduler;
+
+  @Autowired
+  public ScheduledTransferController(TransferScheduler transferScheduler) {
+    this.transferScheduler = transferScheduler;
+  }
+
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> schedule(@RequestBody Transfer transfer) {
+    log.info(
+      "Scheduling transfer from account with id {} to account with id {} at {}",
+      transfer.getFromAccountId(),
+      transfer.getToAccountId(),
+      transfer.getExecuteAt()
+    );
+    if (transfer.getExecuteAt() == null) {
+      return new ResponseEntity<>("executeAt must not be null!", HttpStatus.BAD_REQUEST);
+    }
+
+    try {
+      return new ResponseEntity<>(this.transferScheduler.schedule(transfer), HttpStatus.CREATED);
+    } catch (AccountNotFoundException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+    } catch (IdempotencyKeyReusedException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    } catch (TransferSameAccountException | TransferNoAmountException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  @GetMapping
+  public ResponseEntity<Object> getScheduledTransfers(@RequestParam String accountId) {
+    log.info("Retrieving scheduled transfers of account with id {}", accountId);
+    return ResponseEntity.ok().body(this.transferScheduler.pendingTransfers(accountId));
+  }
+
+  @DeleteMapping(path = "/{id}")
+  public ResponseEntity<Object> cancel(@PathVariable long id) {
+    log.info("Cancelling scheduled transfer {}", id);
+    if (!this.transferScheduler.cancel(id)) {
+      return new ResponseEntity<>("Scheduled transfer " + id + " not found!", HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+  }
+}
@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.AccountsService;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Single transfers, applied on the request thread. Replaced by {@link AsyncTransferController}
+ * when asynchronous request handling is enabled.
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnProperty(name = "accounts.web.async.enabled", havingValue = "false", matchIfMissing = true)
+@Slf4j
+public class TransferController {
+
+  private final AccountsService accountsService;
+
+  @Autowired
+  public TransferController(AccountsService accountsService) {
+    this.accountsService = accountsService;
+  }
+
+  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transfer(@RequestBody Transfer transfer) {
+    log.info(
+      "Transferring funds from account with id {} to account with id {}",
+      transfer.getFromAccountId(),
+      transfer.getToAccountId()
+    );
+    if (transfer.getExecuteAt() != null) {
+      return new ResponseEntity<>(TransferResponses.NOT_SCHEDULED, HttpStatus.BAD_REQUEST);
+    }
+
+    return TransferResponses.of(this.accountsService.tryTransfer(transfer));
+  }
+}
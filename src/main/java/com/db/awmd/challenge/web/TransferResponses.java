@@ -0,0 +1,36 @@
+package com.db.awmd.challenge.web;
+
+import com.db.awmd.challenge.domain.TransferResult;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * The response to a single transfer, the same whether it was applied on the request thread or
+ * asynchronously.
+ */
+final class TransferResponses {
+
+  // transfers with an execution time go to /transfers/scheduled, every other endpoint applies them now
+  static final String NOT_SCHEDULED = "executeAt is only accepted by scheduled transfers!";
+
+  // only single transfers are deduplicated, so a key on a batch item or leg would not protect a retry
+  static final String NOT_DEDUPLICATED = "idempotencyKey is only accepted by single transfers!";
+
+  private TransferResponses() {
+  }
+
+  static ResponseEntity<Object> of(TransferResult result) {
+    switch (result.getOutcome()) {
+      case OK:
+        return new ResponseEntity<>(HttpStatus.OK);
+      case ACCOUNT_NOT_FOUND:
+        return new ResponseEntity<>(result.getMessage(), HttpStatus.NOT_FOUND);
+      case IDEMPOTENCY_KEY_REUSED:
+        return new ResponseEntity<>(result.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+      case THROTTLED:
+        return new ResponseEntity<>(result.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+      default:
+        return new ResponseEntity<>(result.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.AccountIdCache;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class AccountIdCacheTest {
+
+  private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+  @Test
+  public void intern_returnsTheSameInstanceForTheSameId() {
+    AccountIdCache cache = new AccountIdCache(16, this.metricsRegistry);
+
+    String id = cache.intern("xxId-1xx".toCharArray(), 2, 4);
+    assertThat(id).isEqualTo("Id-1");
+    assertThat(cache.intern("Id-1".toCharArray(), 0, 4)).isSameAs(id);
+    assertThat(cache.intern("Id-1".getBytes(StandardCharsets.UTF_8), 0, 4)).isSameAs(id);
+    assertThat(this.metricsRegistry.counter("accounts.id-cache.misses").sum()).isEqualTo(1);
+  }
+
+  @Test
+  public void intern_replacesCollidingIds() {
+    // a single slot, so every id evicts the previous one
+    AccountIdCache cache = new AccountIdCache(1, this.metricsRegistry);
+
+    for (int i = 0; i < 100; i++) {
+      String id = "Id-" + i;
+      assertThat(cache.intern(id.toCharArray(), 0, id.length())).isEqualTo(id);
+      assertThat(cache.intern("Id-0".getBytes(StandardCharsets.UTF_8), 0, 4)).isEqualTo("Id-0");
+    }
+  }
+
+  @Test
+  public void intern_decodesNonAsciiIdsWithoutCachingThem() {
+    AccountIdCache cache = new AccountIdCache(16, this.metricsRegistry);
+    byte[] utf8 = "Id-ü".getBytes(StandardCharsets.UTF_8);
+
+    assertThat(cache.intern(utf8, 0, utf8.length)).isEqualTo("Id-ü");
+    assertThat(this.metricsRegistry.counter("accounts.id-cache.misses").sum()).isEqualTo(0);
+  }
+
+  @Test
+  public void intern_buildsNewStringsWhenDisabled() {
+    AccountIdCache cache = new AccountIdCache(0, this.metricsRegistry);
+
+    String id = cache.intern("Id-1".toCharArray(), 0, 4);
+    assertThat(id).isEqualTo("Id-1");
+    assertThat(cache.intern("Id-1".toCharArray(), 0, 4)).isNotSameAs(id);
+  }
+}
@@ -1,15 +1,21 @@
 package com.db.awmd.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.Transfer;
 import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,6 +50,7 @@ public class AccountsControllerTest {
 
     // Reset the existing accounts before each test.
     accountsService.getAccountsRepository().clearAccounts();
+    accountsService.getTransferHistory().clear();
 
     account1 = new Account("Id-1", new BigDecimal(500));
     account2 = new Account("Id-2", new BigDecimal(0));
@@ -111,6 +118,80 @@ public class AccountsControllerTest {
         content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
   }
 
+  @Test
+  public void importAccountsAsNdjson() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts").contentType("application/x-ndjson")
+      .content("{\"accountId\":\"Id-10\",\"balance\":10}\n"
+        + "{\"accountId\":\"Id-1\",\"balance\":20}\n"
+        + "{\"accountId\":\"Id-11\",\"balance\":-5}\n"
+        + "{\"accountId\":\"Id-12\",\"balance\":12.5}\n"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(2))
+      .andExpect(jsonPath("$.rejected").value(2))
+      .andExpect(jsonPath("$.errors[0]").value("Line 3: balanceUnits Initial balance must be positive."))
+      .andExpect(jsonPath("$.errors[1]").value("Line 2: Account id Id-1 already exists!"));
+
+    assertThat(accountsService.getAccount("Id-12").getBalance()).isEqualByComparingTo("12.5");
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("500");
+  }
+
+  @Test
+  public void importAccountsAsCsv() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts").contentType("text/csv")
+      .content("accountId,balance\nId-20,1.25\n\"Id,21\",7\nId-22,abc\n"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.imported").value(2))
+      .andExpect(jsonPath("$.rejected").value(1))
+      .andExpect(jsonPath("$.errors[0]").value("Line 4: Balance abc is not a number"));
+
+    assertThat(accountsService.getAccount("Id,21").getBalance()).isEqualByComparingTo("7");
+  }
+
+  @Test
+  public void exportAccounts() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts").accept("application/x-ndjson"))
+      .andExpect(status().isOk())
+      .andExpect(content().string(allOf(
+        containsString("{\"accountId\":\"Id-1\",\"balance\":500}\n"),
+        containsString("{\"accountId\":\"Id-2\",\"balance\":0}\n"))));
+
+    this.mockMvc.perform(get("/v1/accounts").accept("text/csv"))
+      .andExpect(status().isOk())
+      .andExpect(content().string(allOf(
+        startsWith("accountId,balance\n"),
+        containsString("Id-1,500\n"),
+        containsString("Id-2,0\n"))));
+  }
+
+  @Test
+  public void queryAccounts() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/query").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountIds\":[\"Id-2\",\"Id-404\",\"Id-1\"]}"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts[0].accountId").value("Id-2"))
+      .andExpect(jsonPath("$.accounts[1].accountId").value("Id-1"))
+      .andExpect(jsonPath("$.accounts[1].balance").value(500))
+      .andExpect(jsonPath("$.notFound[0]").value("Id-404"))
+      .andExpect(jsonPath("$.totalBalance").value(500));
+  }
+
+  @Test
+  public void queryAccountsNoIds() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/query").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountIds\":[]}")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void getAccountsTotal() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"accountId\":\"Id-3\",\"balance\":0.25}")).andExpect(status().isCreated());
+
+    this.mockMvc.perform(get("/v1/accounts/total"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.accounts").value(3))
+      .andExpect(jsonPath("$.totalBalance").value(500.25));
+  }
+
   @Test
   public void transfer() throws Exception {
     Transfer transfer = new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100));
@@ -120,6 +201,51 @@ public class AccountsControllerTest {
       .andExpect(status().isOk());
   }
 
+  @Test
+  public void transferWithIdempotencyKey() throws Exception {
+    String body = "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100,\"idempotencyKey\":\"key-1\"}";
+    for (int i = 0; i < 2; i++) {
+      this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON).content(body))
+        .andExpect(status().isOk());
+    }
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("400");
+
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":50,\"idempotencyKey\":\"key-1\"}"))
+      .andExpect(status().isUnprocessableEntity());
+  }
+
+  @Test
+  public void getTransfers() throws Exception {
+    for (int amount = 1; amount <= 3; amount++) {
+      this.accountsService.transfer(new Transfer("Id-1", "Id-2", new BigDecimal(amount)));
+    }
+
+    this.mockMvc.perform(get("/v1/accounts/Id-2/transfers?limit=2"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers.length()").value(2))
+      .andExpect(jsonPath("$.transfers[0].sequence").value(2))
+      .andExpect(jsonPath("$.transfers[0].counterpartyAccountId").value("Id-1"))
+      .andExpect(jsonPath("$.transfers[0].amount").value(3))
+      .andExpect(jsonPath("$.nextCursor").value(1));
+
+    this.mockMvc.perform(get("/v1/accounts/Id-2/transfers?limit=2&cursor=1"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.transfers.length()").value(1))
+      .andExpect(jsonPath("$.transfers[0].amount").value(1))
+      .andExpect(jsonPath("$.nextCursor").doesNotExist());
+  }
+
+  @Test
+  public void getTransfersInvalidLimit() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/Id-1/transfers?limit=0")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void getTransfersAccountNotFound() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/Id-404/transfers")).andExpect(status().isNotFound());
+  }
+
   @Test
   public void transferNegativeAmount() throws Exception {
     Transfer transfer = new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(-100));
@@ -155,4 +281,221 @@ public class AccountsControllerTest {
         .content("{\"fromAccountId\":\"" + transfer.getFromAccountId() + "\",\"toAccountId\":\"" + transfer.getToAccountId() + "\",\"amount\":" + transfer.getAmount() + "}"))
       .andExpect(status().isBadRequest());
   }
+
+  @Test
+  public void transferTooManyDecimals() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"fromAccountId\":\"" + account1.getAccountId() + "\",\"toAccountId\":\"" + account2.getAccountId() + "\",\"amount\":0.001}"))
+      .andExpect(status().isBadRequest());
+
+    assertThat(accountsService.getAccount(account1.getAccountId()).getBalance()).isEqualTo(new BigDecimal(500));
+  }
+
+  @Test
+  public void transferFractionalAmount() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"fromAccountId\":\"" + account1.getAccountId() + "\",\"toAccountId\":\"" + account2.getAccountId() + "\",\"amount\":0.25}"))
+      .andExpect(status().isOk());
+
+    this.mockMvc.perform(get("/v1/accounts/" + account2.getAccountId()))
+      .andExpect(status().isOk())
+      .andExpect(content().string("{\"accountId\":\"" + account2.getAccountId() + "\",\"balance\":0.25}"));
+  }
+
+  @Test
+  public void transferBatch() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("["
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100},"
+          + "{\"fromAccountId\":\"Id-2\",\"toAccountId\":\"Id-1\",\"amount\":1000},"
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-404\",\"amount\":1},"
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":0.001},"
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\"},"
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-1\",\"amount\":1},"
+          + "{\"fromAccountId\":\"Id-2\",\"toAccountId\":\"Id-1\",\"amount\":50}"
+          + "]"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(7))
+      .andExpect(jsonPath("$[0].outcome").value("OK"))
+      .andExpect(jsonPath("$[1].outcome").value("NOT_ENOUGH_FUNDS"))
+      .andExpect(jsonPath("$[2].outcome").value("ACCOUNT_NOT_FOUND"))
+      .andExpect(jsonPath("$[3].outcome").value("INVALID"))
+      .andExpect(jsonPath("$[4].outcome").value("INVALID"))
+      .andExpect(jsonPath("$[5].outcome").value("SAME_ACCOUNT"))
+      .andExpect(jsonPath("$[6].index").value(6))
+      .andExpect(jsonPath("$[6].outcome").value("OK"));
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(450));
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(50));
+  }
+
+  @Test
+  public void transferBatchNotAnArray() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100}"))
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void transferBatchTruncatedAfterFullChunk() throws Exception {
+    StringBuilder content = new StringBuilder("[");
+    for (int i = 0; i < 1000; i++) {
+      content.append("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":0.01},");
+    }
+    content.append("{\"fromAccountId\":\"Id-1\",\"toAcc");
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(content.toString()))
+      .andExpect(status().isBadRequest());
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(500));
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(0));
+  }
+
+  @Test
+  public void transferBatchRetriedWithIdempotencyKeys() throws Exception {
+    String body = "["
+      + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100,\"idempotencyKey\":\"batch-1\"},"
+      + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":10}"
+      + "]";
+
+    for (int attempt = 0; attempt < 2; attempt++) {
+      this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content(body))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].outcome").value("INVALID"))
+        .andExpect(jsonPath("$[0].message").value("idempotencyKey is only accepted by single transfers!"))
+        .andExpect(jsonPath("$[1].outcome").value("OK"));
+    }
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(480));
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(20));
+  }
+
+  @Test
+  public void transferAtomicallyWithIdempotencyKey() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/atomic")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"legs\":["
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100,\"idempotencyKey\":\"atomic-1\"}"
+          + "]}"))
+      .andExpect(status().isBadRequest());
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(500));
+  }
+
+  @Test
+  public void transferAtomically() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/atomic")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"legs\":["
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100},"
+          + "{\"fromAccountId\":\"Id-2\",\"toAccountId\":\"Id-1\",\"amount\":30}"
+          + "]}"))
+      .andExpect(status().isOk());
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(430));
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal(70));
+  }
+
+  @Test
+  public void transferAtomicallyAccountNotFound() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/atomic")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"legs\":["
+          + "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100},"
+          + "{\"fromAccountId\":\"Id-2\",\"toAccountId\":\"Id-404\",\"amount\":30}"
+          + "]}"))
+      .andExpect(status().isNotFound());
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(500));
+  }
+
+  @Test
+  public void transferAtomicallyNoLegs() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/atomic")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"legs\":[]}"))
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void scheduleAndCancelTransfer() throws Exception {
+    long executeAt = System.currentTimeMillis() + 3_600_000;
+    String response = this.mockMvc.perform(post("/v1/accounts/transfers/scheduled")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100,\"executeAt\":" + executeAt + "}"))
+      .andExpect(status().isCreated())
+      .andExpect(jsonPath("$.transfer.executeAt").value(executeAt))
+      .andReturn().getResponse().getContentAsString();
+    long id = new ObjectMapper().readTree(response).get("id").asLong();
+
+    this.mockMvc.perform(get("/v1/accounts/transfers/scheduled?accountId=Id-2"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$[0].id").value(id))
+      .andExpect(jsonPath("$[0].transfer.amount").value(100));
+
+    this.mockMvc.perform(delete("/v1/accounts/transfers/scheduled/" + id)).andExpect(status().isNoContent());
+    this.mockMvc.perform(delete("/v1/accounts/transfers/scheduled/" + id)).andExpect(status().isNotFound());
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(500));
+  }
+
+  @Test
+  public void scheduleTransferNoExecutionTime() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/scheduled")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100}"))
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void scheduleTransferTwiceWithIdempotencyKey() throws Exception {
+    String content = "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100,"
+      + "\"idempotencyKey\":\"standing-order-1\",\"executeAt\":" + (System.currentTimeMillis() + 3_600_000) + "}";
+    String first = this.mockMvc.perform(post("/v1/accounts/transfers/scheduled")
+        .contentType(MediaType.APPLICATION_JSON).content(content))
+      .andExpect(status().isCreated())
+      .andReturn().getResponse().getContentAsString();
+    long id = new ObjectMapper().readTree(first).get("id").asLong();
+
+    this.mockMvc.perform(post("/v1/accounts/transfers/scheduled")
+        .contentType(MediaType.APPLICATION_JSON).content(content))
+      .andExpect(status().isCreated())
+      .andExpect(jsonPath("$.id").value(id));
+    this.mockMvc.perform(post("/v1/accounts/transfers/scheduled")
+        .contentType(MediaType.APPLICATION_JSON).content(content.replace("100", "200")))
+      .andExpect(status().isUnprocessableEntity());
+
+    this.mockMvc.perform(get("/v1/accounts/transfers/scheduled?accountId=Id-1"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(1));    this.mockMvc.perform(delete("/v1/accounts/transfers/scheduled/" + id)).andExpect(status().isNoContent());
+  }
+
+  @Test
+  public void transferWithExecutionTime() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100,\"executeAt\":0}"))
+      .andExpect(status().isBadRequest());
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal(500));
+  }
+
+  @Test
+  public void getMetrics() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfer").contentType(MediaType.APPLICATION_JSON)
+      .content("{\"fromAccountId\":\"Id-2\",\"toAccountId\":\"Id-1\",\"amount\":1}"))
+      .andExpect(status().isBadRequest());
+
+    this.mockMvc.perform(get("/v1/metrics"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.counters['transfers.outcome.not-enough-funds']").isNumber())
+      .andExpect(jsonPath("$.histograms['transfers.latency.nanos'].p99").isNumber())
+      .andExpect(jsonPath("$.histograms['accounts.lock-wait.nanos'].count").isNumber());
+  }
 }
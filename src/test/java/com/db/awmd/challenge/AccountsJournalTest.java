@@ -0,0 +1,316 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsJournal;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.JournalingAccountsRepository;
+import com.db.awmd.challenge.repository.JournalSyncPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AccountsJournalTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void open_replaysCreatedAndUpdatedAccounts() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, new Balances());
+      journal.appendCreate("Id-1", 50000);
+      journal.appendCreate("Id-2", 0);
+      journal.appendUpdate(Arrays.asList(
+        new Account("Id-1", new BigDecimal(400)), new Account("Id-2", new BigDecimal(100))));
+      journal.awaitDurable();
+    }
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      assertThat(journal.open(0, balances)).isEqualTo(3);
+    }
+    assertThat(balances).containsEntry("Id-1", 40000L).containsEntry("Id-2", 10000L);
+  }
+
+  @Test
+  public void open_keepsBalanceOfAnUpdateJournaledBeforeTheCreate() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, new Balances());
+      journal.appendUpdate(Arrays.asList(new Account("Id-1", new BigDecimal(7))));
+      journal.appendCreate("Id-1", 0);
+    }
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, balances);
+    }
+    assertThat(balances).containsEntry("Id-1", 700L);
+  }
+
+  @Test
+  public void open_stopsAtTornRecordAndAppendsAfterTheLastValidOne() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    long validEnd;
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, new Balances());
+      journal.appendCreate("Id-1", 100);
+      validEnd = journal.position();
+      journal.appendCreate("Id-2", 200);
+    }
+
+    // corrupt the last byte of the second record, as if the process died while writing it
+    File segment = directory.resolve(String.format("journal-%016d.log", 0)).toFile();
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.seek(journalEnd(validEnd) - 1);
+      file.write(0x7f);
+    }
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      assertThat(journal.open(0, balances)).isEqualTo(1);
+      assertThat(journal.position()).isEqualTo(validEnd);
+      journal.appendCreate("Id-3", 300);
+    }
+    assertThat(balances).containsOnlyKeys("Id-1");
+
+    Balances reopened = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, reopened);
+    }
+    assertThat(reopened).containsOnlyKeys("Id-1", "Id-3");
+  }
+
+  @Test
+  public void append_rollsOverToNewSegments() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, new Balances());
+      for (int i = 0; i < 500; i++) {
+        journal.appendCreate("Id-" + i, i);
+      }
+    }
+    assertThat(directory.toFile().list().length).isGreaterThan(1);
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      assertThat(journal.open(0, balances)).isEqualTo(500);
+    }
+    assertThat(balances).hasSize(500).containsEntry("Id-499", 499L);
+  }
+
+  @Test
+  public void open_fromTheEndOfAFullSegmentAppendsToTheNextOne() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    long segmentEnd;
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, new Balances());
+      // records of 24 bytes fill the 4080 bytes after the segment header exactly
+      for (int i = 0; i < 170; i++) {
+        journal.appendCreate(String.format("A%04d", i), i);
+      }
+      segmentEnd = journal.position();
+    }
+    assertThat(segmentEnd).isEqualTo(SEGMENT_SIZE);
+
+    try (AccountsJournal journal = newJournal(directory)) {
+      assertThat(journal.open(segmentEnd, new Balances())).isEqualTo(0);
+      assertThat(journal.position()).isEqualTo(segmentEnd + 16);
+      journal.appendCreate("B0000", 170);
+    }
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      assertThat(journal.open(0, balances)).isEqualTo(171);
+    }
+    assertThat(balances).hasSize(171).containsEntry("A0000", 0L).containsEntry("B0000", 170L);
+  }
+
+  @Test
+  public void awaitDurable_releasesConcurrentWriters() throws Exception {
+    Path directory = folder.getRoot().toPath();
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, new Balances());
+
+      CountDownLatch latch = new CountDownLatch(200);
+      for (int i = 0; i < 200; i++) {
+        String accountId = "Id-" + i;
+        service.submit(() -> {
+          try {
+            journal.appendCreate(accountId, 1);
+            journal.awaitDurable();
+          } finally {
+            latch.countDown();
+          }
+        });
+      }
+      latch.await();
+    } finally {
+      service.shutdown();
+    }
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = newJournal(directory)) {
+      journal.open(0, balances);
+    }
+    assertThat(balances).hasSize(200);
+  }
+
+  @Test
+  public void journalingRepository_restoresAccountsAfterRestart() throws IOException {
+    JournalingAccountsRepository repository = newRepository();
+    repository.createAccount(new Account("Id-1", new BigDecimal(500)));
+    repository.createAccount(new Account("Id-2", new BigDecimal(0)));
+    Account account1 = repository.getAccount("Id-1").get();
+    Account account2 = repository.getAccount("Id-2").get();
+    account1.setBalance(new BigDecimal(400));
+    account2.setBalance(new BigDecimal(100));
+    repository.updateAccounts(Arrays.asList(account1, account2));
+    repository.awaitDurable();
+    repository.close();
+
+    JournalingAccountsRepository restarted = newRepository();
+    assertThat(restarted.getAccount("Id-1").get().getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(restarted.getAccount("Id-2").get().getBalance()).isEqualTo(new BigDecimal(100));
+    restarted.close();
+  }
+
+  @Test
+  public void journalingRepository_replaysOnlyTheJournalAfterTheLatestSnapshot() throws IOException {
+    JournalingAccountsRepository repository = newRepository();
+    for (int i = 0; i < 100; i++) {
+      repository.createAccount(new Account("Id-" + i, new BigDecimal(i)));
+    }
+    repository.writeSnapshot(() -> { });
+    for (int i = 0; i < 150; i++) {
+      repository.createAccount(new Account("Id-" + (100 + i), new BigDecimal(1)));
+    }
+    repository.writeSnapshot(() -> { });
+
+    Account account1 = repository.getAccount("Id-1").get();
+    account1.setBalance(new BigDecimal(11));
+    repository.updateAccount(account1);
+    repository.close();
+
+    JournalingAccountsRepository restarted = newRepository();
+    assertThat(restarted.getSnapshotAccountsLoaded()).isEqualTo(250);
+    assertThat(restarted.getJournalRecordsReplayed()).isEqualTo(1);
+    assertThat(restarted.getAccount("Id-1").get().getBalance()).isEqualTo(new BigDecimal(11));
+    assertThat(restarted.getAccount("Id-99").get().getBalance()).isEqualTo(new BigDecimal(99));
+    assertThat(restarted.getAccount("Id-249").get().getBalance()).isEqualTo(new BigDecimal(1));
+    restarted.close();
+  }
+
+  @Test
+  public void journalingRepository_fallsBackToAnOlderSnapshotWhenTheLatestIsDamaged() throws IOException {
+    JournalingAccountsRepository repository = newRepository();
+    repository.createAccount(new Account("Id-1", new BigDecimal(500)));
+    repository.writeSnapshot(() -> { });
+    Account account1 = repository.getAccount("Id-1").get();
+    account1.setBalance(new BigDecimal(400));
+    repository.updateAccount(account1);
+    repository.writeSnapshot(() -> { });
+    repository.close();
+
+    File[] snapshots = folder.getRoot().listFiles((dir, name) -> name.endsWith(".snap"));
+    assertThat(snapshots).hasSize(2);
+    Arrays.sort(snapshots);
+    try (RandomAccessFile file = new RandomAccessFile(snapshots[1], "rw")) {
+      file.seek(2);
+      file.write(0x7f);
+    }
+
+    JournalingAccountsRepository restarted = newRepository();
+    assertThat(restarted.getJournalRecordsReplayed()).isEqualTo(1);
+    assertThat(restarted.getAccount("Id-1").get().getBalance()).isEqualTo(new BigDecimal(400));
+    restarted.close();
+  }
+
+  @Test
+  public void open_replaysUpdatesOfMoreThan65535Accounts() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < 70000; i++) {
+      accounts.add(new Account("Id-" + i, new BigDecimal(i)));
+    }
+    try (AccountsJournal journal = new AccountsJournal(directory, 4 << 20, JournalSyncPolicy.EVERY_OP, 10)) {
+      journal.open(0, new Balances());
+      journal.appendUpdate(accounts);
+    }
+
+    Balances balances = new Balances();
+    try (AccountsJournal journal = new AccountsJournal(directory, 4 << 20, JournalSyncPolicy.EVERY_OP, 10)) {
+      journal.open(0, balances);
+    }
+    assertThat(balances).hasSize(70000).containsEntry("Id-69999", 6999900L);
+  }
+
+  @Test
+  public void journalingRepository_refusesIdsTooLongToJournal() throws IOException {
+    JournalingAccountsRepository repository = newRepository();
+    char[] id = new char[AccountsJournal.MAX_ACCOUNT_ID_BYTES + 1];
+    Arrays.fill(id, 'x');
+    try {
+      repository.createAccount(new Account(new String(id), new BigDecimal(1)));
+      fail("Should have refused the account id");
+    } catch (IllegalArgumentException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account id is longer than 65535 bytes!");
+    }
+    assertThat(repository.getAccount(new String(id)).isPresent()).isFalse();
+    repository.close();
+  }
+
+  private JournalingAccountsRepository newRepository() throws IOException {
+    // small segments and chunks, so that truncation and parallel loading kick in
+    JournalingAccountsRepository repository = new JournalingAccountsRepository(
+      new AccountsRepositoryInMemory(), folder.getRoot().getPath(), SEGMENT_SIZE, JournalSyncPolicy.EVERY_OP, 10, 16, 2, "locking");
+    repository.open();
+    return repository;
+  }
+
+  private static AccountsJournal newJournal(Path directory) {
+    return new AccountsJournal(directory, SEGMENT_SIZE, JournalSyncPolicy.EVERY_OP, 10);
+  }
+
+  // "Id-2" record: 8 byte header, type, id length, 4 id bytes and the balance
+  private static long journalEnd(long validEnd) {
+    return validEnd + 8 + 1 + 2 + 4 + 8;
+  }
+
+  private static class Balances extends HashMap<String, Long> implements AccountsJournal.ReplayHandler {
+
+    @Override
+    public void created(String accountId, long balanceUnits) {
+      putIfAbsent(accountId, balanceUnits);
+    }
+
+    @Override
+    public void updated(String accountId, long balanceUnits) {
+      put(accountId, balanceUnits);
+    }
+
+    @Override
+    public void cleared() {
+      clear();
+    }
+  }
+}
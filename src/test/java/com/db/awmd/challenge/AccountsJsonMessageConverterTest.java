@@ -0,0 +1,90 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.AccountIdCache;
+import com.db.awmd.challenge.web.AccountsJsonMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+public class AccountsJsonMessageConverterTest {
+
+  private final AccountsJsonMessageConverter converter =
+    new AccountsJsonMessageConverter(new ObjectMapper(), new AccountIdCache(16, new MetricsRegistry()));
+
+  @Test
+  public void read_transfer() throws IOException {
+    Transfer transfer = (Transfer) this.read(Transfer.class,
+      "{\"fromAccountId\":\"Id-1\",\"ignored\":{\"a\":[1,2]},\"toAccountId\":\"Id-2\","
+        + "\"amount\":12.5,\"idempotencyKey\":\"key-1\"}");
+
+    assertThat(transfer.getFromAccountId()).isEqualTo("Id-1");
+    assertThat(transfer.getToAccountId()).isEqualTo("Id-2");
+    assertThat(transfer.getAmountUnits()).isEqualTo(1250);
+    assertThat(transfer.getIdempotencyKey()).isEqualTo("key-1");
+  }
+
+  @Test
+  public void read_amountsAsTheDataBindingWould() throws IOException {
+    String[] amounts = {"0", "7", "0.01", "-3.5", "\"42.10\"", "1.500", "1e2", "92233720368547758.07"};
+    for (String amount : amounts) {
+      Transfer transfer = (Transfer) this.read(Transfer.class,
+        "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":" + amount + "}");
+      Transfer expected = new ObjectMapper().readValue(
+        "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":" + amount + "}", Transfer.class);
+
+      assertThat(transfer.getAmountUnits()).as(amount).isEqualTo(expected.getAmountUnits());
+    }
+  }
+
+  @Test
+  public void read_rejectsInvalidBodies() throws IOException {
+    String[] bodies = {
+      "{\"toAccountId\":\"Id-2\",\"amount\":1}",
+      "{\"fromAccountId\":\"\",\"toAccountId\":\"Id-2\",\"amount\":1}",
+      "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\"}",
+      "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":1.234}",
+      "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":\"ten\"}",
+      "{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":1,\"idempotencyKey\":\"\"}",
+      "[]",
+      ""
+    };
+    for (String body : bodies) {
+      try {
+        this.read(Transfer.class, body);
+        fail("Should have rejected " + body);
+      } catch (HttpMessageNotReadableException expected) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void writeAndReadAccount() throws IOException {
+    Account account = (Account) this.read(Account.class, "{\"accountId\":\"Id-\\\"1\\\"\",\"balance\":1000.50}");
+    assertThat(account.getBalanceUnits()).isEqualTo(100050);
+
+    MockHttpOutputMessage output = new MockHttpOutputMessage();
+    this.converter.write(account, MediaType.APPLICATION_JSON, output);
+
+    assertThat(output.getBodyAsString(StandardCharsets.UTF_8))
+      .isEqualTo("{\"accountId\":\"Id-\\\"1\\\"\",\"balance\":1000.5}");
+    assertThat(output.getHeaders().getContentType().getCharset()).isEqualTo(StandardCharsets.UTF_8);
+  }
+
+  private Object read(Class<?> clazz, String body) throws IOException {
+    MockHttpInputMessage input = new MockHttpInputMessage(body.getBytes(StandardCharsets.UTF_8));
+    input.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+    return this.converter.read(clazz, input);
+  }
+}
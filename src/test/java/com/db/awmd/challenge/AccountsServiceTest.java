@@ -4,14 +4,23 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
 import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatchItemResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
 import com.db.awmd.challenge.exception.*;
 import com.db.awmd.challenge.service.AccountsService;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.db.awmd.challenge.service.NotificationService;
 import org.junit.After;
@@ -21,6 +30,7 @@ import org.junit.runner.RunWith;
 
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -126,14 +136,126 @@ public class AccountsServiceTest {
     );
   }
 
+  @Test(expected = BalanceOverflowException.class)
+  public void transfer_failsOnBalanceOverflow() {
+    Account richAccount = new Account("Id-rich", BigDecimal.valueOf(Long.MAX_VALUE, Money.SCALE));
+    this.accountsService.createAccount(richAccount);
+
+    try {
+      this.accountsService.transfer(
+        new Transfer(account1.getAccountId(), richAccount.getAccountId(), new BigDecimal(1))
+      );
+    } finally {
+      assertThat(account1.getBalance()).isEqualTo(new BigDecimal(500));
+    }
+  }
+
+  @Test
+  public void tryTransfer_returnsTheAccounts() {
+    TransferResult result = this.accountsService.tryTransfer(
+      new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100))
+    );
+
+    assertThat(result.isOk()).isTrue();
+    assertThat(result.getMessage()).isNull();
+    assertThat(result.getFromAccount().getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(result.getToAccount().getBalance()).isEqualTo(new BigDecimal(100));
+  }
+
+  @Test
+  public void tryTransfer_reportsRefusalsWithoutThrowing() {
+    TransferResult notEnoughFunds = this.accountsService.tryTransfer(
+      new Transfer(account2.getAccountId(), account1.getAccountId(), new BigDecimal(6))
+    );
+    assertThat(notEnoughFunds.getOutcome()).isEqualTo(TransferOutcome.NOT_ENOUGH_FUNDS);
+    assertThat(notEnoughFunds.getMessage()).isEqualTo("Account Id-2 does not have enough money!");
+
+    TransferResult notFound = this.accountsService.tryTransfer(
+      new Transfer(account1.getAccountId(), "not-existing", new BigDecimal(6))
+    );
+    assertThat(notFound.getOutcome()).isEqualTo(TransferOutcome.ACCOUNT_NOT_FOUND);
+    assertThat(notFound.getMessage()).isEqualTo("Account not-existing not found!");
+
+    TransferResult sameAccount = this.accountsService.tryTransfer(
+      new Transfer(account1.getAccountId(), account1.getAccountId(), new BigDecimal(6))
+    );
+    assertThat(sameAccount.getOutcome()).isEqualTo(TransferOutcome.SAME_ACCOUNT);
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(500));
+    verifyZeroInteractions(notificationService);
+  }
+
+  @Test
+  public void transferBatch_appliesTransfersOfSharedAccountsInOrder() {
+    Account account3 = new Account("Id-3", new BigDecimal(0));
+    this.accountsService.createAccount(account3);
+
+    List<TransferBatchItemResult> results = this.accountsService.transferBatch(Arrays.asList(
+      new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100)),
+      new Transfer(account2.getAccountId(), account3.getAccountId(), new BigDecimal(100)),
+      new Transfer(account2.getAccountId(), account3.getAccountId(), new BigDecimal(1)),
+      new Transfer(account1.getAccountId(), account1.getAccountId(), new BigDecimal(1))
+    ));
+
+    assertThat(results).extracting("outcome").containsExactly(
+      TransferOutcome.OK, TransferOutcome.OK, TransferOutcome.NOT_ENOUGH_FUNDS, TransferOutcome.SAME_ACCOUNT);
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(0));
+    assertThat(account3.getBalance()).isEqualTo(new BigDecimal(100));
+    verify(notificationService, times(1))
+      .notifyAboutTransfer(account3, "Transfer from account " + account2.getAccountId() + " for amount 100");
+  }
+
   @Test
-  public void transfer_concorrentTransfer() throws InterruptedException {
+  public void transferAtomically() {
+    Account account3 = new Account("Id-3", new BigDecimal(0));
+    this.accountsService.createAccount(account3);
+
+    // account2 is empty, so the second leg only works because the first one funds it
+    this.accountsService.transferAtomically(new MultiLegTransfer(Arrays.asList(
+      new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100)),
+      new Transfer(account2.getAccountId(), account3.getAccountId(), new BigDecimal(60))
+    )));
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(40));
+    assertThat(account3.getBalance()).isEqualTo(new BigDecimal(60));
+    verify(notificationService, times(1))
+      .notifyAboutTransfer(account3, "Transfer from account " + account2.getAccountId() + " for amount 60");
+  }
+
+  @Test
+  public void transferAtomically_failsWithoutApplyingAnyLeg() {
+    Account account3 = new Account("Id-3", new BigDecimal(0));
+    this.accountsService.createAccount(account3);
+
+    try {
+      this.accountsService.transferAtomically(new MultiLegTransfer(Arrays.asList(
+        new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100)),
+        new Transfer(account2.getAccountId(), account3.getAccountId(), new BigDecimal(101))
+      )));
+      fail("Should have failed when a leg overdraws its account");
+    } catch (NotEnoughFundsException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account " + account2.getAccountId() + " does not have enough money!");
+    }
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(500));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(0));
+    assertThat(account3.getBalance()).isEqualTo(new BigDecimal(0));
+    verifyZeroInteractions(notificationService);
+  }
+
+  @Test
+  public void transfer_concorrentTransfer() throws Exception {
+    // enough for every debit of account2, whichever order the threads run in
+    this.accountsService.transfer(new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(25)));
+
     // transfer 25 times 5 from account1 to account2
     // transfer 25 times 1 from account2 to account1
     makeTransferThreads(50);
 
-    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
-    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(100));
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(375));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(125));
 
     verify(notificationService, times(25))
       .notifyAboutTransfer(account1, "Transfer to account " + account2.getAccountId() + " for amount 5");
@@ -145,28 +267,168 @@ public class AccountsServiceTest {
       .notifyAboutTransfer(account1, "Transfer from account " + account2.getAccountId() + " for amount 1");
   }
 
-  private void makeTransferThreads(int numberOfThreads) throws InterruptedException {
-    ExecutorService service = Executors.newFixedThreadPool(10);
-    CountDownLatch latch = new CountDownLatch(numberOfThreads);
+  @Test
+  public void transfer_concurrentTransfersKeepTotalBalance() throws InterruptedException {
+    int numberOfAccounts = 20;
+    for (int i = 0; i < numberOfAccounts; i++) {
+      this.accountsService.createAccount(new Account("Id-concurrent-" + i, new BigDecimal(100)));
+    }
 
-    for (int i = 0; i < numberOfThreads; i++) {
-      int finalI = i;
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    CountDownLatch latch = new CountDownLatch(2000);
+    for (int i = 0; i < 2000; i++) {
+      int from = i % numberOfAccounts;
+      int to = (i * 7 + 3) % numberOfAccounts;
       service.submit(() -> {
-        if (finalI % 2 == 0) {
+        try {
           accountsService.transfer(
-            new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(5))
+            new Transfer("Id-concurrent-" + from, "Id-concurrent-" + to, new BigDecimal(3))
           );
-        } else {
+        } catch (NotEnoughFundsException | TransferSameAccountException ignored) {
+          // expected for some of the generated transfers
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    service.shutdown();
+
+    BigDecimal total = BigDecimal.ZERO;
+    for (int i = 0; i < numberOfAccounts; i++) {
+      BigDecimal balance = this.accountsService.getAccount("Id-concurrent-" + i).getBalance();
+      assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+      total = total.add(balance);
+    }
+    assertThat(total).isEqualByComparingTo(new BigDecimal(100 * numberOfAccounts));
+  }
+
+  @Test
+  public void getAccountsTotal_isConstantWhileTransfersRun() throws InterruptedException {
+    int numberOfAccounts = 20;
+    for (int i = 0; i < numberOfAccounts; i++) {
+      this.accountsService.createAccount(new Account("Id-snapshot-" + i, new BigDecimal(100)));
+    }
+    BigDecimal expected = this.accountsService.getAccountsTotal().getTotalBalance();
+
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    CountDownLatch latch = new CountDownLatch(4000);
+    for (int i = 0; i < 4000; i++) {
+      int from = i % numberOfAccounts;
+      int to = (i * 7 + 3) % numberOfAccounts;
+      service.submit(() -> {
+        try {
           accountsService.transfer(
-            new Transfer(account2.getAccountId(), account1.getAccountId(), new BigDecimal(1))
+            new Transfer("Id-snapshot-" + from, "Id-snapshot-" + to, new BigDecimal(3))
           );
+        } catch (NotEnoughFundsException | TransferSameAccountException ignored) {
+          // expected for some of the generated transfers
+        } finally {
+          latch.countDown();
         }
-
-        latch.countDown();
       });
     }
+    while (latch.getCount() > 0) {
+      assertThat(this.accountsService.getAccountsTotal().getTotalBalance()).isEqualByComparingTo(expected);
+    }
+    service.shutdown();
+  }
+
+  private void makeTransferThreads(int numberOfThreads) throws Exception {
+    ExecutorService service = Executors.newFixedThreadPool(10);
+    CountDownLatch latch = new CountDownLatch(numberOfThreads);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int i = 0; i < numberOfThreads; i++) {
+      int finalI = i;
+      futures.add(service.submit(() -> {
+        try {
+          if (finalI % 2 == 0) {
+            accountsService.transfer(
+              new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(5))
+            );
+          } else {
+            accountsService.transfer(
+              new Transfer(account2.getAccountId(), account1.getAccountId(), new BigDecimal(1))
+            );
+          }
+        } finally {
+          latch.countDown();
+        }
+      }));
+    }
 
     latch.await();
+    service.shutdown();
+    for (Future<?> future : futures) {
+      // rethrows whatever a transfer failed with
+      future.get();
+    }
+  }
+
+  @Test
+  public void transfer_retryWithSameIdempotencyKeyIsAppliedOnce() {
+    for (int i = 0; i < 3; i++) {
+      Transfer transfer = new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100));
+      transfer.setIdempotencyKey("retry-key");
+      this.accountsService.transfer(transfer);
+    }
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(100));
+  }
+
+  @Test
+  public void transfer_retryReplaysTheOriginalFailure() {
+    Transfer transfer = new Transfer(account2.getAccountId(), account1.getAccountId(), new BigDecimal(100));
+    transfer.setIdempotencyKey("failing-key");
+    try {
+      this.accountsService.transfer(transfer);
+      fail("Should have failed on not enough funds");
+    } catch (NotEnoughFundsException expected) {
+      // the retry below must get the same answer even though the funds are there now
+    }
+
+    account2.setBalance(new BigDecimal(1000));
+    try {
+      this.accountsService.transfer(transfer);
+      fail("Should have replayed the failure");
+    } catch (NotEnoughFundsException expected) {
+      assertThat(account2.getBalance()).isEqualTo(new BigDecimal(1000));
+    }
   }
 
+  @Test(expected = IdempotencyKeyReusedException.class)
+  public void transfer_failsOnIdempotencyKeyReusedForAnotherTransfer() {
+    Transfer transfer = new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100));
+    transfer.setIdempotencyKey("reused-key");
+    this.accountsService.transfer(transfer);
+
+    Transfer other = new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(200));
+    other.setIdempotencyKey("reused-key");
+    this.accountsService.transfer(other);
+  }
+
+  @Test
+  public void transfer_concurrentRetriesAreAppliedOnce() throws InterruptedException {
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    CountDownLatch latch = new CountDownLatch(50);
+
+    for (int i = 0; i < 50; i++) {
+      service.submit(() -> {
+        try {
+          Transfer transfer = new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(5));
+          transfer.setIdempotencyKey("concurrent-key");
+          accountsService.transfer(transfer);
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    service.shutdown();
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(495));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(5));
+  }
 }
@@ -0,0 +1,86 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+import java.math.BigDecimal;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.WebApplicationContext;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "accounts.web.async.enabled=true")
+@WebAppConfiguration
+public class AsyncTransferControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private WebApplicationContext webApplicationContext;
+
+  @Before
+  public void prepareMockMvc() {
+    this.mockMvc = webAppContextSetup(this.webApplicationContext).build();
+
+    accountsService.getAccountsRepository().clearAccounts();
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(500)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal(0)));
+  }
+
+  @Test
+  public void transfer() throws Exception {
+    transfer("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-2\",\"amount\":100}")
+      .andExpect(status().isOk());
+
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("400");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test
+  public void transferInsufficientFunds() throws Exception {
+    transfer("{\"fromAccountId\":\"Id-2\",\"toAccountId\":\"Id-1\",\"amount\":100}")
+      .andExpect(status().isBadRequest())
+      .andExpect(content().string("Account Id-2 does not have enough money!"));
+  }
+
+  @Test
+  public void transferSameAccount() throws Exception {
+    transfer("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-1\",\"amount\":100}")
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void transferAccountNotFound() throws Exception {
+    transfer("{\"fromAccountId\":\"Id-1\",\"toAccountId\":\"Id-3\",\"amount\":100}")
+      .andExpect(status().isNotFound());
+  }
+
+  private ResultActions transfer(String body) throws Exception {
+    MvcResult result = this.mockMvc.perform(post("/v1/accounts/transfer")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(body))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+
+    return this.mockMvc.perform(asyncDispatch(result));
+  }
+}
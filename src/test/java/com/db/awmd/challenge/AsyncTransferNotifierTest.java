@@ -0,0 +1,129 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.service.AsyncTransferNotifier;
+import com.db.awmd.challenge.service.AsyncTransferNotifier.OverflowPolicy;
+import com.db.awmd.challenge.service.NotificationService;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncTransferNotifierTest {
+
+  private final Account account1 = new Account("Id-1", new BigDecimal(500));
+  private final Account account2 = new Account("Id-2", new BigDecimal(0));
+
+  private AsyncTransferNotifier notifier;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    this.notifier.shutdown();
+  }
+
+  @Test
+  public void transferCompleted_deliversBothNotifications() {
+    NotificationService notificationService = mock(NotificationService.class);
+    this.notifier = new AsyncTransferNotifier(notificationService, 2, 100, 64, OverflowPolicy.BLOCK);
+
+    this.notifier.transferCompleted(account1, account2, new Transfer("Id-1", "Id-2", new BigDecimal(100)));
+
+    verify(notificationService, timeout(5000))
+      .notifyAboutTransfer(account1, "Transfer to account Id-2 for amount 100");
+    verify(notificationService, timeout(5000))
+      .notifyAboutTransfer(account2, "Transfer from account Id-1 for amount 100");
+  }
+
+  @Test
+  public void transferCompleted_batchesNotificationsPerAccount() throws InterruptedException {
+    NotificationService notificationService = mock(NotificationService.class);
+    CountDownLatch delivering = new CountDownLatch(1);
+    CountDownLatch blocked = blockDeliveries(notificationService, delivering);
+    this.notifier = new AsyncTransferNotifier(notificationService, 1, 100, 64, OverflowPolicy.BLOCK);
+
+    // the first notification occupies the worker, the next ones queue up behind it
+    this.notifier.transferCompleted(account1, account2, new Transfer("Id-1", "Id-2", new BigDecimal(1)));
+    delivering.await();
+    this.notifier.transferCompleted(account1, account2, new Transfer("Id-1", "Id-2", new BigDecimal(2)));
+    this.notifier.transferCompleted(account1, account2, new Transfer("Id-1", "Id-2", new BigDecimal(3)));
+    blocked.countDown();
+
+    verify(notificationService, timeout(5000)).notifyAboutTransfer(account1,
+      "Transfer to account Id-2 for amount 2\nTransfer to account Id-2 for amount 3");
+    assertThat(this.notifier.getEnqueued()).isEqualTo(6);
+  }
+
+  @Test
+  public void transferCompleted_dropsWhenQueueIsFull() {
+    NotificationService notificationService = mock(NotificationService.class);
+    CountDownLatch blocked = blockDeliveries(notificationService, new CountDownLatch(1));
+    this.notifier = new AsyncTransferNotifier(notificationService, 1, 1, 64, OverflowPolicy.DROP);
+
+    for (int i = 0; i < 10; i++) {
+      this.notifier.transferCompleted(account1, account2, new Transfer("Id-1", "Id-2", new BigDecimal(1)));
+    }
+    blocked.countDown();
+
+    assertThat(this.notifier.getDropped()).isGreaterThan(0);
+    assertThat(this.notifier.getEnqueued() + this.notifier.getDropped()).isEqualTo(20);
+  }
+
+  @Test
+  public void transferCompleted_callerRunsKeepsEachAccountInOrder() throws InterruptedException {
+    NotificationService notificationService = mock(NotificationService.class);
+    List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch blocked = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      blocked.await();
+      if (invocation.getArgumentAt(0, Account.class) == account1) {
+        delivered.addAll(Arrays.asList(invocation.getArgumentAt(1, String.class).split("\n")));
+      }
+      return null;
+    }).when(notificationService).notifyAboutTransfer(any(Account.class), anyString());
+    this.notifier = new AsyncTransferNotifier(notificationService, 1, 2, 64, OverflowPolicy.CALLER_RUNS);
+
+    Thread caller = new Thread(() -> {
+      for (int i = 1; i <= 20; i++) {
+        this.notifier.transferCompleted(account1, account2, new Transfer("Id-1", "Id-2", new BigDecimal(i)));
+      }
+    });
+    caller.start();
+    TimeUnit.MILLISECONDS.sleep(50);
+    blocked.countDown();
+    caller.join(5000);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (this.notifier.getDelivered() < 40 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    List<String> expected = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      expected.add("Transfer to account Id-2 for amount " + i);
+    }
+    assertThat(delivered).isEqualTo(expected);
+  }
+
+  private CountDownLatch blockDeliveries(NotificationService notificationService, CountDownLatch delivering) {
+    CountDownLatch blocked = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      delivering.countDown();
+      blocked.await();
+      return null;
+    }).when(notificationService).notifyAboutTransfer(any(Account.class), anyString());
+    return blocked;
+  }
+}
@@ -0,0 +1,145 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.CasTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "accounts.transfer-engine=cas")
+public class CasTransferEngineTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private TransferEngine transferEngine;
+
+  private Account account1;
+  private Account account2;
+
+  @Before
+  public void setUp() {
+    account1 = new Account("Id-1", new BigDecimal(500));
+    account2 = new Account("Id-2", new BigDecimal(0));
+    this.accountsService.createAccount(account1);
+    this.accountsService.createAccount(account2);
+  }
+
+  @After
+  public void tearDown() {
+    this.accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void engineIsSelectedByConfiguration() {
+    assertThat(this.transferEngine).isInstanceOf(CasTransferEngine.class);
+  }
+
+  @Test
+  public void transfer() {
+    this.accountsService.transfer(
+      new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(100))
+    );
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(account2.getBalance()).isEqualTo(new BigDecimal(100));
+  }
+
+  @Test(expected = NotEnoughFundsException.class)
+  public void transfer_failsOnNotEnoughFunds() {
+    this.accountsService.transfer(
+      new Transfer(account2.getAccountId(), account1.getAccountId(), new BigDecimal(6))
+    );
+  }
+
+  @Test(expected = AccountNotFoundException.class)
+  public void transfer_failsOnAccountNotFound() {
+    this.accountsService.transfer(
+      new Transfer(account1.getAccountId(), "not-existing", new BigDecimal(6))
+    );
+  }
+
+  @Test
+  public void transferAtomically_isNotSupported() {
+    assertThat(this.accountsService.supportsAtomicTransfers()).isFalse();
+  }
+
+  @Test
+  public void transfer_concurrentDebitsNeverOverdraw() throws InterruptedException {
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    CountDownLatch latch = new CountDownLatch(200);
+
+    // 200 debits of 5 against a balance of 500: exactly 100 of them can succeed
+    for (int i = 0; i < 200; i++) {
+      service.submit(() -> {
+        try {
+          accountsService.transfer(
+            new Transfer(account1.getAccountId(), account2.getAccountId(), new BigDecimal(5))
+          );
+        } catch (NotEnoughFundsException ignored) {
+          // expected once the balance is exhausted
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    service.shutdown();
+
+    assertThat(account1.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    assertThat(account2.getBalance()).isEqualByComparingTo(new BigDecimal(500));
+  }
+
+  @Test
+  public void transfer_refundThatNoLongerFitsIsHeldAsUnrefunded() {
+    AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+    Account source = new Account("Id-source", new BigDecimal(10)) {
+      private boolean debited;
+
+      @Override
+      public boolean compareAndSetBalanceUnits(long expectedBalance, long newBalance) {
+        boolean set = super.compareAndSetBalanceUnits(expectedBalance, newBalance);
+        if (set && !this.debited) {
+          // a credit to the source lands while the debited amount is in flight
+          this.debited = true;
+          this.setBalanceUnits(Long.MAX_VALUE - 1);
+        }
+        return set;
+      }
+    };
+    Account target = new Account("Id-target");
+    target.setBalanceUnits(Long.MAX_VALUE);
+    repository.createAccount(source);
+    repository.createAccount(target);
+    CasTransferEngine engine = new CasTransferEngine(repository);
+
+    TransferResult result = engine.transfer(new Transfer("Id-source", "Id-target", 500));
+
+    assertThat(result.getOutcome()).isEqualTo(TransferOutcome.BALANCE_OVERFLOW);
+    assertThat(source.getBalanceUnits()).isEqualTo(Long.MAX_VALUE);
+    assertThat(target.getBalanceUnits()).isEqualTo(Long.MAX_VALUE);
+    assertThat(engine.getUnrefundedUnits()).isEqualTo(499);
+  }
+}
@@ -0,0 +1,140 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.HotAccounts;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.hot.account-ids=Id-fees", "accounts.hot.stripes=4"})
+public class HotAccountsTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private HotAccounts hotAccounts;
+
+  @Before
+  public void setUp() {
+    this.accountsService.createAccount(new Account("Id-fees", BigDecimal.ZERO));
+    for (int i = 0; i < 8; i++) {
+      this.accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    // the sub-balances outlive the account, so they are emptied before it is dropped
+    this.hotAccounts.fold(this.accountsService.getAccountsRepository().getAccount("Id-fees").get());
+    this.accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void transfer_concurrentCreditsToAHotAccountAreAllCounted() throws InterruptedException {
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    CountDownLatch latch = new CountDownLatch(4000);
+    for (int i = 0; i < 4000; i++) {
+      int from = i % 8;
+      service.submit(() -> {
+        try {
+          accountsService.transfer(new Transfer("Id-" + from, "Id-fees", new BigDecimal("0.25")));
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    service.shutdown();
+
+    assertThat(this.accountsService.getAccount("Id-fees").getBalance()).isEqualByComparingTo("1000");
+    for (int i = 0; i < 8; i++) {
+      assertThat(this.accountsService.getAccount("Id-" + i).getBalance()).isEqualByComparingTo("875");
+    }
+    assertThat(this.accountsService.getAccountsTotal().getTotalBalance()).isEqualByComparingTo("8000");
+  }
+
+  @Test
+  public void transfer_debitsFromAHotAccountDrawOnItsCredits() {
+    this.accountsService.transfer(new Transfer("Id-0", "Id-fees", new BigDecimal(30)));
+    this.accountsService.transfer(new Transfer("Id-1", "Id-fees", new BigDecimal(20)));
+
+    this.accountsService.transfer(new Transfer("Id-fees", "Id-2", new BigDecimal(45)));
+
+    assertThat(this.accountsService.getAccount("Id-fees").getBalance()).isEqualByComparingTo("5");
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1045");
+    try {
+      this.accountsService.transfer(new Transfer("Id-fees", "Id-2", new BigDecimal(6)));
+      fail("Should have failed for lack of funds");
+    } catch (NotEnoughFundsException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account Id-fees does not have enough money!");
+    }
+    assertThat(this.accountsService.getAccount("Id-fees").getBalance()).isEqualByComparingTo("5");
+  }
+
+  @Test
+  public void transferAtomically_includesTheCreditsOfAHotAccount() {
+    this.accountsService.transfer(new Transfer("Id-0", "Id-fees", new BigDecimal(10)));
+
+    this.accountsService.transferAtomically(new MultiLegTransfer(Arrays.asList(
+      new Transfer("Id-1", "Id-fees", new BigDecimal(5)),
+      new Transfer("Id-fees", "Id-2", new BigDecimal(15)))));
+
+    assertThat(this.accountsService.getAccount("Id-fees").getBalance()).isEqualByComparingTo("0");
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1015");
+  }
+
+  @Test
+  public void transfer_refusesACreditThatWouldOverflowTheSubBalances() {
+    this.accountsService.createAccount(new Account("Id-rich", BigDecimal.valueOf(Long.MAX_VALUE, Money.SCALE)));
+    this.accountsService.transfer(new Transfer("Id-0", "Id-fees", new BigDecimal(10)));
+    this.accountsService.transfer(new Transfer("Id-rich", "Id-fees",
+      BigDecimal.valueOf(Long.MAX_VALUE - Money.toUnits(new BigDecimal(10)), Money.SCALE)));
+
+    try {
+      this.accountsService.transfer(new Transfer("Id-1", "Id-fees", new BigDecimal(1)));
+      fail("Should have failed on balance overflow");
+    } catch (BalanceOverflowException ex) {
+      // expected
+    }
+    assertThat(this.accountsService.getAccount("Id-fees").getBalanceUnits()).isEqualTo(Long.MAX_VALUE);
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("1000");
+
+    this.accountsService.transfer(new Transfer("Id-fees", "Id-2", new BigDecimal(5)));
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1005");
+  }
+
+  @Test
+  public void raise_refusesABalanceThatWouldOverflowWithTheSubBalances() {
+    Account fees = this.accountsService.getAccountsRepository().getAccount("Id-fees").get();
+    assertThat(this.hotAccounts.credit(fees, Long.MAX_VALUE - 10)).isTrue();
+
+    assertThat(this.hotAccounts.raise(fees, 11)).isFalse();
+    assertThat(fees.getBalanceUnits()).isEqualTo(0);
+    assertThat(this.hotAccounts.raise(fees, 10)).isTrue();
+    assertThat(this.hotAccounts.balanceOf(fees)).isEqualTo(Long.MAX_VALUE);
+    assertThat(this.hotAccounts.credit(fees, 1)).isFalse();
+    assertThat(this.hotAccounts.balanceOf(fees)).isEqualTo(Long.MAX_VALUE);
+  }
+}
@@ -0,0 +1,51 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.IdempotencyCache;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class IdempotencyCacheTest {
+
+  private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+  @Test
+  public void deduplicate_neverEvictsATransferStillRunning() {
+    // a single key per segment, so every completed key evicts the one before it
+    IdempotencyCache cache = new IdempotencyCache(1, 3600000, this.metricsRegistry);
+    AtomicInteger runs = new AtomicInteger();
+    CompletableFuture<TransferResult> running = new CompletableFuture<>();
+
+    CompletableFuture<TransferResult> first = cache.deduplicate(transfer("key-0", 1), () -> {
+      runs.incrementAndGet();
+      return running;
+    });
+    for (int i = 1; i <= 1000; i++) {
+      cache.deduplicate(transfer("key-" + i, 1),
+        () -> CompletableFuture.completedFuture(TransferResult.notEnoughFunds("Id-1")));
+    }
+
+    CompletableFuture<TransferResult> retry = cache.deduplicate(transfer("key-0", 1), () -> {
+      runs.incrementAndGet();
+      return new CompletableFuture<>();
+    });
+    assertThat(retry).isSameAs(first);
+    assertThat(runs.get()).isEqualTo(1);
+
+    TransferResult result = TransferResult.notEnoughFunds("Id-1");
+    running.complete(result);
+    assertThat(cache.deduplicate(transfer("key-0", 1), CompletableFuture::new).join()).isSameAs(result);
+    assertThat(runs.get()).isEqualTo(1);
+  }
+
+  private static Transfer transfer(String idempotencyKey, long amountUnits) {
+    Transfer transfer = new Transfer("Id-1", "Id-2", amountUnits);
+    transfer.setIdempotencyKey(idempotencyKey);
+    return transfer;
+  }
+}
@@ -0,0 +1,41 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.db.awmd.challenge.metrics.LatencyHistogram;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void snapshot_reportsPercentilesWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getCount()).isEqualTo(100_000);
+    assertThat(snapshot.getMax()).isEqualTo(100_000);
+    assertThat(snapshot.getValueAtPercentile(50)).isCloseTo(50_000L, within(50_000L * 4 / 100));
+    assertThat(snapshot.getValueAtPercentile(99)).isCloseTo(99_000L, within(99_000L * 4 / 100));
+    assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(100_000);
+    assertThat(snapshot.getMean()).isCloseTo(50_000.5, within(50_000.5 * 4 / 100));
+  }
+
+  @Test
+  public void snapshot_keepsSmallValuesExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(0);
+    histogram.record(7);
+    histogram.record(31);
+    histogram.record(-5);
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getValueAtPercentile(25)).isEqualTo(0);
+    assertThat(snapshot.getValueAtPercentile(75)).isEqualTo(7);
+    assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(31);
+    assertThat(snapshot.toMap()).containsKeys("count", "mean", "p50", "p90", "p99", "p999", "max");
+  }
+}
@@ -0,0 +1,98 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.OffHeapAccountsRepository;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "accounts.offheap.initial-capacity=16")
+@ActiveProfiles("offheap")
+public class OffHeapAccountsRepositoryTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private AccountsRepository accountsRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Before
+  public void setUp() {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(500)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal(0)));
+  }
+
+  @After
+  public void tearDown() {
+    this.accountsRepository.clearAccounts();
+  }
+
+  @Test
+  public void transfer_updatesOffHeapBalances() {
+    assertThat(this.accountsRepository).isInstanceOf(OffHeapAccountsRepository.class);
+
+    this.accountsService.transfer(new Transfer("Id-1", "Id-2", new BigDecimal("100.25")));
+
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("399.75"));
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("100.25"));
+  }
+
+  @Test(expected = DuplicateAccountIdException.class)
+  public void createAccount_failsOnDuplicateId() {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(1)));
+  }
+
+  @Test
+  public void createAccount_growsTheIndex() {
+    for (int i = 0; i < 20000; i++) {
+      this.accountsService.createAccount(new Account("Id-many-" + i, new BigDecimal(i)));
+    }
+
+    for (int i = 0; i < 20000; i += 997) {
+      assertThat(this.accountsService.getAccount("Id-many-" + i).getBalance()).isEqualTo(new BigDecimal(i));
+    }
+    assertThat(this.accountsRepository.getAccount("Id-many-20000").isPresent()).isFalse();
+
+    LongAdder count = new LongAdder();
+    this.accountsRepository.forEachAccount(account -> count.increment());
+    assertThat(count.sum()).isEqualTo(20002);
+  }
+
+  @Test
+  public void getAccount_returnsViewOfStoredBalance() throws Exception {
+    Account view = this.accountsService.getAccount("Id-1");
+    assertThat(view.compareAndSetBalanceUnits(50000, 40000)).isTrue();
+    assertThat(view.compareAndSetBalanceUnits(50000, 30000)).isFalse();
+
+    assertThat(this.accountsService.getAccount("Id-1")).isEqualTo(new Account("Id-1", new BigDecimal(400)));
+    assertThat(this.objectMapper.writeValueAsString(view)).isEqualTo("{\"accountId\":\"Id-1\",\"balance\":400}");
+  }
+
+  @Test
+  public void clearAccounts_leavesOldViewsUsable() {
+    Account view = this.accountsService.getAccount("Id-1");
+    this.accountsRepository.clearAccounts();
+
+    assertThat(view.getBalance()).isEqualTo(new BigDecimal(500));
+    assertThat(view.compareAndSetBalanceUnits(50000, 40000)).isTrue();
+    assertThat(this.accountsRepository.getAccount("Id-1").isPresent()).isFalse();
+  }
+}
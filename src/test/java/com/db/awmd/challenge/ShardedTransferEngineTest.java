@@ -0,0 +1,158 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Money;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.BalanceOverflowException;
+import com.db.awmd.challenge.exception.NotEnoughFundsException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.ShardedTransferEngine;
+import com.db.awmd.challenge.service.TransferEngine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.transfer-engine=sharded", "accounts.sharded.shards=4"})
+public class ShardedTransferEngineTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private TransferEngine transferEngine;
+
+  private ShardedTransferEngine shardedEngine;
+
+  private Account account1;
+  private Account sameShardAccount;
+  private Account otherShardAccount;
+
+  @Before
+  public void setUp() {
+    this.shardedEngine = (ShardedTransferEngine) this.transferEngine;
+    account1 = new Account("Id-1", new BigDecimal(500));
+    sameShardAccount = new Account(idOnShard(this.shardedEngine.shardOf("Id-1"), true), BigDecimal.ZERO);
+    otherShardAccount = new Account(idOnShard(this.shardedEngine.shardOf("Id-1"), false), BigDecimal.ZERO);
+    this.accountsService.createAccount(account1);
+    this.accountsService.createAccount(sameShardAccount);
+    this.accountsService.createAccount(otherShardAccount);
+  }
+
+  @After
+  public void tearDown() {
+    this.accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void engineIsSelectedByConfiguration() {
+    assertThat(this.transferEngine).isInstanceOf(ShardedTransferEngine.class);
+    assertThat(this.shardedEngine.getShards()).isEqualTo(4);
+  }
+
+  @Test
+  public void transfer_sameShard() {
+    this.accountsService.transfer(
+      new Transfer(account1.getAccountId(), sameShardAccount.getAccountId(), new BigDecimal(100))
+    );
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(sameShardAccount.getBalance()).isEqualTo(new BigDecimal(100));
+  }
+
+  @Test
+  public void transfer_crossShard() {
+    this.accountsService.transfer(
+      new Transfer(account1.getAccountId(), otherShardAccount.getAccountId(), new BigDecimal(100))
+    );
+
+    assertThat(account1.getBalance()).isEqualTo(new BigDecimal(400));
+    assertThat(otherShardAccount.getBalance()).isEqualTo(new BigDecimal(100));
+  }
+
+  @Test(expected = NotEnoughFundsException.class)
+  public void transfer_failsOnNotEnoughFunds() {
+    this.accountsService.transfer(
+      new Transfer(otherShardAccount.getAccountId(), account1.getAccountId(), new BigDecimal(6))
+    );
+  }
+
+  @Test(expected = AccountNotFoundException.class)
+  public void transfer_failsOnAccountNotFound() {
+    this.accountsService.transfer(
+      new Transfer(account1.getAccountId(), "not-existing", new BigDecimal(6))
+    );
+  }
+
+  @Test
+  public void transfer_crossShardOverflowIsRefunded() {
+    otherShardAccount.setBalanceUnits(Long.MAX_VALUE);
+
+    try {
+      this.accountsService.transfer(
+        new Transfer(account1.getAccountId(), otherShardAccount.getAccountId(), new BigDecimal(1))
+      );
+    } catch (BalanceOverflowException expected) {
+      assertThat(account1.getBalance()).isEqualTo(new BigDecimal(500));
+      assertThat(otherShardAccount.getBalanceUnits()).isEqualTo(Long.MAX_VALUE);
+      return;
+    }
+    throw new AssertionError("Expected a BalanceOverflowException");
+  }
+
+  @Test
+  public void transfer_concurrentTransfersConserveMoney() throws InterruptedException {
+    List<Account> accounts = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      Account account = new Account("Ring-" + i, new BigDecimal(100));
+      this.accountsService.createAccount(account);
+      accounts.add(account);
+    }
+
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    CountDownLatch latch = new CountDownLatch(2000);
+    for (int i = 0; i < 2000; i++) {
+      Account from = accounts.get(i % 16);
+      Account to = accounts.get((i * 7 + 3) % 16);
+      service.submit(() -> {
+        try {
+          accountsService.transfer(new Transfer(from.getAccountId(), to.getAccountId(), new BigDecimal(3)));
+        } catch (NotEnoughFundsException ignored) {
+          // expected when an account runs dry
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    service.shutdown();
+
+    long total = accounts.stream().mapToLong(Account::getBalanceUnits).sum();
+    assertThat(total).isEqualTo(1600 * Money.toUnits(BigDecimal.ONE));
+    assertThat(accounts.stream().allMatch(account -> account.getBalanceUnits() >= 0)).isTrue();
+  }
+
+  private String idOnShard(int shard, boolean same) {
+    for (int i = 0; ; i++) {
+      String id = "Id-shard-" + i;
+      if ((this.shardedEngine.shardOf(id) == shard) == same) {
+        return id;
+      }
+    }
+  }
+}
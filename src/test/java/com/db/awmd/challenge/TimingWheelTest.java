@@ -0,0 +1,63 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.service.TimingWheel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+  @Test
+  public void advance_expiresEveryTimerAtItsDeadline() {
+    // 3 levels of 4 slots span 64 ticks, so the farthest deadlines are parked and placed again
+    long start = 5;
+    TimingWheel<Long> wheel = new TimingWheel<>(4, 3, start);
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      wheel.schedule(start + random.nextInt(300), (long) i);
+    }
+    Map<Long, Long> deadlines = new HashMap<>();
+    Random replay = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      deadlines.put((long) i, start + replay.nextInt(300));
+    }
+
+    for (long tick = start; tick < start + 300; tick++) {
+      long now = tick;
+      wheel.advance(now, value -> assertThat(deadlines.remove(value)).isEqualTo(now));
+    }
+    assertThat(deadlines).isEmpty();
+    assertThat(wheel.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void advance_expiresPastDeadlinesOnTheNextCall() {
+    TimingWheel<String> wheel = new TimingWheel<>(4, 2, 100);
+    wheel.schedule(3, "late");
+    List<String> expired = new ArrayList<>();
+
+    wheel.advance(100, expired::add);
+
+    assertThat(expired).containsExactly("late");
+  }
+
+  @Test
+  public void cancel_removesTheTimer() {
+    TimingWheel<String> wheel = new TimingWheel<>(4, 2, 0);
+    TimingWheel.Timer<String> cancelled = wheel.schedule(10, "cancelled");
+    wheel.schedule(10, "kept");
+
+    assertThat(wheel.cancel(cancelled)).isTrue();
+    assertThat(wheel.cancel(cancelled)).isFalse();
+    assertThat(wheel.size()).isEqualTo(1);
+
+    List<String> expired = new ArrayList<>();
+    wheel.advance(20, expired::add);
+    assertThat(expired).containsExactly("kept");
+  }
+}
@@ -0,0 +1,108 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.domain.TransferResult;
+import com.db.awmd.challenge.metrics.MetricsRegistry;
+import com.db.awmd.challenge.service.HotAccounts;
+import com.db.awmd.challenge.service.TransferAdmission;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TransferAdmissionTest {
+
+  private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+  private final HotAccounts hotAccounts =
+    new HotAccounts(new String[] {"Id-hot"}, 0, "locking", false, this.metricsRegistry);
+
+  @Test
+  public void tryAdmit_limitsEachAccountToItsBurst() {
+    TransferAdmission admission = new TransferAdmission(1, 3, 1000, 0, 100, this.hotAccounts, this.metricsRegistry);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(admission.tryAdmit(transfer("Id-1", "Id-hot"))).isNull();
+    }
+    TransferResult refusal = admission.tryAdmit(transfer("Id-1", "Id-hot"));
+    assertThat(refusal.getOutcome()).isEqualTo(TransferOutcome.THROTTLED);
+    assertThat(refusal.getMessage()).isEqualTo("Too many transfers for account Id-1, try again later!");
+
+    // the hot account is exempt and other accounts have their own buckets
+    for (int i = 0; i < 3; i++) {
+      assertThat(admission.tryAdmit(transfer("Id-" + (i + 2), "Id-hot"))).isNull();
+    }
+  }
+
+  @Test
+  public void tryAdmit_refillsTheBucketOverTime() throws InterruptedException {
+    TransferAdmission admission = new TransferAdmission(100, 1, 1000, 0, 100, this.hotAccounts, this.metricsRegistry);
+
+    assertThat(admission.tryAdmit(transfer("Id-1", "Id-hot"))).isNull();
+    assertThat(this.throttled(admission, 1)).isEqualTo(1);
+    TimeUnit.MILLISECONDS.sleep(20);
+    assertThat(admission.tryAdmit(transfer("Id-1", "Id-hot"))).isNull();
+  }
+
+  @Test
+  public void tryAdmit_refundsTheSourceTokenWhenTheTargetIsThrottled() {
+    TransferAdmission admission = new TransferAdmission(1, 2, 1000, 0, 100, this.hotAccounts, this.metricsRegistry);
+
+    assertThat(admission.tryAdmit(transfer("Id-3", "Id-2"))).isNull();
+    assertThat(admission.tryAdmit(transfer("Id-4", "Id-2"))).isNull();
+    for (int i = 0; i < 5; i++) {
+      assertThat(admission.tryAdmit(transfer("Id-1", "Id-2")).getMessage()).contains("Id-2");
+    }
+
+    // the refused transfers did not use up Id-1's burst
+    assertThat(admission.tryAdmit(transfer("Id-1", "Id-hot"))).isNull();
+    assertThat(admission.tryAdmit(transfer("Id-1", "Id-hot"))).isNull();
+  }
+
+  @Test
+  public void tryAdmit_doesNotTrackMoreAccountsThanItsLimit() {
+    TransferAdmission admission = new TransferAdmission(1, 1, 10, 0, 100, this.hotAccounts, this.metricsRegistry);
+
+    for (int i = 0; i < 100; i++) {
+      admission.tryAdmit(transfer("Id-" + i, "Id-hot"));
+    }
+    Map<?, ?> gauges = (Map<?, ?>) this.metricsRegistry.snapshot().get("gauges");
+    assertThat(gauges.get("transfers.admission.tracked-accounts")).isEqualTo(10);
+  }
+
+  @Test
+  public void tryAdmit_shedsWhileOverTheLatencyBudget() throws InterruptedException {
+    TransferAdmission admission = new TransferAdmission(0, 100, 1000, 1, 20, this.hotAccounts, this.metricsRegistry);
+
+    for (int interval = 0; interval < 12; interval++) {
+      admission.completed(TimeUnit.MILLISECONDS.toNanos(10));
+      TimeUnit.MILLISECONDS.sleep(25);
+      this.throttled(admission, 1);
+    }
+    assertThat(this.throttled(admission, 1000)).isGreaterThan(500);
+
+    for (int interval = 0; interval < 12; interval++) {
+      admission.completed(TimeUnit.MICROSECONDS.toNanos(10));
+      TimeUnit.MILLISECONDS.sleep(25);
+      this.throttled(admission, 1);
+    }
+    assertThat(this.throttled(admission, 1000)).isEqualTo(0);
+  }
+
+  private int throttled(TransferAdmission admission, int attempts) {
+    int throttled = 0;
+    for (int i = 0; i < attempts; i++) {
+      if (admission.tryAdmit(transfer("Id-1", "Id-hot")) != null) {
+        throttled++;
+      }
+    }
+    return throttled;
+  }
+
+  private static Transfer transfer(String fromAccountId, String toAccountId) {
+    return new Transfer(fromAccountId, toAccountId, BigDecimal.ONE);
+  }
+}
@@ -0,0 +1,98 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferHistoryEntry;
+import com.db.awmd.challenge.domain.TransferHistoryPage;
+import com.db.awmd.challenge.repository.TransferHistoryRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransferHistoryRepositoryTest {
+
+  private TransferHistoryRepository history;
+
+  @Before
+  public void setUp() {
+    this.history = new TransferHistoryRepository();
+  }
+
+  @Test
+  public void record_addsAnEntryToBothAccounts() {
+    this.history.record(new Transfer("Id-1", "Id-2", new BigDecimal("12.50")));
+
+    TransferHistoryEntry outgoing = this.history.page("Id-1", null, Long.MIN_VALUE, Long.MAX_VALUE, 10)
+      .getTransfers().get(0);
+    assertThat(outgoing.getSequence()).isEqualTo(0);
+    assertThat(outgoing.getCounterpartyAccountId()).isEqualTo("Id-2");
+    assertThat(outgoing.getAmount()).isEqualByComparingTo("-12.50");
+
+    TransferHistoryEntry incoming = this.history.page("Id-2", null, Long.MIN_VALUE, Long.MAX_VALUE, 10)
+      .getTransfers().get(0);
+    assertThat(incoming.getCounterpartyAccountId()).isEqualTo("Id-1");
+    assertThat(incoming.getAmount()).isEqualByComparingTo("12.50");
+  }
+
+  @Test
+  public void clear_dropsHistoriesAndTheirCounterparties() {
+    this.history.record(new Transfer("Id-1", "Id-2", new BigDecimal(1)));
+    this.history.clear();
+    this.history.record(new Transfer("Id-3", "Id-1", new BigDecimal(2)));
+
+    assertThat(this.history.page("Id-2", null, Long.MIN_VALUE, Long.MAX_VALUE, 10).getTransfers()).isEmpty();
+    TransferHistoryEntry entry = this.history.page("Id-1", null, Long.MIN_VALUE, Long.MAX_VALUE, 10)
+      .getTransfers().get(0);
+    assertThat(entry.getSequence()).isEqualTo(0);
+    assertThat(entry.getCounterpartyAccountId()).isEqualTo("Id-3");
+  }
+
+  @Test
+  public void page_walksTheHistoryNewestFirstWithACursor() {
+    for (int i = 1; i <= 150; i++) {
+      this.history.record(new Transfer("Id-1", "Id-" + (i % 7 + 2), new BigDecimal(i)));
+    }
+
+    List<Long> sequences = new ArrayList<>();
+    Long cursor = null;
+    do {
+      TransferHistoryPage page = this.history.page("Id-1", cursor, Long.MIN_VALUE, Long.MAX_VALUE, 40);
+      assertThat(page.getTransfers().size()).isLessThanOrEqualTo(40);
+      page.getTransfers().forEach(entry -> sequences.add(entry.getSequence()));
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+
+    assertThat(sequences).hasSize(150);
+    for (int i = 0; i < 150; i++) {
+      assertThat(sequences.get(i)).isEqualTo(149L - i);
+    }
+    TransferHistoryEntry oldest = this.history.page("Id-1", 1L, Long.MIN_VALUE, Long.MAX_VALUE, 1)
+      .getTransfers().get(0);
+    assertThat(oldest.getAmount()).isEqualByComparingTo("-1");
+    assertThat(oldest.getCounterpartyAccountId()).isEqualTo("Id-3");
+  }
+
+  @Test
+  public void page_filtersByTime() {
+    long before = System.currentTimeMillis();
+    for (int i = 0; i < 100; i++) {
+      this.history.record(new Transfer("Id-1", "Id-2", BigDecimal.ONE));
+    }
+    long after = System.currentTimeMillis() + 1;
+
+    assertThat(this.history.page("Id-1", null, before, after, 1000).getTransfers()).hasSize(100);
+    assertThat(this.history.page("Id-1", null, after, Long.MAX_VALUE, 1000).getTransfers()).isEmpty();
+    assertThat(this.history.page("Id-1", null, Long.MIN_VALUE, before, 1000).getTransfers()).isEmpty();
+  }
+
+  @Test
+  public void page_isEmptyForAnAccountWithoutTransfers() {
+    TransferHistoryPage page = this.history.page("Id-1", null, Long.MIN_VALUE, Long.MAX_VALUE, 10);
+
+    assertThat(page.getTransfers()).isEmpty();
+    assertThat(page.getNextCursor()).isNull();
+  }
+}
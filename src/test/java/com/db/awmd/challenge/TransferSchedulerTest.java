@@ -0,0 +1,163 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.Transfer;
+import com.db.awmd.challenge.domain.TransferBatchItemResult;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.exception.AccountNotFoundException;
+import com.db.awmd.challenge.exception.IdempotencyKeyReusedException;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.TransferScheduler;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+  "accounts.scheduler.tick-ms=10",
+  "accounts.admission.rate-per-account=1",
+  "accounts.admission.burst=2",
+  "accounts.idempotency.capacity=2"
+})
+public class TransferSchedulerTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private TransferScheduler transferScheduler;
+
+  @Before
+  public void setUp() {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(500)));
+    this.accountsService.createAccount(new Account("Id-2", new BigDecimal(0)));
+  }
+
+  @After
+  public void tearDown() {
+    this.accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void schedule_appliesTheTransferOnceDue() throws InterruptedException {
+    long executeAt = System.currentTimeMillis() + 100;
+    ScheduledTransfer scheduled = this.transferScheduler.schedule(transfer(100, executeAt));
+
+    assertThat(this.transferScheduler.pendingTransfers("Id-2")).containsExactly(scheduled);
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("0");
+
+    for (int i = 0; i < 500 && this.accountsService.getAccount("Id-2").getBalance().signum() == 0; i++) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(executeAt);
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("400");
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("100");
+    assertThat(this.transferScheduler.pendingTransfers("Id-2")).isEmpty();
+  }
+
+  @Test
+  public void cancel_keepsTheTransferFromBeingApplied() throws InterruptedException {
+    long executeAt = System.currentTimeMillis() + 50;
+    ScheduledTransfer cancelled = this.transferScheduler.schedule(transfer(100, executeAt));
+    ScheduledTransfer later = this.transferScheduler.schedule(transfer(1, executeAt + 3_600_000));
+    ScheduledTransfer earlier = this.transferScheduler.schedule(transfer(2, executeAt + 60_000));
+
+    assertThat(this.transferScheduler.cancel(cancelled.getId())).isTrue();
+    assertThat(this.transferScheduler.cancel(cancelled.getId())).isFalse();
+    assertThat(this.transferScheduler.pendingTransfers("Id-1")).containsExactly(earlier, later);
+
+    TimeUnit.MILLISECONDS.sleep(200);
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("500");
+    assertThat(this.transferScheduler.cancel(later.getId())).isTrue();
+    assertThat(this.transferScheduler.cancel(earlier.getId())).isTrue();
+  }
+
+  @Test
+  public void schedule_failsOnAccountNotFound() {
+    Transfer transfer = new Transfer("Id-1", "Id-missing", new BigDecimal(1));
+    transfer.setExecuteAt(System.currentTimeMillis());
+    try {
+      this.transferScheduler.schedule(transfer);
+      fail("Should have failed when scheduling a transfer to a missing account");
+    } catch (AccountNotFoundException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Account Id-missing not found!");
+    }
+  }
+
+  @Test
+  public void schedule_transfersFallingDueTogetherAreNotThrottled() throws InterruptedException {
+    long executeAt = System.currentTimeMillis() + 50;
+    for (int i = 0; i < 5; i++) {
+      this.transferScheduler.schedule(transfer(10, executeAt));
+    }
+
+    for (int i = 0; i < 500 && this.transferScheduler.size() > 0; i++) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    for (int i = 0; i < 500 && this.accountsService.getAccount("Id-2").getBalance().intValue() < 50; i++) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("50");
+
+    // the same transfers sent by a client are limited like single ones
+    this.accountsService.createAccount(new Account("Id-3", new BigDecimal(500)));
+    this.accountsService.createAccount(new Account("Id-4", new BigDecimal(0)));
+    List<Transfer> transfers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      transfers.add(new Transfer("Id-3", "Id-4", new BigDecimal(10)));
+    }
+    List<TransferBatchItemResult> results = this.accountsService.transferBatch(transfers);
+    assertThat(results).extracting(TransferBatchItemResult::getOutcome).containsExactly(
+      TransferOutcome.OK, TransferOutcome.OK,
+      TransferOutcome.THROTTLED, TransferOutcome.THROTTLED, TransferOutcome.THROTTLED);
+    assertThat(this.accountsService.getAccount("Id-4").getBalance()).isEqualByComparingTo("20");
+  }
+
+  @Test
+  public void schedule_remembersAtMostCapacityIdempotencyKeys() {
+    long executeAt = System.currentTimeMillis() + 3_600_000;
+    List<ScheduledTransfer> scheduled = new ArrayList<>();
+    for (String key : new String[] {"key-1", "key-2", "key-3"}) {
+      scheduled.add(this.transferScheduler.schedule(keyedTransfer(key, 1, executeAt)));
+    }
+
+    // the oldest key was forgotten, so it schedules a new transfer
+    scheduled.add(this.transferScheduler.schedule(keyedTransfer("key-1", 2, executeAt)));
+    assertThat(scheduled.get(3)).isNotEqualTo(scheduled.get(0));
+    try {
+      this.transferScheduler.schedule(keyedTransfer("key-3", 2, executeAt));
+      fail("Should have failed when reusing a remembered idempotency key");
+    } catch (IdempotencyKeyReusedException ex) {
+      assertThat(ex.getMessage()).isEqualTo("Idempotency key key-3 was already used for a different transfer!");
+    }
+    assertThat(this.transferScheduler.schedule(keyedTransfer("key-3", 1, executeAt))).isEqualTo(scheduled.get(2));
+
+    for (ScheduledTransfer transfer : scheduled) {
+      assertThat(this.transferScheduler.cancel(transfer.getId())).isTrue();
+    }
+  }
+
+  private static Transfer keyedTransfer(String idempotencyKey, int amount, long executeAt) {
+    Transfer transfer = transfer(amount, executeAt);
+    transfer.setIdempotencyKey(idempotencyKey);
+    return transfer;
+  }
+
+  private static Transfer transfer(int amount, long executeAt) {
+    Transfer transfer = new Transfer("Id-1", "Id-2", new BigDecimal(amount));
+    transfer.setExecuteAt(executeAt);
+    return transfer;
+  }
+}
@@ -0,0 +1,109 @@
+package com.db.awmd.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferOutcome;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.tcp.TransferClient;
+import com.db.awmd.challenge.tcp.TransferResponse;
+import com.db.awmd.challenge.tcp.TransferServer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"accounts.tcp.enabled=true", "accounts.tcp.port=0"})
+public class TransferServerTest {
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @Autowired
+  private TransferServer transferServer;
+
+  private TransferClient client;
+
+  @Before
+  public void setUp() throws IOException {
+    this.accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+    this.accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+    this.client = new TransferClient("localhost", this.transferServer.getPort());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    this.client.close();
+    this.accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  public void send_pipelinedTransfersAreAnsweredInOrder() throws Exception {
+    int transfers = 20000;
+    ExecutorService sender = Executors.newSingleThreadExecutor();
+    Future<?> sent = sender.submit(() -> {
+      for (int i = 0; i < transfers; i++) {
+        this.client.send(i, "Id-1", "Id-2", 1);
+      }
+      this.client.flush();
+      return null;
+    });
+
+    for (int i = 0; i < transfers; i++) {
+      TransferResponse response = this.client.receive();
+      assertThat(response.getRequestId()).isEqualTo(i);
+      assertThat(response.getOutcome()).isEqualTo(TransferOutcome.OK);
+      assertThat(response.getMessage()).isNull();
+    }
+    sent.get();
+    sender.shutdown();
+
+    assertThat(this.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("800");
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("200");
+  }
+
+  @Test
+  public void send_failuresAreReportedPerTransfer() throws IOException {
+    this.client.send(1, "Id-1", "Id-404", 100);
+    this.client.send(2, "Id-2", "Id-1", 100);
+    this.client.send(3, "Id-1", "Id-1", 100);
+    this.client.send(4, "Id-1", "Id-2", 100);
+    this.client.flush();
+
+    TransferResponse notFound = this.client.receive();
+    assertThat(notFound.getOutcome()).isEqualTo(TransferOutcome.ACCOUNT_NOT_FOUND);
+    assertThat(notFound.getMessage()).isEqualTo("Account Id-404 not found!");
+    assertThat(this.client.receive().getOutcome()).isEqualTo(TransferOutcome.NOT_ENOUGH_FUNDS);
+    assertThat(this.client.receive().getOutcome()).isEqualTo(TransferOutcome.SAME_ACCOUNT);
+    TransferResponse ok = this.client.receive();
+    assertThat(ok.getRequestId()).isEqualTo(4);
+    assertThat(ok.getOutcome()).isEqualTo(TransferOutcome.OK);
+
+    assertThat(this.accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1");
+  }
+
+  @Test
+  public void malformedFrameClosesTheConnection() throws IOException {
+    try (Socket socket = new Socket("localhost", this.transferServer.getPort())) {
+      DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+      output.writeInt(3);
+      output.write(new byte[3]);
+      output.flush();
+
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+    }
+  }
+}